@@ -0,0 +1,690 @@
+package editortrees;
+
+import java.util.Arrays;
+
+// A height-balanced tree with rank whose nodes live in parallel primitive
+// arrays instead of Node objects. A node is an index into the arrays and
+// slot 0 plays the part of the NULL_NODE. The slots of deleted nodes are
+// chained into a free list and handed out again, so a document costs 19
+// bytes per character and the garbage collector only sees a few arrays.
+//
+// Like the arena of an OffHeapEditTree, the arrays are shared by the trees
+// split off one another, so that split, concatenate and delete(int, int)
+// relink nodes in O(log N) time as in EditTree instead of copying them. A
+// tree with arrays of its own is copied in by concatenate. The slots of a
+// tree split off and then dropped are only reclaimed with the arrays, once
+// every tree sharing them is dropped; clear() hands them back at once.
+
+public class ArrayEditTree {
+	private static final int NIL = 0;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	// The arrays of the trees split off one another
+	private static final class NodeArrays {
+		char[] elements;
+		int[] left, right, parent;
+		int[] rank; // Number of nodes in left subtree
+		byte[] balance; // Height of right subtree minus that of left
+		int free = NIL; // Head of the free list, chained through right
+		int slots = 1; // Slots handed out so far, counting slot 0
+
+		NodeArrays(int capacity) {
+			this.elements = new char[capacity + 1];
+			this.left = new int[capacity + 1];
+			this.right = new int[capacity + 1];
+			this.parent = new int[capacity + 1];
+			this.rank = new int[capacity + 1];
+			this.balance = new byte[capacity + 1];
+		}
+
+		// Hands out a slot from the free list, or a fresh one, growing the
+		// arrays when they are full
+		int allocate(char c) {
+			int node;
+			if (this.free != NIL) {
+				node = this.free;
+				this.free = this.right[node];
+			} else {
+				if (this.slots == this.elements.length) {
+					this.grow();
+				}
+				node = this.slots++;
+			}
+			this.elements[node] = c;
+			this.left[node] = NIL;
+			this.right[node] = NIL;
+			this.parent[node] = NIL;
+			this.rank[node] = 0;
+			this.balance[node] = 0;
+			return node;
+		}
+
+		void release(int node) {
+			this.right[node] = this.free;
+			this.free = node;
+		}
+
+		private void grow() {
+			int capacity = Math.max(DEFAULT_CAPACITY, 2 * this.elements.length);
+			this.elements = Arrays.copyOf(this.elements, capacity);
+			this.left = Arrays.copyOf(this.left, capacity);
+			this.right = Arrays.copyOf(this.right, capacity);
+			this.parent = Arrays.copyOf(this.parent, capacity);
+			this.rank = Arrays.copyOf(this.rank, capacity);
+			this.balance = Arrays.copyOf(this.balance, capacity);
+		}
+	}
+
+	private final NodeArrays nodes;
+	private int root = NIL;
+	private int size;
+	private int joinedHeight; // Height of the tree the last join returned
+
+	/**
+	 * Construct an empty tree
+	 */
+	public ArrayEditTree() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Construct an empty tree with room for capacity characters before its
+	 * arrays have to grow
+	 *
+	 * @param capacity
+	 * @throws IllegalArgumentException
+	 *             if capacity is negative
+	 */
+	public ArrayEditTree(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must be >= 0");
+		}
+		this.nodes = new NodeArrays(capacity);
+	}
+
+	/**
+	 * Create a tree whose toString is s, in O(N) time. The arrays are sized to
+	 * fit s exactly.
+	 *
+	 * @param s
+	 */
+	public ArrayEditTree(String s) {
+		this(s.length());
+		this.root = this.build(s, 0, s.length(), NIL);
+		this.size = s.length();
+	}
+
+	private ArrayEditTree(NodeArrays nodes) {
+		this.nodes = nodes;
+	}
+
+	// Builds a perfectly balanced subtree out of s[from, to) below parent
+	private int build(String s, int from, int to, int parent) {
+		if (from >= to) {
+			return NIL;
+		}
+		int mid = (from + to) >>> 1;
+		NodeArrays a = this.nodes;
+		int node = a.allocate(s.charAt(mid));
+		// Building the children may grow the arrays, so the links are only
+		// stored once both are built
+		int left = this.build(s, from, mid, node);
+		int right = this.build(s, mid + 1, to, node);
+		a.parent[node] = parent;
+		a.left[node] = left;
+		a.right[node] = right;
+		a.rank[node] = mid - from;
+		a.balance[node] = (byte) (heightOf(to - mid - 1) - heightOf(mid
+				- from));
+		return node;
+	}
+
+	// Height of a perfectly balanced subtree of count nodes; -1 if empty
+	private static int heightOf(int count) {
+		return 31 - Integer.numberOfLeadingZeros(count);
+	}
+
+	/**
+	 * @return the number of characters in this tree
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Follows the taller child from the root, in O(log N) time.
+	 *
+	 * @return the height of this tree
+	 */
+	public int height() {
+		NodeArrays a = this.nodes;
+		int height = -1;
+		for (int node = this.root; node != NIL; height++) {
+			node = a.balance[node] < 0 ? a.left[node] : a.right[node];
+		}
+		return height;
+	}
+
+	/**
+	 * @return the number of node slots the arrays of this tree have handed
+	 *         out, including the free ones waiting to be reused
+	 */
+	int slots() {
+		return this.nodes.slots - 1;
+	}
+
+	/**
+	 * Return the string produced by an inorder traversal of this tree
+	 */
+	@Override
+	public String toString() {
+		return this.get(0, this.size);
+	}
+
+	/**
+	 * @param pos
+	 *            position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char get(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos >= this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return this.nodes.elements[this.nodeAt(pos)];
+	}
+
+	/**
+	 * This method operates in O(length + log N): the first node is found from
+	 * the root and the rest by walking to successors.
+	 *
+	 * @param pos
+	 *            location of the beginning of the string to retrieve
+	 * @param length
+	 *            length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException
+	 *             unless both pos and pos+length-1 are legitimate indexes
+	 *             within this tree.
+	 */
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+		if (pos < 0 || length < 0 || pos + length > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		char[] chars = new char[length];
+		int node = length == 0 ? NIL : this.nodeAt(pos);
+		for (int i = 0; i < length; i++) {
+			chars[i] = this.nodes.elements[node];
+			node = this.successor(node);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * @param c
+	 *            character to add to the end of this tree.
+	 */
+	public void add(char c) {
+		this.add(c, this.size);
+	}
+
+	/**
+	 * @param c
+	 *            character to add
+	 * @param pos
+	 *            character added in this inorder position
+	 * @throws IndexOutOfBoundsException
+	 *             id pos is negative or too large for this tree
+	 */
+	public void add(char c, int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		NodeArrays a = this.nodes;
+		int created = a.allocate(c);
+		this.size++;
+		if (this.root == NIL) {
+			this.root = created;
+			return;
+		}
+		int node = this.root;
+		while (true) {
+			if (pos <= a.rank[node]) {
+				a.rank[node]++;
+				if (a.left[node] == NIL) {
+					a.left[node] = created;
+					break;
+				}
+				node = a.left[node];
+			} else {
+				pos -= a.rank[node] + 1;
+				if (a.right[node] == NIL) {
+					a.right[node] = created;
+					break;
+				}
+				node = a.right[node];
+			}
+		}
+		a.parent[created] = node;
+		this.grew(created);
+	}
+
+	/**
+	 *
+	 * @param pos
+	 *            position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char delete(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos >= this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		NodeArrays a = this.nodes;
+		int node = this.nodeAt(pos);
+		char deleted = a.elements[node];
+		// Like EditTree, a node with two children takes over its successor's
+		// element, so the node that is unlinked has at most one child
+		int victim = node;
+		if (a.left[node] != NIL && a.right[node] != NIL) {
+			victim = this.leftmost(a.right[node]);
+			a.elements[node] = a.elements[victim];
+		}
+		// Every ancestor the victim is a left descendant of loses it
+		int p = a.parent[victim];
+		for (int below = victim; p != NIL; below = p, p = a.parent[p]) {
+			if (a.left[p] == below) {
+				a.rank[p]--;
+			}
+		}
+		int child = a.left[victim] != NIL ? a.left[victim] : a.right[victim];
+		p = a.parent[victim];
+		boolean fromLeft = a.left[p] == victim;
+		this.replace(victim, child);
+		a.release(victim);
+		this.size--;
+		this.shrank(p, fromLeft);
+		return deleted;
+	}
+
+	/**
+	 * Deletes length characters starting at start, in O(log N) time.
+	 *
+	 * @param start
+	 *            position of beginning of string to delete
+	 *
+	 * @param length
+	 *            length of string to delete
+	 * @return a tree containing the deleted string, which shares this tree's
+	 *         arrays
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	public ArrayEditTree delete(int start, int length)
+			throws IndexOutOfBoundsException {
+		if (start < 0 || length < 0 || start + length > this.size)
+			throw new IndexOutOfBoundsException(
+					(start < 0) ? "negative first argument to delete"
+							: "delete range extends past end of string");
+		ArrayEditTree t2 = this.split(start);
+		ArrayEditTree t3 = t2.split(length);
+		this.concatenate(t3);
+		return t2;
+	}
+
+	/**
+	 * Empties this tree in O(N) time. Its slots go back to the free list of
+	 * the arrays it shares, to be reused by any tree sharing them.
+	 */
+	public void clear() {
+		this.release(this.root);
+		this.root = NIL;
+		this.size = 0;
+	}
+
+	// Hands every node of a subtree back to the free list
+	private void release(int node) {
+		if (node == NIL) {
+			return;
+		}
+		NodeArrays a = this.nodes;
+		this.release(a.left[node]);
+		this.release(a.right[node]);
+		a.release(node);
+	}
+
+	/**
+	 * Append the contents of the other tree to this one. Other is made empty
+	 * after this operation. A tree split off this one shares its arrays and
+	 * is joined in time proportional to the log of the size of the larger
+	 * tree; any other tree is copied into this one's arrays in time
+	 * proportional to its size, and its slots are freed.
+	 *
+	 * @param other
+	 * @throws IllegalArgumentException
+	 *             if this == other
+	 */
+	public void concatenate(ArrayEditTree other)
+			throws IllegalArgumentException {
+		if (this == other) {
+			throw new IllegalArgumentException();
+		}
+		int count = other.size;
+		if (count == 0) {
+			return;
+		}
+		int otherRoot = other.root;
+		int otherHeight;
+		if (other.nodes != this.nodes) {
+			String s = other.toString();
+			other.clear();
+			otherRoot = this.build(s, 0, count, NIL);
+			otherHeight = heightOf(count);
+		} else {
+			otherHeight = other.height();
+		}
+		other.root = NIL;
+		other.size = 0;
+		// Read before the split, whose joins leave their top in this.root
+		int root = this.root;
+		int height = this.height();
+		// The first node of other becomes the pivot of the join
+		int[] parts = new int[4];
+		this.split(otherRoot, otherHeight, count, 1, parts);
+		this.root = this.join(root, height, this.size, parts[0], parts[2],
+				parts[3]);
+		this.size += count;
+	}
+
+	/**
+	 * This operation is done in time proportional to the height of this tree.
+	 *
+	 * @param pos
+	 *            where to split this tree
+	 * @return a new tree containing all of the elements of this tree whose
+	 *         positions are >= position. Their nodes are removed from this
+	 *         tree, and the new tree shares its arrays.
+	 * @throws IndexOutOfBoundsException
+	 */
+	public ArrayEditTree split(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		int[] parts = new int[4];
+		this.split(this.root, this.height(), this.size, pos, parts);
+		ArrayEditTree returnTree = new ArrayEditTree(this.nodes);
+		this.root = parts[0];
+		returnTree.root = parts[2];
+		returnTree.size = this.size - pos;
+		this.size = pos;
+		return returnTree;
+	}
+
+	// Splits the subtree at node, of the given height and count nodes, into
+	// its first pos nodes and the rest, like Node.split. parts receives
+	// {left root, left height, right root, right height}.
+	private void split(int node, int height, int count, int pos, int[] parts) {
+		if (node == NIL) {
+			parts[0] = NIL;
+			parts[1] = -1;
+			parts[2] = NIL;
+			parts[3] = -1;
+			return;
+		}
+		NodeArrays a = this.nodes;
+		int left = a.left[node];
+		int right = a.right[node];
+		int leftHeight = a.balance[node] > 0 ? height - 2 : height - 1;
+		int rightHeight = a.balance[node] < 0 ? height - 2 : height - 1;
+		int leftCount = a.rank[node];
+		if (left != NIL) {
+			a.parent[left] = NIL;
+		}
+		if (right != NIL) {
+			a.parent[right] = NIL;
+		}
+		if (pos <= leftCount) {
+			this.split(left, leftHeight, leftCount, pos, parts);
+			parts[2] = this.join(parts[2], parts[3], leftCount - pos, node,
+					right, rightHeight);
+			parts[3] = this.joinedHeight;
+		} else {
+			this.split(right, rightHeight, count - leftCount - 1, pos
+					- leftCount - 1, parts);
+			parts[0] = this.join(left, leftHeight, leftCount, node, parts[0],
+					parts[1]);
+			parts[1] = this.joinedHeight;
+		}
+	}
+
+	// Joins the subtree at left, of the given height and count nodes, the
+	// detached node pivot and the subtree at right, in that order, in time
+	// proportional to the difference of their heights. Returns the root of
+	// the joined tree and leaves its height in joinedHeight. The rotations
+	// of the retrace put a new top in this.root, which callers overwrite.
+	private int join(int left, int leftHeight, int leftCount, int pivot,
+			int right, int rightHeight) {
+		NodeArrays a = this.nodes;
+		if (leftHeight > rightHeight + 1) {
+			// Down the right spine of left to a subtree no taller than
+			// rightHeight + 1, which the pivot takes the place of
+			int p = NIL;
+			int node = left;
+			int height = leftHeight;
+			int count = leftCount;
+			while (height > rightHeight + 1) {
+				count -= a.rank[node] + 1;
+				height -= a.balance[node] < 0 ? 2 : 1;
+				p = node;
+				node = a.right[node];
+			}
+			this.link(pivot, node, count, height, right, rightHeight);
+			a.right[p] = pivot;
+			a.parent[pivot] = p;
+			return this.retrace(left, leftHeight, pivot);
+		}
+		if (rightHeight > leftHeight + 1) {
+			// The mirror image, where every node on the way gains left
+			int p = NIL;
+			int node = right;
+			int height = rightHeight;
+			while (height > leftHeight + 1) {
+				a.rank[node] += leftCount + 1;
+				height -= a.balance[node] > 0 ? 2 : 1;
+				p = node;
+				node = a.left[node];
+			}
+			this.link(pivot, left, leftCount, leftHeight, node, height);
+			a.left[p] = pivot;
+			a.parent[pivot] = p;
+			return this.retrace(right, rightHeight, pivot);
+		}
+		this.link(pivot, left, leftCount, leftHeight, right, rightHeight);
+		a.parent[pivot] = NIL;
+		this.joinedHeight = Math.max(leftHeight, rightHeight) + 1;
+		return pivot;
+	}
+
+	// Makes pivot the parent of left, of the given height and count nodes,
+	// and of right
+	private void link(int pivot, int left, int leftCount, int leftHeight,
+			int right, int rightHeight) {
+		NodeArrays a = this.nodes;
+		a.left[pivot] = left;
+		a.right[pivot] = right;
+		a.rank[pivot] = leftCount;
+		a.balance[pivot] = (byte) (rightHeight - leftHeight);
+		if (left != NIL) {
+			a.parent[left] = pivot;
+		}
+		if (right != NIL) {
+			a.parent[right] = pivot;
+		}
+	}
+
+	// Rebalances the tree whose root is top, of the given height, above a
+	// pivot that a join has just hung in it, and returns its new root
+	private int retrace(int top, int height, int pivot) {
+		this.root = top;
+		this.joinedHeight = this.grew(pivot) ? height + 1 : height;
+		return this.root;
+	}
+
+	// Finds the node at pos, which must be in range
+	private int nodeAt(int pos) {
+		NodeArrays a = this.nodes;
+		int node = this.root;
+		while (true) {
+			int r = a.rank[node];
+			if (pos == r) {
+				return node;
+			} else if (pos < r) {
+				node = a.left[node];
+			} else {
+				pos -= r + 1;
+				node = a.right[node];
+			}
+		}
+	}
+
+	private int leftmost(int node) {
+		NodeArrays a = this.nodes;
+		while (a.left[node] != NIL) {
+			node = a.left[node];
+		}
+		return node;
+	}
+
+	// Returns the next node in order, or NIL after the last one
+	private int successor(int node) {
+		NodeArrays a = this.nodes;
+		if (a.right[node] != NIL) {
+			return this.leftmost(a.right[node]);
+		}
+		int p = a.parent[node];
+		while (p != NIL && a.right[p] == node) {
+			node = p;
+			p = a.parent[p];
+		}
+		return p;
+	}
+
+	// Rebalances above a node whose subtree has just grown one taller. The
+	// walk up stops at the first ancestor whose height does not change.
+	// Returns whether it did not stop, so that the whole tree grew.
+	private boolean grew(int node) {
+		NodeArrays a = this.nodes;
+		for (int p = a.parent[node]; p != NIL; p = a.parent[node]) {
+			int b = a.balance[p] += a.left[p] == node ? -1 : 1;
+			if (b == 0) {
+				return false;
+			}
+			if (b == 2 || b == -2) {
+				// After an add the rotations take back the growth. A join
+				// can leave the taller child even, and then the rotated
+				// subtree is still one taller.
+				node = this.rebalance(p);
+				if (a.balance[node] == 0) {
+					return false;
+				}
+			} else {
+				node = p;
+			}
+		}
+		return true;
+	}
+
+	// Rebalances from node up after one of its subtrees, the left one if
+	// fromLeft, has just become one shorter. The walk up stops at the first
+	// node whose height does not change.
+	private void shrank(int node, boolean fromLeft) {
+		NodeArrays a = this.nodes;
+		while (node != NIL) {
+			int p = a.parent[node];
+			boolean nodeIsLeft = a.left[p] == node;
+			int b = a.balance[node] += fromLeft ? 1 : -1;
+			if (b == 1 || b == -1) {
+				return;
+			}
+			if (b == 2 || b == -2) {
+				// The height only stays the same if the taller child was even
+				if (a.balance[this.rebalance(node)] != 0) {
+					return;
+				}
+			}
+			node = p;
+			fromLeft = nodeIsLeft;
+		}
+	}
+
+	// Restores the AVL property at node, whose balance is 2 or -2, with one or
+	// two rotations, and returns the new root of its subtree
+	private int rebalance(int node) {
+		NodeArrays a = this.nodes;
+		if (a.balance[node] > 0) {
+			if (a.balance[a.right[node]] < 0) {
+				this.rotateRight(a.right[node]);
+			}
+			return this.rotateLeft(node);
+		}
+		if (a.balance[a.left[node]] > 0) {
+			this.rotateLeft(a.left[node]);
+		}
+		return this.rotateRight(node);
+	}
+
+	// Rotates node's right child up into its place and returns it. The
+	// balances follow from the old ones without knowing any heights.
+	private int rotateLeft(int node) {
+		NodeArrays a = this.nodes;
+		int child = a.right[node];
+		a.right[node] = a.left[child];
+		if (a.left[child] != NIL) {
+			a.parent[a.left[child]] = node;
+		}
+		this.replace(node, child);
+		a.left[child] = node;
+		a.parent[node] = child;
+		a.rank[child] += a.rank[node] + 1;
+		int b = a.balance[node] - 1 - Math.max(a.balance[child], 0);
+		a.balance[node] = (byte) b;
+		a.balance[child] += -1 + Math.min(b, 0);
+		return child;
+	}
+
+	// The mirror image of rotateLeft
+	private int rotateRight(int node) {
+		NodeArrays a = this.nodes;
+		int child = a.left[node];
+		a.left[node] = a.right[child];
+		if (a.right[child] != NIL) {
+			a.parent[a.right[child]] = node;
+		}
+		this.replace(node, child);
+		a.right[child] = node;
+		a.parent[node] = child;
+		a.rank[node] -= a.rank[child] + 1;
+		int b = a.balance[node] + 1 - Math.min(a.balance[child], 0);
+		a.balance[node] = (byte) b;
+		a.balance[child] += 1 + Math.max(b, 0);
+		return child;
+	}
+
+	// Puts node's replacement, which may be NIL, where node hangs from its
+	// parent or at the root
+	private void replace(int node, int replacement) {
+		NodeArrays a = this.nodes;
+		int p = a.parent[node];
+		if (p == NIL) {
+			this.root = replacement;
+		} else if (a.left[p] == node) {
+			a.left[p] = replacement;
+		} else {
+			a.right[p] = replacement;
+		}
+		if (replacement != NIL) {
+			a.parent[replacement] = p;
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package editortrees;
+
+import static editortrees.TestUtil.maxHeight;
+import static editortrees.TestUtil.randomText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.ArrayEditTree}
+ */
+public class ArrayEditTreeTest {
+
+	@Test
+	public void testEmpty() {
+		ArrayEditTree t = new ArrayEditTree();
+		assertEquals("", t.toString());
+		assertEquals(0, t.size());
+		assertEquals(-1, t.height());
+		assertEquals("", new ArrayEditTree("").toString());
+	}
+
+	@Test
+	public void testConstructorWithString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		String s = sb.toString();
+		ArrayEditTree t = new ArrayEditTree(s);
+		assertEquals(s, t.toString());
+		assertEquals(1000, t.size());
+		assertEquals(9, t.height());
+		assertEquals(1000, t.slots());
+		for (int i = 0; i < s.length(); i++) {
+			assertEquals(s.charAt(i), t.get(i));
+		}
+		assertEquals(s.substring(100, 300), t.get(100, 200));
+	}
+
+	@Test
+	public void testAddAtEndStaysBalanced() {
+		ArrayEditTree t = new ArrayEditTree();
+		for (int i = 0; i < 1000; i++) {
+			t.add('a');
+		}
+		assertEquals(9, t.height());
+		t = new ArrayEditTree(0);
+		for (int i = 0; i < 1000; i++) {
+			t.add('b', 0);
+		}
+		assertEquals(9, t.height());
+	}
+
+	@Test
+	public void testRandomAddsAndDeletes() {
+		Random random = new Random(71);
+		ArrayEditTree t = new ArrayEditTree("seed text");
+		StringBuilder expected = new StringBuilder("seed text");
+		for (int k = 0; k < 20000; k++) {
+			if (random.nextInt(5) < 2 && expected.length() > 0) {
+				int pos = random.nextInt(expected.length());
+				assertEquals(expected.charAt(pos), t.delete(pos));
+				expected.deleteCharAt(pos);
+			} else {
+				char c = (char) ('a' + random.nextInt(26));
+				int pos = random.nextInt(expected.length() + 1);
+				t.add(c, pos);
+				expected.insert(pos, c);
+			}
+			if (k % 1000 == 0) {
+				assertEquals(expected.toString(), t.toString());
+				assertTrue(t.height() <= maxHeight(t.size()));
+			}
+		}
+		assertEquals(expected.toString(), t.toString());
+		assertEquals(expected.length(), t.size());
+		assertTrue(t.height() <= maxHeight(t.size()));
+	}
+
+	@Test
+	public void testDeleteDownToEmpty() {
+		String s = "abcdefghijklmnopqrstuvwxyz";
+		ArrayEditTree t = new ArrayEditTree(s);
+		StringBuilder expected = new StringBuilder(s);
+		Random random = new Random(73);
+		while (expected.length() > 0) {
+			int pos = random.nextInt(expected.length());
+			assertEquals(expected.charAt(pos), t.delete(pos));
+			expected.deleteCharAt(pos);
+			assertEquals(expected.toString(), t.toString());
+		}
+		assertEquals(-1, t.height());
+		t.add('z');
+		assertEquals("z", t.toString());
+	}
+
+	@Test
+	public void testDeletedSlotsAreReused() {
+		ArrayEditTree t = new ArrayEditTree("0123456789");
+		Random random = new Random(79);
+		for (int k = 0; k < 1000; k++) {
+			int pos = random.nextInt(t.size());
+			t.add(t.delete(pos), random.nextInt(t.size() + 1));
+		}
+		assertEquals(10, t.size());
+		assertEquals(10, t.slots());
+	}
+
+	@Test
+	public void testSplitAndConcatenate() {
+		String s = randomText(new Random(83), 1000);
+		for (int pos : new int[] { 0, 1, 500, 999, 1000 }) {
+			ArrayEditTree t = new ArrayEditTree(s);
+			ArrayEditTree tail = t.split(pos);
+			assertEquals(s.substring(0, pos), t.toString());
+			assertEquals(s.substring(pos), tail.toString());
+			assertTrue(t.height() <= maxHeight(t.size()));
+			assertTrue(tail.height() <= maxHeight(tail.size()));
+			t.concatenate(tail);
+			assertEquals(s, t.toString());
+			assertEquals(0, tail.size());
+			assertTrue(t.height() <= maxHeight(t.size()));
+			// Nodes were moved, not copied
+			assertEquals(1000, t.slots());
+		}
+	}
+
+	@Test
+	public void testConcatenateUnevenTrees() {
+		ArrayEditTree t = new ArrayEditTree("x");
+		ArrayEditTree big = t.split(0);
+		for (int i = 0; i < 5000; i++) {
+			big.add((char) ('a' + i % 26));
+		}
+		String expected = big.toString();
+		t.add('<');
+		ArrayEditTree end = t.split(1);
+		end.add('>');
+		t.concatenate(big);
+		t.concatenate(end);
+		assertEquals("<" + expected + ">", t.toString());
+		assertTrue(t.height() <= maxHeight(t.size()));
+		ArrayEditTree small = t.split(2);
+		small.concatenate(t);
+		assertEquals(expected.substring(1) + ">" + "<" + expected.charAt(0),
+				small.toString());
+		assertTrue(small.height() <= maxHeight(small.size()));
+	}
+
+	@Test
+	public void testConcatenateCopiesOtherArrays() {
+		ArrayEditTree t = new ArrayEditTree("hello");
+		ArrayEditTree other = new ArrayEditTree(" world");
+		t.concatenate(other);
+		assertEquals("hello world", t.toString());
+		assertEquals("", other.toString());
+		other.add('!');
+		assertEquals("!", other.toString());
+		assertEquals(6, other.slots());
+		try {
+			t.concatenate(t);
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testDeleteRange() {
+		ArrayEditTree t = new ArrayEditTree("abcdefghij");
+		ArrayEditTree removed = t.delete(2, 5);
+		assertEquals("abhij", t.toString());
+		assertEquals("cdefg", removed.toString());
+		t.concatenate(removed);
+		assertEquals("abhijcdefg", t.toString());
+		assertEquals("", t.delete(3, 0).toString());
+		assertEquals("abhijcdefg", t.delete(0, 10).toString());
+		assertEquals("", t.toString());
+	}
+
+	@Test
+	public void testRandomSplitsAndConcatenates() {
+		Random random = new Random(89);
+		ArrayEditTree t = new ArrayEditTree(randomText(random, 200));
+		StringBuilder expected = new StringBuilder(t.toString());
+		for (int k = 0; k < 5000; k++) {
+			int start = random.nextInt(expected.length() + 1);
+			int length = random.nextInt(expected.length() - start + 1);
+			ArrayEditTree removed = t.delete(start, length);
+			String cut = expected.substring(start, start + length);
+			assertEquals(cut, removed.toString());
+			expected.delete(start, start + length);
+			int pos = random.nextInt(expected.length() + 1);
+			ArrayEditTree tail = t.split(pos);
+			t.concatenate(removed);
+			t.concatenate(tail);
+			expected.insert(pos, cut);
+			t.add((char) ('a' + random.nextInt(26)), 0);
+			expected.insert(0, t.get(0));
+			assertTrue(t.height() <= maxHeight(t.size()));
+			if (k % 100 == 0) {
+				assertEquals(expected.toString(), t.toString());
+			}
+		}
+		assertEquals(expected.toString(), t.toString());
+		assertEquals(expected.length(), t.slots());
+	}
+
+	@Test
+	public void testClearFreesSlots() {
+		ArrayEditTree t = new ArrayEditTree("0123456789");
+		ArrayEditTree tail = t.split(4);
+		tail.clear();
+		assertEquals("", tail.toString());
+		for (int i = 0; i < 6; i++) {
+			t.add('x');
+		}
+		assertEquals("0123xxxxxx", t.toString());
+		assertEquals(10, t.slots());
+	}
+
+	@Test
+	public void testOutOfBounds() {
+		ArrayEditTree t = new ArrayEditTree("abc");
+		try {
+			t.add('x', 4);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.delete(3);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.get(1, 3);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			new ArrayEditTree(-1);
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+		assertEquals("abc", t.toString());
+	}
+}
@@ -0,0 +1,241 @@
+package editortrees;
+
+// A node in a height-balanced binary tree with rank, where each node stands
+// for a block of characters instead of a single one: a ChunkNode holds its
+// block, a PieceNode points at it. Rank and size are counted in characters,
+// as longs. Empty subtrees are null.
+//
+// The rotations, joins and splits are the same for every kind of block, so
+// they live here. A subclass tells how long a block is, how to cut it in two
+// and whether two neighbouring blocks should become one when a join puts
+// them side by side.
+
+abstract class BlockNode<N extends BlockNode<N>> {
+
+	N left, right; // subtrees
+	long rank; // Number of characters in left subtree
+	long size; // Number of characters in this subtree
+	int height;
+
+	// Returns the number of characters in this block
+	abstract long length();
+
+	// Keeps the first offset characters of this block and returns a new,
+	// detached node for the rest
+	abstract N cut(long offset);
+
+	// Whether this block and next, the block right after it, should be
+	// merged when a join brings them together
+	boolean mergeable(N next) {
+		return false;
+	}
+
+	// Moves characters of next, the block right after this one, into this
+	// one. Returns whether next was emptied. Sizes are not updated.
+	boolean merge(N next) {
+		return false;
+	}
+
+	// Recomputes rank, size and height from the children
+	void update() {
+		long leftSize = size(this.left);
+		this.rank = leftSize;
+		this.size = leftSize + this.length() + size(this.right);
+		this.height = 1 + Math.max(height(this.left), height(this.right));
+	}
+
+	// Returns the height of a subtree, -1 for the empty one
+	static int height(BlockNode<?> node) {
+		return node == null ? -1 : node.height;
+	}
+
+	// Returns the number of characters in a subtree
+	static long size(BlockNode<?> node) {
+		return node == null ? 0 : node.size;
+	}
+
+	// Returns the number of blocks in a subtree
+	static int count(BlockNode<?> node) {
+		return node == null ? 0 : count(node.left) + 1 + count(node.right);
+	}
+
+	private static <N extends BlockNode<N>> N rotateLeft(N node) {
+		N child = node.right;
+		node.right = child.left;
+		child.left = node;
+		node.update();
+		child.update();
+		return child;
+	}
+
+	private static <N extends BlockNode<N>> N rotateRight(N node) {
+		N child = node.left;
+		node.left = child.right;
+		child.right = node;
+		node.update();
+		child.update();
+		return child;
+	}
+
+	// Restores the AVL property at node, whose subtrees are already balanced
+	// and differ in height by at most two. Returns the new subtree root.
+	static <N extends BlockNode<N>> N balance(N node) {
+		node.update();
+		int diff = height(node.left) - height(node.right);
+		if (diff > 1) {
+			if (height(node.left.left) < height(node.left.right)) {
+				node.left = rotateLeft(node.left);
+			}
+			return rotateRight(node);
+		}
+		if (diff < -1) {
+			if (height(node.right.right) < height(node.right.left)) {
+				node.right = rotateRight(node.right);
+			}
+			return rotateLeft(node);
+		}
+		return node;
+	}
+
+	/**
+	 * Joins two balanced trees around a pivot node, in time proportional to
+	 * the difference of their heights. Every character of left comes before
+	 * the pivot, every character of right after it.
+	 *
+	 * @param left
+	 * @param pivot
+	 * @param right
+	 * @return the root of the joined tree
+	 */
+	static <N extends BlockNode<N>> N join(N left, N pivot, N right) {
+		int leftHeight = height(left);
+		int rightHeight = height(right);
+		if (leftHeight > rightHeight + 1) {
+			left.right = join(left.right, pivot, right);
+			return balance(left);
+		}
+		if (rightHeight > leftHeight + 1) {
+			right.left = join(left, pivot, right.left);
+			return balance(right);
+		}
+		pivot.left = left;
+		pivot.right = right;
+		pivot.update();
+		return pivot;
+	}
+
+	/**
+	 * Joins two balanced trees without a pivot, in time proportional to the
+	 * log of the number of blocks in the larger one. The last block of left
+	 * and the first block of right are merged if they are mergeable.
+	 *
+	 * @param left
+	 * @param right
+	 * @return the root of the joined tree
+	 */
+	static <N extends BlockNode<N>> N join(N left, N right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+		N last = last(left);
+		left = removeLast(left);
+		N first = first(right);
+		if (!last.mergeable(first)) {
+			return join(left, last, right);
+		}
+		right = removeFirst(right);
+		boolean emptied = last.merge(first);
+		last.update();
+		if (emptied) {
+			// The merged block can be mergeable with its other neighbour
+			// too, so it is joined to it the same way
+			return join(join(left, last), right);
+		}
+		first.update();
+		return join(left, last, join(null, first, right));
+	}
+
+	// Returns the first block of a non-empty tree
+	static <N extends BlockNode<N>> N first(N node) {
+		while (node.left != null) {
+			node = node.left;
+		}
+		return node;
+	}
+
+	// Returns the last block of a non-empty tree
+	static <N extends BlockNode<N>> N last(N node) {
+		while (node.right != null) {
+			node = node.right;
+		}
+		return node;
+	}
+
+	// Detaches the first node of a non-empty tree; returns what remains
+	static <N extends BlockNode<N>> N removeFirst(N node) {
+		if (node.left == null) {
+			N rest = node.right;
+			node.right = null;
+			node.update();
+			return rest;
+		}
+		node.left = removeFirst(node.left);
+		return balance(node);
+	}
+
+	// Detaches the last node of a non-empty tree; returns what remains
+	static <N extends BlockNode<N>> N removeLast(N node) {
+		if (node.right == null) {
+			N rest = node.left;
+			node.left = null;
+			node.update();
+			return rest;
+		}
+		node.right = removeLast(node.right);
+		return balance(node);
+	}
+
+	// Inserts a detached node in front of every other node of the tree
+	static <N extends BlockNode<N>> N insertFirst(N node, N created) {
+		if (node == null) {
+			created.update();
+			return created;
+		}
+		node.left = insertFirst(node.left, created);
+		return balance(node);
+	}
+
+	/**
+	 * Splits a tree so that the first pos characters end up in the left part
+	 * and the rest in the right part. A block straddling pos is cut in two.
+	 *
+	 * @param node
+	 * @param pos
+	 * @param parts
+	 *            receives {left part, right part}
+	 */
+	static <N extends BlockNode<N>> void split(N node, long pos, N[] parts) {
+		if (node == null) {
+			parts[0] = null;
+			parts[1] = null;
+			return;
+		}
+		N left = node.left;
+		N right = node.right;
+		long end = node.rank + node.length();
+		if (pos <= node.rank) {
+			split(left, pos, parts);
+			parts[1] = join(parts[1], node, right);
+		} else if (pos >= end) {
+			split(right, pos - end, parts);
+			parts[0] = join(left, node, parts[0]);
+		} else {
+			N tail = node.cut(pos - node.rank);
+			parts[0] = join(left, node, null);
+			parts[1] = join(null, tail, right);
+		}
+	}
+}
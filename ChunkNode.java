@@ -0,0 +1,297 @@
+package editortrees;
+
+import java.util.Arrays;
+
+// A node in a height-balanced binary tree with rank, where each node holds a
+// contiguous block of characters instead of a single one. Rank and size are
+// counted in characters, not in nodes, and always fit in an int. Empty
+// subtrees are null.
+//
+// A block grows up to capacity characters as they are added, and is never
+// left less than a quarter full next to another block: deleting from it or
+// joining it to a neighbour merges the two, or evens them out if together
+// they do not fit in one. Only the first and last block of a tree, such as
+// the pieces a split cuts off, may stay underfull.
+
+public class ChunkNode extends BlockNode<ChunkNode> {
+	private static final int MIN_BLOCK = 16; // Smallest block allocated
+
+	char[] chars; // backing block, only the first length are used
+	int length; // Number of characters used in chars
+	final int capacity; // Number of characters chars may grow to
+
+	// ChunkNode constructor with an empty block that can grow to capacity
+	public ChunkNode(int capacity) {
+		this.chars = new char[Math.min(capacity, MIN_BLOCK)];
+		this.capacity = capacity;
+		this.length = 0;
+		this.size = 0;
+		this.height = 0;
+	}
+
+	// ChunkNode constructor holding chars[from, to) of the given array in a
+	// block just large enough for them
+	public ChunkNode(char[] source, int from, int to, int capacity) {
+		this.chars = Arrays.copyOfRange(source, from, to);
+		this.capacity = capacity;
+		this.length = to - from;
+		this.size = this.length;
+		this.height = 0;
+	}
+
+	@Override
+	long length() {
+		return this.length;
+	}
+
+	// The second part moves to a block of its own size
+	@Override
+	ChunkNode cut(long offset) {
+		int at = (int) offset;
+		ChunkNode tail = new ChunkNode(this.chars, at, this.length,
+				this.capacity);
+		this.length = at;
+		return tail;
+	}
+
+	// Makes room for at least count characters in chars, doubling it but
+	// not beyond capacity unless count requires it
+	private void reserve(int count) {
+		if (count > this.chars.length) {
+			int grown = Math.min(this.capacity, Math.max(MIN_BLOCK,
+					2 * this.chars.length));
+			this.chars = Arrays.copyOf(this.chars, Math.max(count, grown));
+		}
+	}
+
+	// Whether this block is less than a quarter full
+	private boolean underfull() {
+		return this.length < this.capacity / 4;
+	}
+
+	@Override
+	boolean mergeable(ChunkNode next) {
+		return this.underfull() || next.underfull();
+	}
+
+	// All of next moves to the end of this block if it fits, otherwise the
+	// characters are shared out evenly between the two
+	@Override
+	boolean merge(ChunkNode next) {
+		int total = this.length + next.length;
+		if (total <= this.capacity) {
+			this.reserve(total);
+			System.arraycopy(next.chars, 0, this.chars, this.length,
+					next.length);
+			this.length = total;
+			next.length = 0;
+			return true;
+		}
+		int half = total / 2;
+		if (this.length < half) {
+			int moved = half - this.length;
+			this.reserve(half);
+			System.arraycopy(next.chars, 0, this.chars, this.length, moved);
+			System.arraycopy(next.chars, moved, next.chars, 0, next.length
+					- moved);
+			next.length -= moved;
+		} else {
+			int moved = this.length - half;
+			next.reserve(next.length + moved);
+			System.arraycopy(next.chars, 0, next.chars, moved, next.length);
+			System.arraycopy(this.chars, half, next.chars, 0, moved);
+			next.length += moved;
+		}
+		this.length = half;
+		return false;
+	}
+
+	// Merges node with the last block of its left subtree; returns the new
+	// root of the subtree
+	private static ChunkNode mergeWithPrevious(ChunkNode node) {
+		ChunkNode prev = last(node.left);
+		ChunkNode rest = removeLast(node.left);
+		boolean emptied = prev.merge(node);
+		prev.update();
+		if (emptied) {
+			return join(rest, prev, node.right);
+		}
+		node.left = join(rest, prev, null);
+		return balance(node);
+	}
+
+	// Merges node with the first block of its right subtree; returns the new
+	// root of the subtree
+	private static ChunkNode mergeWithNext(ChunkNode node) {
+		ChunkNode next = first(node.right);
+		ChunkNode rest = removeFirst(node.right);
+		if (node.merge(next)) {
+			node.right = rest;
+		} else {
+			next.update();
+			node.right = join(null, next, rest);
+		}
+		return balance(node);
+	}
+
+	/**
+	 * Inserts c so that it ends up at position pos of the tree.
+	 *
+	 * @param node
+	 * @param c
+	 * @param pos
+	 * @param capacity
+	 *            capacity of newly created chunks
+	 * @return the new root of the tree
+	 */
+	static ChunkNode insert(ChunkNode node, char c, int pos, int capacity) {
+		if (node == null) {
+			ChunkNode created = new ChunkNode(capacity);
+			created.chars[0] = c;
+			created.length = 1;
+			created.update();
+			return created;
+		}
+		int rank = (int) node.rank;
+		if (pos < rank) {
+			node.left = insert(node.left, c, pos, capacity);
+			return balance(node);
+		}
+		if (pos > rank + node.length) {
+			node.right = insert(node.right, c, pos - rank - node.length,
+					capacity);
+			return balance(node);
+		}
+		int offset = pos - rank;
+		if (node.length >= node.capacity) {
+			// Full chunk: move its upper half into a new successor chunk
+			int half = node.length / 2;
+			node.right = insertFirst(node.right, node.cut(half));
+			if (offset > half) {
+				node.right = insert(node.right, c, offset - half, capacity);
+				return balance(node);
+			}
+		}
+		node.reserve(node.length + 1);
+		System.arraycopy(node.chars, offset, node.chars, offset + 1,
+				node.length - offset);
+		node.chars[offset] = c;
+		node.length++;
+		return balance(node);
+	}
+
+	/**
+	 * Deletes the character at position pos of the tree. Chunks that become
+	 * empty are unlinked, and chunks that become underfull are merged with a
+	 * neighbour. The deleted character is stored in removed[0].
+	 *
+	 * @param node
+	 * @param pos
+	 * @param removed
+	 * @return the new root of the tree
+	 */
+	static ChunkNode delete(ChunkNode node, int pos, char[] removed) {
+		return delete(node, pos, removed, new int[1]);
+	}
+
+	// Bits of pending[0] in delete: an underfull chunk with no neighbour in
+	// the subtree returned is its first or its last, and is merged by the
+	// first ancestor that has a neighbour for it
+	private static final int FIRST = 1;
+	private static final int LAST = 2;
+
+	private static ChunkNode delete(ChunkNode node, int pos, char[] removed,
+			int[] pending) {
+		int rank = (int) node.rank;
+		if (pos < rank) {
+			node.left = delete(node.left, pos, removed, pending);
+			if ((pending[0] & LAST) != 0) {
+				pending[0] = 0;
+				return mergeWithPrevious(node);
+			}
+			pending[0] &= FIRST;
+			return balance(node);
+		}
+		if (pos >= rank + node.length) {
+			node.right = delete(node.right, pos - rank - node.length,
+					removed, pending);
+			if ((pending[0] & FIRST) != 0) {
+				pending[0] = 0;
+				return mergeWithNext(node);
+			}
+			pending[0] &= LAST;
+			return balance(node);
+		}
+		int offset = pos - rank;
+		removed[0] = node.chars[offset];
+		System.arraycopy(node.chars, offset + 1, node.chars, offset,
+				node.length - offset - 1);
+		node.length--;
+		if (node.length == 0) {
+			return join(node.left, node.right);
+		}
+		if (!node.underfull()) {
+			return balance(node);
+		}
+		if (node.left != null) {
+			return mergeWithPrevious(node);
+		}
+		if (node.right != null) {
+			return mergeWithNext(node);
+		}
+		pending[0] = FIRST | LAST;
+		return balance(node);
+	}
+
+	// Gets the character at position pos
+	static char get(ChunkNode node, int pos) {
+		while (true) {
+			int rank = (int) node.rank;
+			if (pos < rank) {
+				node = node.left;
+			} else if (pos < rank + node.length) {
+				return node.chars[pos - rank];
+			} else {
+				pos -= rank + node.length;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * Copies the characters in positions [from, to) of the subtree into dst,
+	 * one block copy per chunk.
+	 *
+	 * @param node
+	 * @param from
+	 * @param to
+	 * @param dst
+	 * @param dstOff
+	 *            where position from goes in dst
+	 */
+	static void copy(ChunkNode node, int from, int to, char[] dst,
+			int dstOff) {
+		while (node != null && from < to) {
+			int start = (int) node.rank;
+			int end = start + node.length;
+			if (from < start) {
+				copy(node.left, from, Math.min(to, start), dst, dstOff);
+			}
+			int lo = Math.max(from, start);
+			int hi = Math.min(to, end);
+			if (lo < hi) {
+				System.arraycopy(node.chars, lo - start, dst,
+						dstOff + lo - from, hi - lo);
+			}
+			if (to <= end) {
+				return;
+			}
+			// Continue in the right subtree without recursing
+			int next = Math.max(from, end);
+			dstOff += next - from;
+			from = next - end;
+			to -= end;
+			node = node.right;
+		}
+	}
+}
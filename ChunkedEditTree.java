@@ -0,0 +1,250 @@
+package editortrees;
+
+// A height-balanced tree with rank that stores the text in blocks of
+// characters, so that a large document costs a few bytes per character
+// instead of a whole Node per character.
+
+public class ChunkedEditTree {
+	public static final int DEFAULT_CHUNK_CAPACITY = 256;
+
+	private ChunkNode root;
+	private final int chunkCapacity;
+
+	/**
+	 * Construct an empty tree using the default chunk capacity
+	 */
+	public ChunkedEditTree() {
+		this(DEFAULT_CHUNK_CAPACITY);
+	}
+
+	/**
+	 * Construct an empty tree whose chunks hold up to chunkCapacity characters
+	 *
+	 * @param chunkCapacity
+	 * @throws IllegalArgumentException
+	 *             if chunkCapacity is less than 2
+	 */
+	public ChunkedEditTree(int chunkCapacity) {
+		if (chunkCapacity < 2) {
+			throw new IllegalArgumentException("chunk capacity must be >= 2");
+		}
+		this.chunkCapacity = chunkCapacity;
+		this.root = null;
+	}
+
+	/**
+	 * Create a tree whose toString is s, in O(N) time, using the default chunk
+	 * capacity.
+	 *
+	 * @param s
+	 */
+	public ChunkedEditTree(String s) {
+		this(s, DEFAULT_CHUNK_CAPACITY);
+	}
+
+	/**
+	 * Create a tree whose toString is s, in O(N) time. Chunks are filled to
+	 * capacity so that the tree is as small as possible.
+	 *
+	 * @param s
+	 * @param chunkCapacity
+	 */
+	public ChunkedEditTree(String s, int chunkCapacity) {
+		this(chunkCapacity);
+		char[] chars = s.toCharArray();
+		int chunks = (chars.length + chunkCapacity - 1) / chunkCapacity;
+		this.root = build(chars, 0, chunks);
+	}
+
+	// Builds a perfectly balanced tree out of chunks [first, last)
+	private ChunkNode build(char[] chars, int first, int last) {
+		if (first >= last) {
+			return null;
+		}
+		int mid = (first + last) >>> 1;
+		int from = mid * this.chunkCapacity;
+		int to = Math.min(chars.length, from + this.chunkCapacity);
+		ChunkNode node = new ChunkNode(chars, from, to, this.chunkCapacity);
+		node.left = build(chars, first, mid);
+		node.right = build(chars, mid + 1, last);
+		node.update();
+		return node;
+	}
+
+	/**
+	 * @return the number of characters each chunk of this tree can hold
+	 */
+	public int chunkCapacity() {
+		return this.chunkCapacity;
+	}
+
+	/**
+	 *
+	 * @return the height of this tree, counted in chunks
+	 */
+	public int height() {
+		return ChunkNode.height(this.root);
+	}
+
+	// Number of chunks the text is stored in
+	int chunks() {
+		return ChunkNode.count(this.root);
+	}
+
+	/**
+	 * @return the number of characters in this tree
+	 */
+	public int size() {
+		return (int) ChunkNode.size(this.root);
+	}
+
+	/**
+	 * Return the string produced by an inorder traversal of this tree
+	 */
+	@Override
+	public String toString() {
+		int size = size();
+		char[] chars = new char[size];
+		ChunkNode.copy(this.root, 0, size, chars, 0);
+		return new String(chars);
+	}
+
+	/**
+	 * @param pos
+	 *            position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char get(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos >= size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		return ChunkNode.get(this.root, pos);
+	}
+
+	/**
+	 * This method operates in O(length + log N), copying whole blocks at a
+	 * time.
+	 *
+	 * @param pos
+	 *            location of the beginning of the string to retrieve
+	 * @param length
+	 *            length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException
+	 *             unless both pos and pos+length-1 are legitimate indexes
+	 *             within this tree.
+	 */
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+		if (pos < 0 || length < 0 || pos + length > size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		char[] chars = new char[length];
+		ChunkNode.copy(this.root, pos, pos + length, chars, 0);
+		return new String(chars);
+	}
+
+	/**
+	 * @param c
+	 *            character to add to the end of this tree.
+	 */
+	public void add(char c) {
+		this.root = ChunkNode.insert(this.root, c, size(), this.chunkCapacity);
+	}
+
+	/**
+	 * @param c
+	 *            character to add
+	 * @param pos
+	 *            character added in this inorder position
+	 * @throws IndexOutOfBoundsException
+	 *             id pos is negative or too large for this tree
+	 */
+	public void add(char c, int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		this.root = ChunkNode.insert(this.root, c, pos, this.chunkCapacity);
+	}
+
+	/**
+	 *
+	 * @param pos
+	 *            position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char delete(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos >= size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		char[] removed = new char[1];
+		this.root = ChunkNode.delete(this.root, pos, removed);
+		return removed[0];
+	}
+
+	/**
+	 * Deletes length characters starting at start, in O(log N) time.
+	 *
+	 * @param start
+	 *            position of beginning of string to delete
+	 *
+	 * @param length
+	 *            length of string to delete
+	 * @return a ChunkedEditTree containing the deleted string
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	public ChunkedEditTree delete(int start, int length)
+			throws IndexOutOfBoundsException {
+		if (start < 0 || length < 0 || start + length > size())
+			throw new IndexOutOfBoundsException(
+					(start < 0) ? "negative first argument to delete"
+							: "delete range extends past end of string");
+		ChunkedEditTree t2 = this.split(start);
+		ChunkedEditTree t3 = t2.split(length);
+		this.concatenate(t3);
+		return t2;
+	}
+
+	/**
+	 * Append (in time proportional to the log of the size of the larger tree)
+	 * the contents of the other tree to this one. Other is made empty after
+	 * this operation.
+	 *
+	 * @param other
+	 * @throws IllegalArgumentException
+	 *             if this == other
+	 */
+	public void concatenate(ChunkedEditTree other)
+			throws IllegalArgumentException {
+		if (this == other) {
+			throw new IllegalArgumentException();
+		}
+		this.root = ChunkNode.join(this.root, other.root);
+		other.root = null;
+	}
+
+	/**
+	 * This operation is done in time proportional to the height of this tree.
+	 *
+	 * @param pos
+	 *            where to split this tree
+	 * @return a new tree containing all of the elements of this tree whose
+	 *         positions are >= position. Their nodes are removed from this
+	 *         tree.
+	 * @throws IndexOutOfBoundsException
+	 */
+	public ChunkedEditTree split(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		ChunkNode[] parts = new ChunkNode[2];
+		ChunkNode.split(this.root, pos, parts);
+		ChunkedEditTree returnTree = new ChunkedEditTree(this.chunkCapacity);
+		this.root = parts[0];
+		returnTree.root = parts[1];
+		return returnTree;
+	}
+}
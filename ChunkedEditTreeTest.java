@@ -0,0 +1,205 @@
+package editortrees;
+
+import static editortrees.TestUtil.maxHeight;
+import static editortrees.TestUtil.randomText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.ChunkedEditTree}
+ */
+public class ChunkedEditTreeTest {
+
+	@Test
+	public void testEmpty() {
+		ChunkedEditTree t = new ChunkedEditTree();
+		assertEquals("", t.toString());
+		assertEquals(0, t.size());
+		assertEquals(-1, t.height());
+	}
+
+	@Test
+	public void testConstructorWithString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		String s = sb.toString();
+		ChunkedEditTree t = new ChunkedEditTree(s, 64);
+		assertEquals(s, t.toString());
+		assertEquals(1000, t.size());
+		assertEquals(4, t.height()); // 16 chunks
+		for (int i = 0; i < s.length(); i++) {
+			assertEquals(s.charAt(i), t.get(i));
+		}
+		assertEquals(s.substring(100, 300), t.get(100, 200));
+	}
+
+	@Test
+	public void testAddSplitsFullChunks() {
+		ChunkedEditTree t = new ChunkedEditTree(4);
+		for (int i = 0; i < 100; i++) {
+			t.add((char) ('0' + i % 10));
+		}
+		t.add('x', 0);
+		t.add('y', 50);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			expected.append((char) ('0' + i % 10));
+		}
+		expected.insert(0, 'x');
+		expected.insert(50, 'y');
+		assertEquals(expected.toString(), t.toString());
+		assertEquals(102, t.size());
+		assertTrue(t.height() <= maxHeight(102));
+	}
+
+	@Test
+	public void testRandomAddDelete() {
+		Random random = new Random(230);
+		ChunkedEditTree t = new ChunkedEditTree(8);
+		StringBuilder expected = new StringBuilder();
+		for (int k = 0; k < 20000; k++) {
+			if (expected.length() > 0 && random.nextInt(3) == 0) {
+				int pos = random.nextInt(expected.length());
+				assertEquals(expected.charAt(pos), t.delete(pos));
+				expected.deleteCharAt(pos);
+			} else {
+				int pos = random.nextInt(expected.length() + 1);
+				char c = (char) ('a' + random.nextInt(26));
+				t.add(c, pos);
+				expected.insert(pos, c);
+			}
+		}
+		assertEquals(expected.toString(), t.toString());
+		assertEquals(expected.length(), t.size());
+		assertTrue(t.height() <= maxHeight(expected.length()));
+	}
+
+	// Every chunk but the first and the last holds at least a quarter of
+	// the capacity
+	private static void assertFilled(ChunkedEditTree t) {
+		int quarter = t.chunkCapacity() / 4;
+		assertTrue(t.chunks() <= t.size() / quarter + 2);
+		assertTrue(t.height() <= maxHeight(t.chunks()));
+	}
+
+	@Test
+	public void testRangeDeletesKeepChunksFilled() {
+		Random random = new Random(233);
+		StringBuilder expected = new StringBuilder(randomText(random, 100000));
+		ChunkedEditTree t = new ChunkedEditTree(expected.toString());
+		for (int k = 0; k < 15000; k++) {
+			int pos = random.nextInt(expected.length() - 1);
+			assertEquals(expected.substring(pos, pos + 2), t.delete(pos, 2)
+					.toString());
+			expected.delete(pos, pos + 2);
+		}
+		assertEquals(expected.toString(), t.toString());
+		assertFilled(t);
+	}
+
+	@Test
+	public void testDeletesKeepChunksFilled() {
+		Random random = new Random(239);
+		StringBuilder expected = new StringBuilder(randomText(random, 100000));
+		ChunkedEditTree t = new ChunkedEditTree(expected.toString());
+		while (expected.length() > 10000) {
+			int pos = random.nextInt(expected.length());
+			assertEquals(expected.charAt(pos), t.delete(pos));
+			expected.deleteCharAt(pos);
+		}
+		assertEquals(expected.toString(), t.toString());
+		assertFilled(t);
+	}
+
+	@Test
+	public void testRandomEditsWithMerges() {
+		Random random = new Random(241);
+		ChunkedEditTree t = new ChunkedEditTree(16);
+		StringBuilder expected = new StringBuilder();
+		for (int k = 0; k < 20000; k++) {
+			int choice = random.nextInt(4);
+			if (choice == 0 && expected.length() > 0) {
+				int pos = random.nextInt(expected.length());
+				assertEquals(expected.charAt(pos), t.delete(pos));
+				expected.deleteCharAt(pos);
+			} else if (choice == 1 && expected.length() > 0) {
+				int pos = random.nextInt(expected.length());
+				int length = random.nextInt(Math.min(40, expected.length()
+						- pos)) + 1;
+				t.delete(pos, length);
+				expected.delete(pos, pos + length);
+			} else {
+				int pos = random.nextInt(expected.length() + 1);
+				char c = (char) ('a' + random.nextInt(26));
+				t.add(c, pos);
+				expected.insert(pos, c);
+			}
+			if (k % 100 == 0) {
+				assertEquals(expected.toString(), t.toString());
+			}
+		}
+		assertEquals(expected.toString(), t.toString());
+		assertFilled(t);
+	}
+
+	@Test
+	public void testSplitAndConcatenate() {
+		String s = "abcdefghijklmnopqrstuvwxyz0123456789";
+		for (int i = 0; i <= s.length(); i++) {
+			ChunkedEditTree t1 = new ChunkedEditTree(s, 5);
+			ChunkedEditTree t2 = t1.split(i);
+			assertEquals(s.substring(0, i), t1.toString());
+			assertEquals(s.substring(i), t2.toString());
+			t2.add('!', 0);
+			t1.concatenate(t2);
+			assertEquals(s.substring(0, i) + "!" + s.substring(i),
+					t1.toString());
+			assertEquals("", t2.toString());
+		}
+	}
+
+	@Test
+	public void testDeleteRange() {
+		String s = "abcdefghijklmnopqrstuvwxyz";
+		ChunkedEditTree t = new ChunkedEditTree(s, 4);
+		ChunkedEditTree removed = t.delete(3, 10);
+		assertEquals("defghijklm", removed.toString());
+		assertEquals("abcnopqrstuvwxyz", t.toString());
+	}
+
+	@Test
+	public void testThrowsIndexExceptions() {
+		ChunkedEditTree t = new ChunkedEditTree("abc");
+		try {
+			t.get(3);
+			fail("Did not throw IndexOutOfBoundsException for get");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.add('x', 4);
+			fail("Did not throw IndexOutOfBoundsException for add");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.delete(-1);
+			fail("Did not throw IndexOutOfBoundsException for delete");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConcatenateSelf() {
+		ChunkedEditTree t = new ChunkedEditTree("abc");
+		t.concatenate(t);
+	}
+}
@@ -0,0 +1,357 @@
+package editortrees;
+
+import java.util.concurrent.locks.StampedLock;
+
+// A thread-safe facade over an EditTree, for rendering threads that read
+// while an input thread edits. Edits take the write lock of a StampedLock
+// and so are serialized. Reads first run without any lock, as optimistic
+// reads, and keep their result only if no edit started in the meantime;
+// otherwise they run again under the read lock. Readers thus never write to
+// shared memory on the fast path and scale with the number of cores.
+//
+// An optimistic read can see the nodes halfway through a rebalance, so it
+// does not go through the EditTree methods but walks the nodes itself,
+// with every step bounded: a descent is at most MAX_DEPTH nodes deep, a
+// null child ends it, and a walk produces at most as many characters as it
+// was asked for. Whatever it sees, it ends, and validation throws its
+// result away if it saw anything inconsistent.
+
+public class ConcurrentEditTree {
+	// Deeper than any AVL tree of 2^31 nodes can be
+	private static final int MAX_DEPTH = 64;
+	private static final Node NULL_NODE = EditTree.getNullNode();
+
+	private final EditTree tree;
+	private final StampedLock lock = new StampedLock();
+
+	/**
+	 * Construct an empty tree
+	 */
+	public ConcurrentEditTree() {
+		this(new EditTree());
+	}
+
+	/**
+	 * Construct a tree whose toString is s
+	 *
+	 * @param s
+	 */
+	public ConcurrentEditTree(CharSequence s) {
+		this(new EditTree(s));
+	}
+
+	/**
+	 * Takes tree over; it must not be used directly afterwards. The tree is
+	 * switched to StripedMetrics, since readers under the read lock count
+	 * their work at the same time.
+	 *
+	 * @param tree
+	 */
+	public ConcurrentEditTree(EditTree tree) {
+		tree.setMetrics(new StripedMetrics());
+		this.tree = tree;
+	}
+
+	// Positions in the tree walked in order without touching the tree,
+	// giving up on anything a consistent tree would not contain
+	private static final class Walk {
+		private final Node[] stack = new Node[MAX_DEPTH];
+		private int depth;
+
+		// Positions the walk just before pos. Returns false if the
+		// descent runs off the tree or too deep.
+		boolean seek(Node root, int pos) {
+			this.depth = 0;
+			Node node = root;
+			while (node != null && node != NULL_NODE) {
+				if (this.depth == MAX_DEPTH) {
+					return false;
+				}
+				int rank = node.rank;
+				if (pos <= rank) {
+					this.stack[this.depth++] = node;
+					if (pos == rank) {
+						return true;
+					}
+					node = node.left;
+				} else {
+					pos -= rank + 1;
+					node = node.right;
+				}
+			}
+			return false;
+		}
+
+		// Returns the next character, or -1 if there is none or the next
+		// node cannot be reached
+		int next() {
+			if (this.depth == 0) {
+				return -1;
+			}
+			Node node = this.stack[--this.depth];
+			char c = node.element;
+			for (Node n = node.right; n != null && n != NULL_NODE; n = n.left) {
+				if (this.depth == MAX_DEPTH) {
+					return -1;
+				}
+				this.stack[this.depth++] = n;
+			}
+			return c;
+		}
+	}
+
+	// Returns the element at pos, or -1 if the descent fails
+	private static int element(Node node, int pos) {
+		for (int depth = 0; node != null && node != NULL_NODE
+				&& depth < MAX_DEPTH; depth++) {
+			int rank = node.rank;
+			if (pos == rank) {
+				return node.element;
+			} else if (pos < rank) {
+				node = node.left;
+			} else {
+				pos -= rank + 1;
+				node = node.right;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of characters in this tree
+	 */
+	public int size() {
+		long stamp = this.lock.tryOptimisticRead();
+		int size = this.tree.size();
+		if (this.lock.validate(stamp)) {
+			return size;
+		}
+		stamp = this.lock.readLock();
+		try {
+			return this.tree.size();
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * @param pos
+	 *            position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char get(int pos) throws IndexOutOfBoundsException {
+		long stamp = this.lock.tryOptimisticRead();
+		Node root = this.tree.getRoot();
+		int c = pos >= 0 && pos < root.size ? element(root, pos) : -2;
+		if (this.lock.validate(stamp)) {
+			if (c == -2) {
+				throw new IndexOutOfBoundsException();
+			}
+			if (c >= 0) {
+				return (char) c;
+			}
+		}
+		stamp = this.lock.readLock();
+		try {
+			return this.tree.get(pos);
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * @param pos
+	 *            location of the beginning of the string to retrieve
+	 * @param length
+	 *            length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException
+	 *             unless both pos and pos+length-1 are legitimate indexes
+	 *             within this tree.
+	 */
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+		long stamp = this.lock.tryOptimisticRead();
+		if (stamp != 0 && length > 0) {
+			Node root = this.tree.getRoot();
+			if (pos >= 0 && pos <= root.size - length) {
+				char[] chars = new char[length];
+				Walk walk = new Walk();
+				int i = 0;
+				if (walk.seek(root, pos)) {
+					for (int c; i < length && (c = walk.next()) >= 0; i++) {
+						chars[i] = (char) c;
+					}
+				}
+				if (i == length && this.lock.validate(stamp)) {
+					return new String(chars);
+				}
+			}
+		}
+		stamp = this.lock.readLock();
+		try {
+			return this.tree.get(pos, length);
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * @param s
+	 *            the string to look for
+	 * @return the position in this tree of the first occurrence of s; -1 if s
+	 *         does not occur
+	 */
+	public int find(String s) {
+		return this.find(s, 0);
+	}
+
+	/**
+	 * Like EditTree.find(String, int). A search that an edit overlaps is
+	 * done again under the read lock, so searches of a long document are
+	 * best kept to the part that is shown.
+	 *
+	 * @param s
+	 *            the string to look for
+	 * @param pos
+	 *            the position in this tree to begin searching from
+	 * @return the position in this tree of the first occurrence of s that
+	 *         begins at or after pos; -1 if s does not occur there
+	 */
+	public int find(String s, int pos) {
+		long stamp = this.lock.tryOptimisticRead();
+		if (stamp != 0 && !s.isEmpty()) {
+			Node root = this.tree.getRoot();
+			int found = optimisticFind(root, s, Math.max(pos, 0));
+			if (found != -2 && this.lock.validate(stamp)) {
+				return found;
+			}
+		}
+		stamp = this.lock.readLock();
+		try {
+			return this.tree.find(s, pos);
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	// The search of EditTree.find over a Walk. Returns -2 if the walk fails.
+	private static int optimisticFind(Node root, String s, int pos) {
+		int last = root.size - s.length();
+		if (pos > last) {
+			return -1;
+		}
+		StringMatcher matcher = new StringMatcher(s, false);
+		Walk walk = new Walk();
+		if (!walk.seek(root, pos)) {
+			return -2;
+		}
+		while (pos - matcher.matched() <= last) {
+			int c = walk.next();
+			if (c < 0) {
+				return -2;
+			}
+			pos++;
+			if (matcher.feed((char) c)) {
+				return pos - s.length();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the string produced by an inorder traversal of this tree
+	 */
+	@Override
+	public String toString() {
+		long stamp = this.lock.readLock();
+		try {
+			return this.tree.toString();
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * @param c
+	 *            character to add to the end of this tree.
+	 */
+	public void add(char c) {
+		long stamp = this.lock.writeLock();
+		try {
+			this.tree.add(c);
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * @param c
+	 *            character to add
+	 * @param pos
+	 *            character added in this inorder position
+	 * @throws IndexOutOfBoundsException
+	 *             id pos is negative or too large for this tree
+	 */
+	public void add(char c, int pos) throws IndexOutOfBoundsException {
+		long stamp = this.lock.writeLock();
+		try {
+			this.tree.add(c, pos);
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * @param s
+	 *            characters to add
+	 * @param pos
+	 *            the first one is added in this inorder position
+	 * @throws IndexOutOfBoundsException
+	 *             id pos is negative or too large for this tree
+	 */
+	public void add(CharSequence s, int pos) throws IndexOutOfBoundsException {
+		long stamp = this.lock.writeLock();
+		try {
+			this.tree.add(s, pos);
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * @param pos
+	 *            position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char delete(int pos) throws IndexOutOfBoundsException {
+		long stamp = this.lock.writeLock();
+		try {
+			return this.tree.delete(pos);
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * @param start
+	 *            position of beginning of string to delete
+	 * @param length
+	 *            length of string to delete
+	 * @return an EditTree containing the deleted string, which no other
+	 *         thread sees
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	public EditTree delete(int start, int length)
+			throws IndexOutOfBoundsException {
+		long stamp = this.lock.writeLock();
+		try {
+			return this.tree.delete(start, length);
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.ConcurrentEditTree}
+ */
+public class ConcurrentEditTreeTest {
+	private static final String BLOCK = "0123456789";
+
+	@Test
+	public void testSingleThreaded() {
+		ConcurrentEditTree t = new ConcurrentEditTree("hello world");
+		assertEquals(11, t.size());
+		assertEquals('w', t.get(6));
+		assertEquals("o w", t.get(4, 3));
+		assertEquals("", t.get(11, 0));
+		assertEquals(4, t.find("o"));
+		assertEquals(7, t.find("o", 5));
+		assertEquals(-1, t.find("z"));
+		assertEquals(3, t.find("", 3));
+		assertEquals(11, t.find("", 20));
+		t.add('!');
+		t.add('H', 0);
+		assertEquals('h', t.delete(1));
+		t.add(" big", 6);
+		assertEquals(" big", t.delete(6, 4).toString());
+		assertEquals("Hello world!", t.toString());
+		try {
+			t.get(12);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.get(10, 3);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testOptimisticReadsMatchTheTree() {
+		Random random = new Random(193);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			sb.append((char) ('a' + random.nextInt(4)));
+		}
+		String s = sb.toString();
+		ConcurrentEditTree t = new ConcurrentEditTree(s);
+		for (int k = 0; k < 1000; k++) {
+			int pos = random.nextInt(s.length());
+			assertEquals(s.charAt(pos), t.get(pos));
+			int length = random.nextInt(s.length() - pos + 1);
+			assertEquals(s.substring(pos, pos + length), t.get(pos, length));
+			String pattern = s.substring(pos, pos + Math.min(length, 6));
+			int from = random.nextInt(s.length());
+			assertEquals(s.indexOf(pattern, from), t.find(pattern, from));
+		}
+	}
+
+	// One writer adds and removes whole blocks at block boundaries, each in
+	// a single edit, so the text is always BLOCK repeated, while readers
+	// check that every read sees it that way
+	@Test
+	public void testStress() throws InterruptedException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append(BLOCK);
+		}
+		ConcurrentEditTree t = new ConcurrentEditTree(sb.toString());
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		AtomicLong reads = new AtomicLong();
+		List<Thread> threads = new ArrayList<>();
+		for (int r = 0; r < 4; r++) {
+			final Random random = new Random(197 + r);
+			threads.add(new Thread(() -> {
+				try {
+					while (!done.get()) {
+						int size = t.size();
+						assertEquals(0, size % BLOCK.length());
+						int pos = random.nextInt(size);
+						try {
+							assertEquals(BLOCK.charAt(pos % BLOCK.length()),
+									t.get(pos));
+							int start = pos - pos % BLOCK.length();
+							assertEquals(BLOCK, t.get(start, BLOCK.length()));
+						} catch (IndexOutOfBoundsException e) {
+							// the text shrank after size() was read
+						}
+						int found = t.find("90", pos);
+						assertTrue(found == -1 || found
+								% BLOCK.length() == BLOCK.length() - 1);
+						reads.incrementAndGet();
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		Random random = new Random(199);
+		int size = sb.length();
+		long deadline = System.nanoTime() + 1000000000L;
+		while (System.nanoTime() < deadline && failure.get() == null) {
+			int pos = BLOCK.length() * random.nextInt(size / BLOCK.length());
+			if (random.nextBoolean() || size < 2000) {
+				t.add(BLOCK, pos);
+				size += BLOCK.length();
+			} else {
+				t.delete(pos, BLOCK.length());
+				size -= BLOCK.length();
+			}
+			Thread.yield();
+		}
+		done.set(true);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertTrue(reads.get() > 0);
+		assertEquals(size, t.size());
+		String text = t.toString();
+		for (int i = 0; i < text.length(); i++) {
+			assertEquals(BLOCK.charAt(i % BLOCK.length()), text.charAt(i));
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package editortrees;
+
+// Counters in plain fields, for a tree used by one thread at a time. This is
+// what every tree starts with, and it costs an add per event.
+
+public class CountingMetrics implements EditTreeMetrics {
+	private long rotations;
+	private long nodesVisited;
+	private long allocations;
+	private long rebalanceSteps;
+
+	@Override
+	public void rotated(int count) {
+		this.rotations += count;
+	}
+
+	@Override
+	public void visited(int count) {
+		this.nodesVisited += count;
+	}
+
+	@Override
+	public void allocated(int count) {
+		this.allocations += count;
+	}
+
+	@Override
+	public void rebalanced(int count) {
+		this.rebalanceSteps += count;
+	}
+
+	@Override
+	public long rotations() {
+		return this.rotations;
+	}
+
+	@Override
+	public long nodesVisited() {
+		return this.nodesVisited;
+	}
+
+	@Override
+	public long allocations() {
+		return this.allocations;
+	}
+
+	@Override
+	public long rebalanceSteps() {
+		return this.rebalanceSteps;
+	}
+
+	@Override
+	public void reset() {
+		this.rotations = 0;
+		this.nodesVisited = 0;
+		this.allocations = 0;
+		this.rebalanceSteps = 0;
+	}
+}
@@ -0,0 +1,187 @@
+package editortrees;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Keeps track of which parts of an EditTree differ from the last saved copy
+// of it, position for position. The saved text that is still in the tree is
+// kept as a sorted list of pieces, each a run of saved characters together
+// with how far edits have shifted it. A character is clean when it is in a
+// piece that has not moved; the dirty ranges are everything else. Pieces
+// that meet again, as when a character is typed and then deleted, are
+// merged, so the ranges coalesce as the edits happen.
+//
+// Each edit takes time proportional to the number of pieces, which is at
+// most one more than twice the number of edits since the last save.
+
+public class DirtyRanges implements EditListener {
+
+	private static final class Piece {
+		int start; // Position in the tree
+		int length;
+		int shift; // start minus the saved position of the piece
+
+		Piece(int start, int length, int shift) {
+			this.start = start;
+			this.length = length;
+			this.shift = shift;
+		}
+
+		int end() {
+			return this.start + this.length;
+		}
+	}
+
+	private final List<Piece> pieces = new ArrayList<>();
+	private int size;
+	private int savedSize;
+
+	/**
+	 * Starts out with the size characters of a tree all clean.
+	 *
+	 * @param size
+	 */
+	public DirtyRanges(int size) {
+		this.markSaved(size);
+	}
+
+	/**
+	 * Makes every character clean, as after saving a tree of size characters.
+	 *
+	 * @param size
+	 */
+	public void markSaved(int size) {
+		this.pieces.clear();
+		if (size > 0) {
+			this.pieces.add(new Piece(0, size, 0));
+		}
+		this.size = size;
+		this.savedSize = size;
+	}
+
+	/**
+	 * @return the number of characters at the last save
+	 */
+	public int savedSize() {
+		return this.savedSize;
+	}
+
+	/**
+	 * @return whether any character differs from the saved copy, or the
+	 *         saved copy was longer
+	 */
+	public boolean isDirty() {
+		return this.size != this.savedSize || this.ranges().length > 0;
+	}
+
+	/**
+	 * Returns the dirty ranges, in order and never touching each other, as
+	 * start and end positions: { start0, end0, start1, end1, ... }, where
+	 * each end is exclusive.
+	 *
+	 * @return the positions of the tree that differ from the saved copy
+	 */
+	public int[] ranges() {
+		int[] ranges = new int[2 * this.pieces.size() + 2];
+		int count = 0;
+		int clean = 0; // end of the last clean piece
+		for (Piece piece : this.pieces) {
+			if (piece.shift != 0) {
+				continue;
+			}
+			if (piece.start > clean) {
+				ranges[count++] = clean;
+				ranges[count++] = piece.start;
+			}
+			clean = piece.end();
+		}
+		if (this.size > clean) {
+			ranges[count++] = clean;
+			ranges[count++] = this.size;
+		}
+		int[] result = new int[count];
+		System.arraycopy(ranges, 0, result, 0, count);
+		return result;
+	}
+
+	// Returns the index of the first piece that ends after pos
+	private int find(int pos) {
+		int low = 0;
+		int high = this.pieces.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (this.pieces.get(mid).end() <= pos) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	// Cuts the piece that straddles pos, if there is one, so that pos is
+	// where a piece starts. Returns the index of the first piece at or
+	// after pos.
+	private int cut(int pos) {
+		int i = this.find(pos);
+		if (i < this.pieces.size()) {
+			Piece piece = this.pieces.get(i);
+			if (piece.start < pos) {
+				int head = pos - piece.start;
+				this.pieces.add(i + 1, new Piece(pos, piece.length - head,
+						piece.shift));
+				piece.length = head;
+				return i + 1;
+			}
+		}
+		return i;
+	}
+
+	// Moves the pieces from index i on by delta positions
+	private void shift(int i, int delta) {
+		for (; i < this.pieces.size(); i++) {
+			Piece piece = this.pieces.get(i);
+			piece.start += delta;
+			piece.shift += delta;
+		}
+	}
+
+	// Merges the pieces at i - 1 and i if they are one run of saved text
+	private void merge(int i) {
+		if (i <= 0 || i >= this.pieces.size()) {
+			return;
+		}
+		Piece before = this.pieces.get(i - 1);
+		Piece after = this.pieces.get(i);
+		if (before.end() == after.start && before.shift == after.shift) {
+			before.length += after.length;
+			this.pieces.remove(i);
+		}
+	}
+
+	@Override
+	public void inserted(int pos, char c) {
+		this.openGap(pos, 1);
+	}
+
+	@Override
+	public void inserted(int pos, CharSequence s) {
+		this.openGap(pos, s.length());
+	}
+
+	// Makes room for length new characters at pos
+	private void openGap(int pos, int length) {
+		this.shift(this.cut(pos), length);
+		this.size += length;
+	}
+
+	@Override
+	public void deleted(int start, int length) {
+		int i = this.cut(start);
+		int j = this.cut(start + length);
+		this.pieces.subList(i, j).clear();
+		this.shift(i, -length);
+		this.size -= length;
+		this.merge(i);
+	}
+}
@@ -0,0 +1,108 @@
+package editortrees;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.DirtyRanges}
+ */
+public class DirtyRangesTest {
+
+	private static EditTree tracked(String s, DirtyRanges dirty) {
+		EditTree t = new EditTree(s);
+		t.addEditListener(dirty);
+		return t;
+	}
+
+	@Test
+	public void testEditsMarkWhatMoved() {
+		DirtyRanges dirty = new DirtyRanges(10);
+		EditTree t = tracked("0123456789", dirty);
+		assertFalse(dirty.isDirty());
+		t.delete(9);
+		assertTrue(dirty.isDirty());
+		assertArrayEquals(new int[0], dirty.ranges());
+		t.add('x', 3);
+		assertArrayEquals(new int[] { 3, 10 }, dirty.ranges());
+		t.delete(6);
+		assertArrayEquals(new int[] { 3, 6 }, dirty.ranges());
+		dirty.markSaved(t.size());
+		assertFalse(dirty.isDirty());
+		assertEquals(9, dirty.savedSize());
+	}
+
+	@Test
+	public void testTypingAndDeletingIsClean() {
+		DirtyRanges dirty = new DirtyRanges(8);
+		EditTree t = tracked("abcdefgh", dirty);
+		for (char c = 'p'; c < 'u'; c++) {
+			t.add(c, 4 + c - 'p');
+		}
+		assertArrayEquals(new int[] { 4, 13 }, dirty.ranges());
+		t.delete(4, 5);
+		assertFalse(dirty.isDirty());
+
+		// Text that comes back from another tree counts as new
+		EditTree tail = t.split(2);
+		t.concatenate(tail);
+		assertArrayEquals(new int[] { 2, 8 }, dirty.ranges());
+	}
+
+	@Test
+	public void testRandomEditsMatchAModel() {
+		Random random = new Random(173);
+		for (int round = 0; round < 20; round++) {
+			int saved = random.nextInt(200);
+			StringBuilder sb = new StringBuilder();
+			// Every character of the model is its saved position, or -1
+			List<Integer> model = new ArrayList<>();
+			for (int i = 0; i < saved; i++) {
+				sb.append('a');
+				model.add(i);
+			}
+			DirtyRanges dirty = new DirtyRanges(saved);
+			EditTree t = tracked(sb.toString(), dirty);
+			for (int k = 0; k < 100; k++) {
+				int size = t.size();
+				if (random.nextBoolean() && size > 0) {
+					int start = random.nextInt(size);
+					int length = random.nextInt(Math.min(5, size - start)) + 1;
+					t.delete(start, length);
+					model.subList(start, start + length).clear();
+				} else {
+					int pos = random.nextInt(size + 1);
+					int length = random.nextInt(3) + 1;
+					t.add("bbb".substring(0, length), pos);
+					for (int i = 0; i < length; i++) {
+						model.add(pos, -1);
+					}
+				}
+				List<Integer> expected = new ArrayList<>();
+				for (int i = 0; i < model.size(); i++) {
+					if (model.get(i) != i && (expected.isEmpty() || expected
+							.get(expected.size() - 1) != i)) {
+						expected.add(i);
+						expected.add(i + 1);
+					} else if (model.get(i) != i) {
+						expected.set(expected.size() - 1, i + 1);
+					}
+				}
+				int[] ranges = dirty.ranges();
+				assertEquals(expected.size(), ranges.length);
+				for (int i = 0; i < ranges.length; i++) {
+					assertEquals((int) expected.get(i), ranges[i]);
+				}
+				assertEquals(ranges.length > 0 || model.size() != saved,
+						dirty.isDirty());
+			}
+		}
+	}
+}
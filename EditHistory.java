@@ -0,0 +1,326 @@
+package editortrees;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+// Undo and redo for an EditTree whose edits all go through this history.
+// No text is ever copied: undoing an insertion cuts the inserted range out
+// of the tree with delete(int, int), and the history keeps the cut-out tree
+// so that redoing it splices the very same nodes back in. Deletions are
+// kept the same way, the other way round. Undoing or redoing one edit thus
+// takes O(log N) time however many characters it covers.
+//
+// Edits are grouped into transactions, which are undone and redone as a
+// whole; an edit made outside beginTransaction() and endTransaction() is a
+// transaction by itself. The history holds on to at most a given number of
+// characters that are not in the document, in undo and redo steps alike.
+// When it holds more, it drops the oldest steps of whichever of the two
+// holds more text, but never the step it has just made.
+
+public class EditHistory {
+	private final EditTree tree;
+	private final long capacity;
+	private final Deque<Transaction> undo = new ArrayDeque<>();
+	private final Deque<Transaction> redo = new ArrayDeque<>();
+	private Transaction open;
+	private int depth; // Nesting of beginTransaction() calls
+	private long held; // Characters held in fragments
+	private long redoHeld; // Part of held in the fragments of redo steps
+
+	// One edit. Its text is either in the tree, at [pos, pos + length), or in
+	// the fragment removed from there.
+	private static final class Edit {
+		final int pos;
+		final int length;
+		final boolean insertion;
+		EditTree removed;
+
+		Edit(int pos, int length, boolean insertion, EditTree removed) {
+			this.pos = pos;
+			this.length = length;
+			this.insertion = insertion;
+			this.removed = removed;
+		}
+	}
+
+	private static final class Transaction {
+		final List<Edit> edits = new ArrayList<>();
+
+		long held() {
+			long held = 0;
+			for (Edit edit : this.edits) {
+				if (edit.removed != null) {
+					held += edit.length;
+				}
+			}
+			return held;
+		}
+	}
+
+	/**
+	 * Construct a history of the edits to come to tree, without a limit on
+	 * the text it keeps
+	 *
+	 * @param tree
+	 */
+	public EditHistory(EditTree tree) {
+		this(tree, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Construct a history of the edits to come to tree
+	 *
+	 * @param tree
+	 * @param capacity
+	 *            most characters kept for undo and redo that are not in the
+	 *            tree; the oldest undo or redo steps are dropped beyond that
+	 * @throws IllegalArgumentException
+	 *             if capacity is negative
+	 */
+	public EditHistory(EditTree tree, long capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must be >= 0");
+		}
+		this.tree = tree;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return the tree whose edits this history records
+	 */
+	public EditTree getTree() {
+		return this.tree;
+	}
+
+	/**
+	 * @return the number of characters kept for undo and redo that are not in
+	 *         the tree
+	 */
+	public long heldCharacters() {
+		return this.held;
+	}
+
+	/**
+	 * @return the number of transactions that can be undone
+	 */
+	public int undoDepth() {
+		return this.undo.size();
+	}
+
+	/**
+	 * @return the number of transactions that can be redone
+	 */
+	public int redoDepth() {
+		return this.redo.size();
+	}
+
+	/**
+	 * Starts grouping the edits that follow into one transaction, until the
+	 * matching endTransaction(). Transactions nest; only the outermost one
+	 * counts.
+	 */
+	public void beginTransaction() {
+		if (this.depth++ == 0) {
+			this.open = new Transaction();
+		}
+	}
+
+	/**
+	 * Ends the transaction started by the matching beginTransaction(). The
+	 * outermost one becomes a single undo step if it made any edit.
+	 *
+	 * @throws IllegalStateException
+	 *             if no transaction is open
+	 */
+	public void endTransaction() {
+		if (this.depth == 0) {
+			throw new IllegalStateException("no transaction is open");
+		}
+		if (--this.depth > 0) {
+			return;
+		}
+		if (!this.open.edits.isEmpty()) {
+			this.undo.addLast(this.open);
+			this.evict(this.open);
+		}
+		this.open = null;
+	}
+
+	// Records an edit that has just been made to the tree
+	private void record(Edit edit) {
+		this.held -= this.redoHeld;
+		this.redoHeld = 0;
+		this.redo.clear();
+		if (edit.removed != null) {
+			this.held += edit.length;
+		}
+		this.beginTransaction();
+		this.open.edits.add(edit);
+		this.endTransaction();
+	}
+
+	// Drops the oldest steps while too much text is held, from the stack
+	// that holds more of it unless only pushed could go from there. The
+	// oldest redo step is the one that would be redone last.
+	private void evict(Transaction pushed) {
+		while (this.held > this.capacity) {
+			boolean fromRedo = this.redoHeld > this.held - this.redoHeld;
+			if (!evictable(fromRedo ? this.redo : this.undo, pushed)) {
+				fromRedo = !fromRedo;
+				if (!evictable(fromRedo ? this.redo : this.undo, pushed)) {
+					return;
+				}
+			}
+			if (fromRedo) {
+				long dropped = this.redo.removeFirst().held();
+				this.redoHeld -= dropped;
+				this.held -= dropped;
+			} else {
+				this.held -= this.undo.removeFirst().held();
+			}
+		}
+	}
+
+	// Whether stack has a step other than pushed, which is always its last
+	private static boolean evictable(Deque<Transaction> stack,
+			Transaction pushed) {
+		return stack.size() > (stack.peekLast() == pushed ? 1 : 0);
+	}
+
+	/**
+	 * @param c
+	 *            character to add
+	 * @param pos
+	 *            character added in this inorder position
+	 * @throws IndexOutOfBoundsException
+	 *             id pos is negative or too large for the tree
+	 */
+	public void add(char c, int pos) throws IndexOutOfBoundsException {
+		this.tree.add(c, pos);
+		this.record(new Edit(pos, 1, true, null));
+	}
+
+	/**
+	 * @param s
+	 *            characters to add
+	 * @param pos
+	 *            position of the first of them in the tree
+	 * @throws IndexOutOfBoundsException
+	 *             id pos is negative or too large for the tree
+	 */
+	public void add(CharSequence s, int pos) throws IndexOutOfBoundsException {
+		// Read before the add, as s may be the tree itself
+		int length = s.length();
+		this.tree.add(s, pos);
+		if (length > 0) {
+			this.record(new Edit(pos, length, true, null));
+		}
+	}
+
+	/**
+	 * @param pos
+	 *            position of character to delete from the tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char delete(int pos) throws IndexOutOfBoundsException {
+		EditTree removed = this.tree.delete(pos, 1);
+		this.record(new Edit(pos, 1, false, removed));
+		return removed.get(0);
+	}
+
+	/**
+	 * Deletes length characters starting at start, in O(log N) time. The
+	 * deleted nodes themselves are kept for undo.
+	 *
+	 * @param start
+	 *            position of beginning of string to delete
+	 * @param length
+	 *            length of string to delete
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for the
+	 *             tree.
+	 */
+	public void delete(int start, int length)
+			throws IndexOutOfBoundsException {
+		EditTree removed = this.tree.delete(start, length);
+		if (length > 0) {
+			this.record(new Edit(start, length, false, removed));
+		}
+	}
+
+	/**
+	 * Undoes the last transaction that has not been undone, in O(log N) time
+	 * per edit in it.
+	 *
+	 * @return whether there was one to undo
+	 * @throws IllegalStateException
+	 *             if a transaction is open
+	 */
+	public boolean undo() {
+		this.checkNoTransaction();
+		Transaction t = this.undo.pollLast();
+		if (t == null) {
+			return false;
+		}
+		for (int i = t.edits.size() - 1; i >= 0; i--) {
+			Edit edit = t.edits.get(i);
+			if (edit.insertion) {
+				this.takeOut(edit);
+			} else {
+				this.putBack(edit);
+			}
+		}
+		this.redo.addLast(t);
+		this.redoHeld += t.held();
+		this.evict(t);
+		return true;
+	}
+
+	/**
+	 * Redoes the last transaction undone, in O(log N) time per edit in it.
+	 *
+	 * @return whether there was one to redo
+	 * @throws IllegalStateException
+	 *             if a transaction is open
+	 */
+	public boolean redo() {
+		this.checkNoTransaction();
+		Transaction t = this.redo.pollLast();
+		if (t == null) {
+			return false;
+		}
+		this.redoHeld -= t.held();
+		for (Edit edit : t.edits) {
+			if (edit.insertion) {
+				this.putBack(edit);
+			} else {
+				this.takeOut(edit);
+			}
+		}
+		this.undo.addLast(t);
+		this.evict(t);
+		return true;
+	}
+
+	private void checkNoTransaction() {
+		if (this.depth > 0) {
+			throw new IllegalStateException("a transaction is open");
+		}
+	}
+
+	// Cuts the edit's text out of the tree into its fragment
+	private void takeOut(Edit edit) {
+		edit.removed = this.tree.delete(edit.pos, edit.length);
+		this.held += edit.length;
+	}
+
+	// Splices the edit's fragment back into the tree
+	private void putBack(Edit edit) {
+		this.tree.splice(edit.removed, edit.pos);
+		edit.removed = null;
+		this.held -= edit.length;
+	}
+}
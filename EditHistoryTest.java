@@ -0,0 +1,232 @@
+package editortrees;
+
+import static editortrees.TestUtil.assertValid;
+import static editortrees.TestUtil.randomText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.EditHistory}
+ */
+public class EditHistoryTest {
+
+	@Test
+	public void testUndoRedoSingleEdits() {
+		EditHistory history = new EditHistory(new EditTree("hello"));
+		EditTree t = history.getTree();
+		history.add(" world", 5);
+		history.add('!', 11);
+		assertEquals('h', history.delete(0));
+		history.delete(0, 4);
+		assertEquals(" world!", t.toString());
+
+		assertTrue(history.undo());
+		assertValid("ello world!", t);
+		assertTrue(history.undo());
+		assertValid("hello world!", t);
+		assertTrue(history.undo());
+		assertValid("hello world", t);
+		assertTrue(history.undo());
+		assertValid("hello", t);
+		assertFalse(history.undo());
+
+		assertTrue(history.redo());
+		assertTrue(history.redo());
+		assertValid("hello world!", t);
+		assertEquals(2, history.redoDepth());
+		history.add('?', 0);
+		assertEquals(0, history.redoDepth());
+		assertFalse(history.redo());
+		assertValid("?hello world!", t);
+		assertEquals(0, history.heldCharacters());
+	}
+
+	@Test
+	public void testUndoPasteFromSameTree() {
+		EditHistory history = new EditHistory(new EditTree("abc"));
+		EditTree t = history.getTree();
+		history.add(t, 1);
+		assertValid("aabcbc", t);
+		assertTrue(history.undo());
+		assertValid("abc", t);
+		assertTrue(history.redo());
+		assertValid("aabcbc", t);
+	}
+
+	@Test
+	public void testTransactions() {
+		EditHistory history = new EditHistory(new EditTree("abc"));
+		EditTree t = history.getTree();
+		history.beginTransaction();
+		history.add('x', 0);
+		history.beginTransaction();
+		history.delete(2, 2);
+		history.endTransaction();
+		history.add("yz", 2);
+		try {
+			history.undo();
+			fail("Did not throw IllegalStateException");
+		} catch (IllegalStateException e) {
+			// success
+		}
+		history.endTransaction();
+		assertEquals("xayz", t.toString());
+		assertEquals(1, history.undoDepth());
+		history.undo();
+		assertValid("abc", t);
+		history.redo();
+		assertValid("xayz", t);
+
+		history.beginTransaction();
+		history.endTransaction();
+		assertEquals(1, history.undoDepth());
+		try {
+			history.endTransaction();
+			fail("Did not throw IllegalStateException");
+		} catch (IllegalStateException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testUndoMovesNodesWithoutCopying() {
+		String s = randomText(new Random(139), 100000);
+		EditTree t = new EditTree("<>");
+		EditHistory history = new EditHistory(t);
+		history.add(s, 1);
+		history.delete(1000, 50000);
+		long allocations = t.getMetrics().allocations();
+		for (int k = 0; k < 10; k++) {
+			history.undo();
+			history.undo();
+			assertEquals("<>", t.toString());
+			history.redo();
+			history.redo();
+		}
+		assertValid("<" + s.substring(0, 999) + s.substring(50999) + ">", t);
+		assertEquals(allocations, t.getMetrics().allocations());
+		assertEquals(50000, history.heldCharacters());
+	}
+
+	@Test
+	public void testCapacityDropsOldestSteps() {
+		EditHistory history = new EditHistory(new EditTree(), 10);
+		EditTree t = history.getTree();
+		history.add("0123456789abcdefghij", 0);
+		history.delete(0, 4);
+		history.delete(0, 4);
+		assertEquals(8, history.heldCharacters());
+		assertEquals(3, history.undoDepth());
+		// Holding 12 characters is over the cap, so both the paste and the
+		// first deletion are forgotten
+		history.delete(0, 4);
+		assertEquals("cdefghij", t.toString());
+		assertEquals(2, history.undoDepth());
+		assertEquals(8, history.heldCharacters());
+		history.undo();
+		history.undo();
+		assertFalse(history.undo());
+		assertValid("456789abcdefghij", t);
+		assertEquals(0, history.heldCharacters());
+	}
+
+	@Test
+	public void testCapacityCountsRedoSteps() {
+		EditHistory history = new EditHistory(new EditTree("abc"), 1500);
+		EditTree t = history.getTree();
+		String paste = randomText(new Random(151), 1000);
+		history.delete(0, 1);
+		history.add(paste, 0);
+		history.add(paste, 0);
+		history.undo();
+		assertEquals(1001, history.heldCharacters());
+		// The second undo holds 2001 characters, most of them for redo, so
+		// the paste undone first, which would be redone last, is forgotten
+		history.undo();
+		assertEquals(1, history.undoDepth());
+		assertEquals(1, history.redoDepth());
+		assertEquals(1001, history.heldCharacters());
+		assertValid("bc", t);
+		assertTrue(history.redo());
+		assertFalse(history.redo());
+		assertEquals(2, history.undoDepth());
+		assertEquals(1, history.heldCharacters());
+		assertValid(paste + "bc", t);
+		assertTrue(history.undo());
+		assertTrue(history.undo());
+		assertValid("abc", t);
+		assertFalse(history.undo());
+	}
+
+	@Test
+	public void testOversizedUndoStepIsKept() {
+		EditHistory history = new EditHistory(new EditTree("abc"), 100);
+		EditTree t = history.getTree();
+		String paste = randomText(new Random(157), 1000);
+		history.delete(0, 1);
+		history.add(paste, 0);
+		// The undone paste is over the cap by itself: the older steps go,
+		// but the paste can still be redone
+		history.undo();
+		assertEquals(0, history.undoDepth());
+		assertEquals(1, history.redoDepth());
+		assertEquals(1000, history.heldCharacters());
+		assertTrue(history.redo());
+		assertValid(paste + "bc", t);
+		assertEquals(0, history.heldCharacters());
+		assertTrue(history.undo());
+		assertValid("bc", t);
+	}
+
+	@Test
+	public void testRandomEditsUndoneAndRedone() {
+		Random random = new Random(149);
+		EditHistory history = new EditHistory(new EditTree(randomText(
+				random, 200)));
+		EditTree t = history.getTree();
+		List<String> versions = new ArrayList<>();
+		versions.add(t.toString());
+		int current = 0;
+		for (int k = 0; k < 1000; k++) {
+			int choice = random.nextInt(6);
+			if (choice == 0 && current > 0) {
+				assertTrue(history.undo());
+				current--;
+			} else if (choice == 1 && current + 1 < versions.size()) {
+				assertTrue(history.redo());
+				current++;
+			} else {
+				history.beginTransaction();
+				for (int edits = random.nextInt(3) + 1; edits > 0; edits--) {
+					int size = t.size();
+					if (random.nextBoolean() && size > 0) {
+						int start = random.nextInt(size);
+						history.delete(start, random.nextInt(Math.min(20,
+								size - start)) + 1);
+					} else {
+						history.add(randomText(random, random.nextInt(20) + 1),
+								random.nextInt(size + 1));
+					}
+				}
+				history.endTransaction();
+				versions.subList(current + 1, versions.size()).clear();
+				versions.add(t.toString());
+				current++;
+			}
+			assertEquals(versions.get(current), t.toString());
+		}
+		while (history.undo()) {
+			current--;
+		}
+		assertEquals(0, current);
+		assertValid(versions.get(0), t);
+	}
+}
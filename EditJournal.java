@@ -0,0 +1,391 @@
+package editortrees;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// A write-ahead log of the edits made to an EditTree, so that a crashed
+// editor loses at most the last sync interval of typing. The journal
+// listens to the tree and encodes each change as a compact binary record
+// into an in-memory batch, which costs the editing thread an uncontended
+// lock and a few bytes of copying. A background thread writes the batch out
+// and forces it to disk once per interval, so one fsync covers all the
+// keystrokes of that interval (group commit).
+//
+// Each batch is written as a frame: its length, the CRC-32 of its records,
+// then the records. A frame torn by a crash fails its check, and recovery
+// stops just before it. A record is an opcode followed by varint
+// positions, and UTF-16 characters for insertions:
+//
+//   INSERT_CHAR pos char
+//   INSERT      pos length char*
+//   DELETE      start length
+//
+// checkpoint() saves the whole document as a TreeSnapshot along with the
+// length of the journal at that moment, and EditTree.recover() loads such a
+// snapshot and replays only the frames written after it.
+
+public class EditJournal implements EditListener, Closeable {
+	private static final byte INSERT_CHAR = 1;
+	private static final byte INSERT = 2;
+	private static final byte DELETE = 3;
+	private static final int FRAME_HEADER = 8; // length and CRC ints
+	private static final int INITIAL_BATCH = 4096;
+
+	private final EditTree tree;
+	private final FileChannel channel;
+	private final ScheduledExecutorService flusher;
+
+	// Records not yet written, guarded by this; the editing thread only
+	// ever waits for the flusher to swap the two batches
+	private byte[] batch = new byte[INITIAL_BATCH];
+	private int count;
+	private IOException failure;
+
+	// Held while writing, so that only one batch goes out at a time
+	private final Object writeLock = new Object();
+	private byte[] spare = new byte[INITIAL_BATCH];
+
+	/**
+	 * Starts journaling the edits to come to tree into the file at journal,
+	 * after the frames it already holds; a torn frame at its end is cut off
+	 * first. The tree must be in the state those frames lead to, as
+	 * EditTree.recover() leaves it. A journal without frames can only be
+	 * started this way for an empty tree, since recovery would otherwise
+	 * start from nothing; the constructor that takes a snapshot handles a
+	 * tree with text.
+	 *
+	 * @param tree
+	 * @param journal
+	 * @param syncInterval
+	 *            how long records may wait before they are forced to disk
+	 * @param unit
+	 * @throws IOException
+	 *             if the journal cannot be opened
+	 * @throws IllegalArgumentException
+	 *             if the journal has no frames and the tree is not empty
+	 */
+	public EditJournal(EditTree tree, Path journal, long syncInterval,
+			TimeUnit unit) throws IOException {
+		this(tree, null, journal, syncInterval, unit);
+	}
+
+	/**
+	 * Starts journaling like the other constructor, except that a journal
+	 * without frames may be started for any tree: the tree is checkpointed
+	 * into snapshot first, so that EditTree.recover(snapshot, journal)
+	 * starts from its text. Takes O(N) time in that case.
+	 *
+	 * @param tree
+	 * @param snapshot
+	 * @param journal
+	 * @param syncInterval
+	 *            how long records may wait before they are forced to disk
+	 * @param unit
+	 * @throws IOException
+	 *             if the journal cannot be opened or the snapshot cannot be
+	 *             written
+	 */
+	public EditJournal(EditTree tree, Path snapshot, Path journal,
+			long syncInterval, TimeUnit unit) throws IOException {
+		if (syncInterval <= 0) {
+			throw new IllegalArgumentException("syncInterval must be > 0");
+		}
+		this.tree = tree;
+		this.channel = FileChannel.open(journal, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			long end = replay(this.channel, 0, null);
+			if (end == 0 && snapshot != null) {
+				TreeSnapshot.write(tree.getRoot(), snapshot, 0);
+			} else if (end == 0 && tree.size() > 0) {
+				throw new IllegalArgumentException(
+						"a new journal for a non-empty tree needs a snapshot");
+			}
+			this.channel.truncate(end);
+			this.channel.position(end);
+		} catch (IOException | RuntimeException e) {
+			this.channel.close();
+			throw e;
+		}
+		this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "edit-journal");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.flusher.scheduleWithFixedDelay(this::groupCommit, syncInterval,
+				syncInterval, unit);
+		tree.addEditListener(this);
+	}
+
+	@Override
+	public synchronized void inserted(int pos, char c) {
+		if (this.reserve(8)) {
+			this.batch[this.count++] = INSERT_CHAR;
+			this.putVarint(pos);
+			this.putChar(c);
+		}
+	}
+
+	@Override
+	public synchronized void inserted(int pos, CharSequence s) {
+		int length = s.length();
+		if (this.reserve(11 + 2 * (long) length)) {
+			this.batch[this.count++] = INSERT;
+			this.putVarint(pos);
+			this.putVarint(length);
+			for (int i = 0; i < length; i++) {
+				this.putChar(s.charAt(i));
+			}
+		}
+	}
+
+	@Override
+	public synchronized void deleted(int start, int length) {
+		if (this.reserve(11)) {
+			this.batch[this.count++] = DELETE;
+			this.putVarint(start);
+			this.putVarint(length);
+		}
+	}
+
+	// Makes room for bytes more in the batch. Returns false once writing has
+	// failed, since nothing will be written anymore.
+	private boolean reserve(long bytes) {
+		if (this.failure != null) {
+			return false;
+		}
+		long needed = this.count + bytes;
+		if (needed > this.batch.length) {
+			if (needed > Integer.MAX_VALUE - FRAME_HEADER) {
+				throw new IllegalStateException("edit too large to journal");
+			}
+			this.batch = Arrays.copyOf(this.batch, (int) Math.min(
+					Integer.MAX_VALUE - FRAME_HEADER,
+					Math.max(needed, 2L * this.batch.length)));
+		}
+		return true;
+	}
+
+	private void putVarint(int value) {
+		while ((value & ~0x7F) != 0) {
+			this.batch[this.count++] = (byte) (value | 0x80);
+			value >>>= 7;
+		}
+		this.batch[this.count++] = (byte) value;
+	}
+
+	private void putChar(char c) {
+		this.batch[this.count++] = (byte) (c >>> 8);
+		this.batch[this.count++] = (byte) c;
+	}
+
+	// Runs on the flusher thread
+	private void groupCommit() {
+		try {
+			this.sync();
+		} catch (IOException e) {
+			// kept in failure and thrown by the next sync() or close()
+		}
+	}
+
+	/**
+	 * Writes the records made so far and forces them to disk, without
+	 * waiting for the next interval.
+	 *
+	 * @throws IOException
+	 *             if this or an earlier write failed; the journal then stops
+	 *             recording
+	 */
+	public void sync() throws IOException {
+		synchronized (this.writeLock) {
+			byte[] records;
+			int length;
+			synchronized (this) {
+				if (this.failure != null) {
+					throw this.failure;
+				}
+				records = this.batch;
+				length = this.count;
+				this.batch = this.spare;
+				this.count = 0;
+			}
+			this.spare = records;
+			if (length == 0) {
+				return;
+			}
+			try {
+				CRC32 crc = new CRC32();
+				crc.update(records, 0, length);
+				ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+				header.putInt(length).putInt((int) crc.getValue()).flip();
+				ByteBuffer[] frame = { header,
+						ByteBuffer.wrap(records, 0, length) };
+				while (frame[1].hasRemaining()) {
+					this.channel.write(frame);
+				}
+				this.channel.force(false);
+			} catch (IOException e) {
+				synchronized (this) {
+					this.failure = e;
+				}
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Saves the whole document to snapshot, replacing it atomically, along
+	 * with the length of the journal so far, and leaves the journal in place.
+	 * Must be called on the thread that edits the tree. Takes O(N) time.
+	 *
+	 * @param snapshot
+	 * @throws IOException
+	 *             if the journal or the snapshot cannot be written
+	 */
+	public void checkpoint(Path snapshot) throws IOException {
+		long offset;
+		synchronized (this.writeLock) {
+			this.sync();
+			offset = this.channel.position();
+		}
+		TreeSnapshot.write(this.tree.getRoot(), snapshot, offset);
+	}
+
+	/**
+	 * Stops listening to the tree, writes and forces what is left, and
+	 * closes the file. Closing a closed journal does nothing.
+	 *
+	 * @throws IOException
+	 *             if this or an earlier write failed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!this.channel.isOpen()) {
+			return;
+		}
+		this.tree.removeEditListener(this);
+		this.flusher.shutdown();
+		try {
+			this.sync();
+		} finally {
+			this.channel.close();
+		}
+	}
+
+	// Loads a snapshot written by checkpoint() and replays the journal
+	// frames written after it; see EditTree.recover()
+	static EditTree recover(Path snapshot, Path journal) throws IOException {
+		EditTree tree;
+		long offset;
+		if (Files.exists(snapshot)) {
+			TreeSnapshot saved = TreeSnapshot.read(snapshot);
+			tree = saved.tree;
+			offset = saved.journalOffset;
+		} else {
+			tree = new EditTree();
+			offset = 0;
+		}
+		if (Files.exists(journal)) {
+			try (FileChannel in = FileChannel.open(journal,
+					StandardOpenOption.READ)) {
+				if (in.size() < offset) {
+					throw new IOException("journal " + journal
+							+ " is shorter than snapshot " + snapshot);
+				}
+				replay(in, offset, tree);
+			}
+		} else if (offset > 0) {
+			throw new IOException("journal " + journal + " is missing");
+		}
+		return tree;
+	}
+
+	// Applies the frames of a journal from offset on to tree, or only checks
+	// them if tree is null, up to the end or the first torn frame. Returns
+	// where the last good frame ends.
+	private static long replay(FileChannel in, long offset, EditTree tree)
+			throws IOException {
+		long size = in.size();
+		ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+		CRC32 crc = new CRC32();
+		while (size - offset >= FRAME_HEADER) {
+			header.clear();
+			readFully(in, header, offset);
+			int length = header.getInt(0);
+			if (length <= 0 || length > size - offset - FRAME_HEADER) {
+				break;
+			}
+			ByteBuffer records = ByteBuffer.allocate(length);
+			readFully(in, records, offset + FRAME_HEADER);
+			crc.reset();
+			crc.update(records.array(), 0, length);
+			if ((int) crc.getValue() != header.getInt(4)) {
+				break;
+			}
+			if (tree != null) {
+				records.flip();
+				apply(records, tree);
+			}
+			offset += FRAME_HEADER + length;
+		}
+		return offset;
+	}
+
+	// Applies the records of one frame
+	private static void apply(ByteBuffer records, EditTree tree)
+			throws IOException {
+		try {
+			while (records.hasRemaining()) {
+				byte op = records.get();
+				int pos = getVarint(records);
+				if (op == INSERT_CHAR) {
+					tree.add(records.getChar(), pos);
+				} else if (op == INSERT) {
+					int length = getVarint(records);
+					ByteBuffer chars = records.slice();
+					chars.limit(2 * length);
+					tree.add(chars.asCharBuffer(), pos);
+					records.position(records.position() + 2 * length);
+				} else if (op == DELETE) {
+					tree.delete(pos, getVarint(records));
+				} else {
+					throw new IOException("corrupt journal: opcode " + op);
+				}
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("journal does not match the snapshot", e);
+		}
+	}
+
+	private static int getVarint(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+
+	private static void readFully(FileChannel in, ByteBuffer dst, long pos)
+			throws IOException {
+		while (dst.hasRemaining()) {
+			int read = in.read(dst, pos);
+			if (read < 0) {
+				throw new IOException("unexpected end of file");
+			}
+			pos += read;
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package editortrees;
+
+import static editortrees.TestUtil.assertValid;
+import static editortrees.TestUtil.randomText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.EditJournal}
+ */
+public class EditJournalTest {
+	private Path dir;
+	private Path snapshot;
+	private Path journal;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("journal");
+		this.snapshot = this.dir.resolve("doc.snapshot");
+		this.journal = this.dir.resolve("doc.journal");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(this.snapshot);
+		Files.deleteIfExists(this.journal);
+		Files.delete(this.dir);
+	}
+
+	private EditJournal attach(EditTree t) throws IOException {
+		return new EditJournal(t, this.snapshot, this.journal, 1,
+				TimeUnit.HOURS);
+	}
+
+	// Makes every kind of change a tree reports
+	private static void edit(Random random, EditTree t) {
+		int size = t.size();
+		switch (random.nextInt(7)) {
+		case 0:
+			t.add((char) ('a' + random.nextInt(26)), random.nextInt(size + 1));
+			break;
+		case 1:
+			t.add("\u00e9\n" + random.nextInt(1000), random.nextInt(size + 1));
+			break;
+		case 2:
+			if (size > 0) {
+				t.delete(random.nextInt(size));
+			}
+			break;
+		case 3:
+			if (size > 0) {
+				int start = random.nextInt(size);
+				t.delete(start, random.nextInt(size - start + 1));
+			}
+			break;
+		case 4:
+			EditTree tail = t.split(random.nextInt(size + 1));
+			tail.add('!');
+			t.concatenate(tail);
+			break;
+		case 5:
+			TextCursor cursor = t.cursor(random.nextInt(size + 1));
+			cursor.insert('\u20ac');
+			if (cursor.hasNext()) {
+				cursor.delete();
+			}
+			break;
+		default:
+			t.add('z');
+		}
+	}
+
+	@Test
+	public void testRecoverReplaysEveryEdit() throws IOException {
+		Random random = new Random(151);
+		EditTree t = new EditTree();
+		try (EditJournal j = this.attach(t)) {
+			for (int k = 0; k < 2000; k++) {
+				edit(random, t);
+				if (k % 300 == 0) {
+					j.sync();
+				}
+			}
+		}
+		assertValid(t.toString(), EditTree.recover(this.snapshot,
+				this.journal));
+	}
+
+	@Test
+	public void testCheckpointReplaysOnlyTheTail() throws IOException {
+		Random random = new Random(157);
+		EditTree t = new EditTree("start");
+		long checkpointed;
+		try (EditJournal j = this.attach(t)) {
+			for (int k = 0; k < 500; k++) {
+				edit(random, t);
+			}
+			j.checkpoint(this.snapshot);
+			checkpointed = Files.size(this.journal);
+			for (int k = 0; k < 500; k++) {
+				edit(random, t);
+			}
+		}
+		// The frames before the checkpoint are never read again
+		try (FileChannel out = FileChannel.open(this.journal,
+				StandardOpenOption.WRITE)) {
+			out.write(ByteBuffer.allocate((int) checkpointed), 0);
+		}
+		assertValid(t.toString(), EditTree.recover(this.snapshot,
+				this.journal));
+	}
+
+	@Test
+	public void testTornFrameIsCutOff() throws IOException {
+		EditTree t = new EditTree("abc");
+		try (EditJournal j = this.attach(t)) {
+			j.checkpoint(this.snapshot);
+			t.add("def", 3);
+			j.sync();
+			t.delete(0);
+		}
+		long size = Files.size(this.journal);
+		// Loses part of the last frame, as a crash in the middle of it would
+		try (FileChannel out = FileChannel.open(this.journal,
+				StandardOpenOption.WRITE)) {
+			out.truncate(size - 2);
+		}
+		EditTree recovered = EditTree.recover(this.snapshot, this.journal);
+		assertValid("abcdef", recovered);
+
+		// Reattaching drops the torn frame before appending
+		EditJournal j = this.attach(recovered);
+		recovered.add('g');
+		j.close();
+		assertValid("abcdefg", EditTree.recover(this.snapshot, this.journal));
+	}
+
+	@Test
+	public void testUndoJournalsOnlyWhatChanged() throws IOException {
+		String s = randomText(new Random(251), 100000);
+		EditTree t = new EditTree(s);
+		try (EditJournal j = this.attach(t)) {
+			EditHistory history = new EditHistory(t);
+			history.delete(50000);
+			j.sync();
+			long size = Files.size(this.journal);
+			history.undo();
+			j.sync();
+			// One insertion of one character, not the tail of the document
+			assertTrue(Files.size(this.journal) - size < 32);
+		}
+		assertValid(s, EditTree.recover(this.snapshot, this.journal));
+	}
+
+	@Test
+	public void testCorruptFrameStopsReplay() throws IOException {
+		EditTree t = new EditTree();
+		try (EditJournal j = this.attach(t)) {
+			t.add("first", 0);
+			j.sync();
+			t.add("second", 5);
+		}
+		try (FileChannel out = FileChannel.open(this.journal,
+				StandardOpenOption.WRITE)) {
+			out.write(ByteBuffer.wrap(new byte[] { 'X' }), out.size() - 1);
+		}
+		assertValid("first", EditTree.recover(this.snapshot, this.journal));
+	}
+
+	@Test
+	public void testGroupCommit() throws Exception {
+		EditTree t = new EditTree();
+		EditJournal j = new EditJournal(t, this.journal, 10,
+				TimeUnit.MILLISECONDS);
+		try {
+			for (int k = 0; k < 100; k++) {
+				t.add('x');
+			}
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (Files.size(this.journal) == 0) {
+				assertTrue(System.nanoTime() < deadline);
+				Thread.sleep(5);
+			}
+			assertEquals(100, EditTree.recover(this.snapshot, this.journal)
+					.size());
+		} finally {
+			j.close();
+		}
+	}
+
+	@Test
+	public void testNewJournalCheckpointsTheTree() throws IOException {
+		EditTree t = new EditTree("already here");
+		EditJournal j = this.attach(t);
+		t.add('!');
+		j.close();
+		// No checkpoint was taken after attaching, as after a crash
+		assertValid("already here!", EditTree.recover(this.snapshot,
+				this.journal));
+	}
+
+	@Test
+	public void testNewJournalWithoutSnapshotNeedsEmptyTree()
+			throws IOException {
+		try {
+			new EditJournal(new EditTree("text"), this.journal, 1,
+					TimeUnit.HOURS);
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+		EditTree t = new EditTree();
+		try (EditJournal j = new EditJournal(t, this.journal, 1,
+				TimeUnit.HOURS)) {
+			t.add("text", 0);
+			j.sync();
+		}
+		assertValid("text", EditTree.recover(this.snapshot, this.journal));
+		// A journal with frames can be continued by the tree they lead to
+		EditTree recovered = EditTree.recover(this.snapshot, this.journal);
+		EditJournal j = new EditJournal(recovered, this.journal, 1,
+				TimeUnit.HOURS);
+		recovered.add('s');
+		j.close();
+		assertValid("texts", EditTree.recover(this.snapshot, this.journal));
+	}
+
+	@Test
+	public void testCloseStopsJournaling() throws IOException {
+		EditTree t = new EditTree();
+		EditJournal j = this.attach(t);
+		t.add("kept", 0);
+		j.close();
+		j.close();
+		t.add("lost", 0);
+		assertValid("kept", EditTree.recover(this.snapshot, this.journal));
+	}
+
+	@Test
+	public void testRecoverWithoutFiles() throws IOException {
+		assertValid("", EditTree.recover(this.snapshot, this.journal));
+	}
+
+	@Test
+	public void testMismatchedFiles() throws IOException {
+		EditTree t = new EditTree("abc");
+		try (EditJournal j = this.attach(t)) {
+			t.add('d');
+			j.checkpoint(this.snapshot);
+		}
+		Files.delete(this.journal);
+		try {
+			EditTree.recover(this.snapshot, this.journal);
+			fail("Did not throw IOException");
+		} catch (IOException e) {
+			// success
+		}
+	}
+}
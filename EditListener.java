@@ -0,0 +1,35 @@
+package editortrees;
+
+// Receives every change made to an EditTree, right after it is made and on
+// the thread that made it, so listeners should be quick. Splitting off a
+// tail is reported as deleting it, and concatenating another tree as
+// inserting its characters at the end.
+
+public interface EditListener {
+
+	/**
+	 * Reports that c was added at pos.
+	 *
+	 * @param pos
+	 * @param c
+	 */
+	void inserted(int pos, char c);
+
+	/**
+	 * Reports that the characters of s were added starting at pos. s must be
+	 * read before this method returns, since it may be the tree that is
+	 * being emptied into the listened one.
+	 *
+	 * @param pos
+	 * @param s
+	 */
+	void inserted(int pos, CharSequence s);
+
+	/**
+	 * Reports that length characters starting at start were removed.
+	 *
+	 * @param start
+	 * @param length
+	 */
+	void deleted(int start, int length);
+}
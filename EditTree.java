@@ -1,23 +1,64 @@
 package editortrees;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
 import editortrees.Node.Code;
 
 // A height-balanced binary tree with rank that could be the basis for a text editor.
 
 @SuppressWarnings("javadoc")
-public class EditTree {
+public class EditTree implements CharSequence {
 	private final static Node NULL_NODE = new Node();
+	private final static int EXPORT_BUFFER_SIZE = 8192;
+	private final static int IMPORT_BUFFER_SIZE = 8192;
+	private final static EditListener[] NO_LISTENERS = {};
 	private Node root;
-	public static int rotateCount = 0;
-	public int treeSize;
+
+	// Told about every change; copied on write so that firing is a plain loop
+	private EditListener[] listeners = NO_LISTENERS;
+
+	// Instrumentation counters for this tree only; see getMetrics()
+	private EditTreeMetrics metrics = new CountingMetrics();
+
+	// Number of structural changes, so that views and cursors can notice
+	// that the tree changed underneath them
+	int modCount = 0;
+
+	// Walk positioned at fingerPos, so that reading charAt in order costs
+	// amortized O(1) instead of a descent from the root every time
+	private Node.InOrder finger;
+	private int fingerPos;
+	private int fingerModCount;
 
 	/**
 	 * Construct an empty tree
 	 */
 	public EditTree() {
 		this.root = NULL_NODE;
-		rotateCount = 0;
-		this.treeSize = 0;
+	}
+
+	// Wraps a tree of nodes that was built elsewhere
+	EditTree(Node root) {
+		this.root = root;
+		this.metrics.allocated(root.size);
 	}
 
 	/**
@@ -27,37 +68,142 @@ public class EditTree {
 	 */
 	public EditTree(char c) {
 		this.root = new Node(c);
-		this.root.setBalanceInsert();
-		this.root.left = NULL_NODE;
-		this.root.right = NULL_NODE;
-		rotateCount = 0;
-		this.treeSize = 1;
+		this.metrics.allocated(1);
 	}
 
 	/**
 	 * Create an EditTree whose toString is s. This can be done in O(N) time,
 	 * where N is the length of the tree (repeatedly calling insert() would be
-	 * O(N log N), so you need to find a more efficient way to do this.
+	 * O(N log N), so you need to find a more efficient way to do this. s is
+	 * only read through charAt, so it is never copied.
 	 * 
 	 * @param s
 	 */
-	public EditTree(String s) {
-		int rootNum = s.length() / 2;
+	public EditTree(CharSequence s) {
+		this.root = Node.build(s, 0, s.length());
+		this.metrics.allocated(s.length());
+	}
 
-		this.root = new Node(s.charAt(rootNum));
-		if (s.substring(0, rootNum).length() > s.substring(rootNum + 1)
-				.length()) {
-			this.root.balance = Code.LEFT;
-		} else if (s.substring(0, rootNum).length() < s.substring(rootNum + 1)
-				.length()) {
-			this.root.balance = Code.RIGHT;
-		} else {
-			this.root.balance = Code.SAME;
+	/**
+	 * Create an EditTree whose toString is s, building the two halves of the
+	 * tree in parallel in pool and splitting them further down to ranges of
+	 * about 32K characters. The tree is the same as EditTree(s) builds.
+	 * s must not change during the build and is read from several threads at
+	 * once, which String and CharBuffer allow.
+	 * 
+	 * @param s
+	 * @param pool
+	 */
+	public EditTree(CharSequence s, ForkJoinPool pool) {
+		this.root = pool.invoke(new Node.BuildTask(s, 0, s.length()));
+		this.metrics.allocated(s.length());
+	}
+
+	/**
+	 * Create an EditTree whose toString is the characters of chars, in O(N)
+	 * time, without copying them first.
+	 * 
+	 * @param chars
+	 */
+	public EditTree(char[] chars) {
+		this(CharBuffer.wrap(chars));
+	}
+
+	/**
+	 * Create an EditTree out of everything reader has left to read, in O(N)
+	 * time. The tree is built bottom-up as the characters arrive, a buffer at
+	 * a time, so the text is never held anywhere but in the tree. The reader
+	 * is not closed.
+	 * 
+	 * @param reader
+	 * @throws IOException
+	 *             if reading fails
+	 */
+	public EditTree(Reader reader) throws IOException {
+		Node.Builder builder = new Node.Builder();
+		char[] buffer = new char[IMPORT_BUFFER_SIZE];
+		int count;
+		while ((count = reader.read(buffer)) != -1) {
+			builder.append(buffer, 0, count);
 		}
-		this.root.rank = s.substring(0, rootNum).length();
-		this.root.left = this.root.createTree(s.substring(0, rootNum));
-		this.root.right = this.root.createTree(s.substring(rootNum + 1));
-		this.treeSize = s.length();
+		this.root = builder.build(this.metrics);
+		this.metrics.allocated(this.root.size);
+	}
+
+	/**
+	 * Create an EditTree out of everything channel has left to read, decoded
+	 * with charset, like EditTree(Reader). Malformed input is replaced rather
+	 * than reported. The channel is not closed.
+	 * 
+	 * @param channel
+	 * @param charset
+	 * @throws IOException
+	 *             if reading fails
+	 */
+	public EditTree(ReadableByteChannel channel, Charset charset)
+			throws IOException {
+		this(Channels.newReader(channel, charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE), -1));
+	}
+
+	/**
+	 * Opens a file without reading it into the heap: the file is mapped
+	 * read-only and edited as a piece table, which suits files far larger
+	 * than a tree of one Node per character could hold.
+	 * 
+	 * @param path
+	 * @return a MappedEditTree whose toString is the content of the file; it
+	 *         must be closed
+	 * @throws IOException
+	 */
+	public static MappedEditTree open(Path path) throws IOException {
+		return MappedEditTree.open(path);
+	}
+
+	/**
+	 * Saves this tree to path in a binary format that keeps its exact shape,
+	 * so that readSnapshot() restores it without rebalancing. The file is
+	 * replaced atomically. Takes O(N) time.
+	 * 
+	 * @param path
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void writeSnapshot(Path path) throws IOException {
+		TreeSnapshot.write(this.root, path, 0);
+	}
+
+	/**
+	 * Loads a tree saved by writeSnapshot(), or checkpointed by an
+	 * {@link EditJournal}, in one O(N) pass over a read-only mapping of the
+	 * file. No rotation is done: every node is linked to the children it had.
+	 * 
+	 * @param path
+	 * @return a tree of the same shape and contents as the saved one
+	 * @throws IOException
+	 *             if the file cannot be read or is not a valid snapshot
+	 */
+	public static EditTree readSnapshot(Path path) throws IOException {
+		return TreeSnapshot.read(path).tree;
+	}
+
+	/**
+	 * Rebuilds a tree after a crash from the last snapshot an
+	 * {@link EditJournal} checkpointed and the journal itself, replaying only
+	 * the frames written after the snapshot. Either file may be missing if
+	 * no checkpoint or no edit was made yet; a torn frame at the end of the
+	 * journal, and everything after it, is ignored.
+	 * 
+	 * @param snapshot
+	 * @param journal
+	 * @return the tree as of the last frame that reached the disk
+	 * @throws IOException
+	 *             if a file cannot be read or they do not belong together
+	 */
+	public static EditTree recover(Path snapshot, Path journal)
+			throws IOException {
+		return EditJournal.recover(snapshot, journal);
 	}
 
 	/**
@@ -67,8 +213,7 @@ public class EditTree {
 	 * @param e
 	 */
 	public EditTree(EditTree e) {
-		rotateCount = 0;
-		this.treeSize = e.treeSize;
+		this.metrics.allocated(e.size());
 		if (e.root == null || e.root.equals(NULL_NODE)) {
 			this.root = NULL_NODE;
 			return;
@@ -76,6 +221,9 @@ public class EditTree {
 		this.root = new Node(e.root.element);
 		this.root.balance = e.root.balance;
 		this.root.rank = e.root.rank;
+		this.root.newlines = e.root.newlines;
+		this.root.height = e.root.height;
+		this.root.size = e.root.size;
 
 		if (e.root.left != null && !e.root.left.equals(NULL_NODE)) {
 			this.root.left = new Node();
@@ -95,10 +243,7 @@ public class EditTree {
 	 * @return the height of this tree
 	 */
 	public int height() {
-		if (this.root == null || this.root.element == '\0') {
-			return -1;
-		}
-		return this.root.height(); // Replace by a real calculation.
+		return this.root.height();
 	}
 
 	/**
@@ -108,7 +253,85 @@ public class EditTree {
 	 * @return number of rotations since tree was created.
 	 */
 	public int totalRotationCount() {
-		return rotateCount; // replace by a real calculation.
+		return (int) this.metrics.rotations();
+	}
+
+	/**
+	 * Returns the counters this tree reports its work to. Each tree starts
+	 * with its own single-threaded counters.
+	 *
+	 * @return the metrics of this tree
+	 */
+	public EditTreeMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * Makes this tree report its work to metrics from now on, for example a
+	 * {@link StripedMetrics} shared by all the trees of an application.
+	 *
+	 * @param metrics
+	 *            counters to report to
+	 */
+	public void setMetrics(EditTreeMetrics metrics) {
+		if (metrics == null) {
+			throw new NullPointerException();
+		}
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Makes listener hear about every change made to this tree from now on,
+	 * on the thread that makes it.
+	 *
+	 * @param listener
+	 */
+	public void addEditListener(EditListener listener) {
+		if (listener == null) {
+			throw new NullPointerException();
+		}
+		EditListener[] grown = Arrays.copyOf(this.listeners,
+				this.listeners.length + 1);
+		grown[this.listeners.length] = listener;
+		this.listeners = grown;
+	}
+
+	/**
+	 * Stops telling listener about changes. Does nothing if it was not
+	 * listening.
+	 *
+	 * @param listener
+	 */
+	public void removeEditListener(EditListener listener) {
+		for (int i = 0; i < this.listeners.length; i++) {
+			if (this.listeners[i] == listener) {
+				EditListener[] shrunk = new EditListener[this.listeners.length
+						- 1];
+				System.arraycopy(this.listeners, 0, shrunk, 0, i);
+				System.arraycopy(this.listeners, i + 1, shrunk, i,
+						shrunk.length - i);
+				this.listeners = shrunk.length == 0 ? NO_LISTENERS : shrunk;
+				return;
+			}
+		}
+	}
+
+	private void fireInserted(int pos, char c) {
+		for (EditListener listener : this.listeners) {
+			listener.inserted(pos, c);
+		}
+	}
+
+	private void fireInserted(int pos, CharSequence s) {
+		for (EditListener listener : this.listeners) {
+			listener.inserted(pos, s);
+		}
+	}
+
+	private void fireDeleted(int start, int length) {
+		for (EditListener listener : this.listeners) {
+			listener.deleted(start, length);
+		}
 	}
 
 	/**
@@ -116,10 +339,75 @@ public class EditTree {
 	 */
 	@Override
 	public String toString() {
-		if (this.root == null || this.root.element == '\0') {
-			return "";
+		char[] chars = new char[this.exportSize()];
+		new Node.InOrder(this.root).read(chars, 0, chars.length);
+		return new String(chars);
+	}
+
+	/**
+	 * Copies the string produced by an inorder traversal of this tree into the
+	 * beginning of dst, in one pass over the tree.
+	 * 
+	 * @param dst
+	 * @throws IndexOutOfBoundsException
+	 *             if dst is shorter than this tree
+	 */
+	public void copyTo(char[] dst) throws IndexOutOfBoundsException {
+		int size = this.exportSize();
+		if (dst.length < size) {
+			throw new IndexOutOfBoundsException();
+		}
+		new Node.InOrder(this.root).read(dst, 0, size);
+	}
+
+	/**
+	 * Puts the string produced by an inorder traversal of this tree into dst
+	 * at its current position, in one pass over the tree, and advances the
+	 * position past it.
+	 * 
+	 * @param dst
+	 * @throws BufferOverflowException
+	 *             if dst has less room remaining than the size of this tree
+	 */
+	public void copyTo(CharBuffer dst) throws BufferOverflowException {
+		int size = this.exportSize();
+		if (dst.remaining() < size) {
+			throw new BufferOverflowException();
+		}
+		Node.InOrder walk = new Node.InOrder(this.root);
+		if (dst.hasArray()) {
+			walk.read(dst.array(), dst.arrayOffset() + dst.position(), size);
+			dst.position(dst.position() + size);
+			return;
+		}
+		char[] buffer = new char[Math.min(size, EXPORT_BUFFER_SIZE)];
+		int count;
+		while ((count = walk.read(buffer, 0, buffer.length)) > 0) {
+			dst.put(buffer, 0, count);
 		}
-		return this.root.toString();
+	}
+
+	/**
+	 * Writes the string produced by an inorder traversal of this tree to out,
+	 * in one pass over the tree, through a single fixed-size buffer.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 *             if out does
+	 */
+	public void writeTo(Writer out) throws IOException {
+		char[] buffer = new char[Math.min(this.exportSize(),
+				EXPORT_BUFFER_SIZE)];
+		Node.InOrder walk = new Node.InOrder(this.root);
+		int count;
+		while ((count = walk.read(buffer, 0, buffer.length)) > 0) {
+			out.write(buffer, 0, count);
+		}
+	}
+
+	// Number of characters an inorder traversal of this tree produces
+	private int exportSize() {
+		return this.root.size;
 	}
 
 	/**
@@ -129,10 +417,10 @@ public class EditTree {
 	 * @throws IndexOutOfBoundsException
 	 */
 	public char get(int pos) throws IndexOutOfBoundsException {
-		if (pos < 0 || pos >= this.treeSize || this.root == NULL_NODE) {
+		if (pos < 0 || pos >= this.root.size || this.root == NULL_NODE) {
 			throw new IndexOutOfBoundsException();
 		}
-		return this.root.get(pos);
+		return this.root.get(pos, this.metrics);
 	}
 
 	/**
@@ -140,19 +428,16 @@ public class EditTree {
 	 *            character to add to the end of this tree.
 	 */
 	public void add(char c) {
+		int pos = this.root.size;
+		this.modCount++;
 		if (!this.root.equals(NULL_NODE)) {
-			this.root.add(c);
-			this.treeSize++;
+			this.root.add(c, this.metrics);
 		} else {
-			this.treeSize++;
 			this.root = new Node(c);
-			this.root.parent = null;
-			this.root.setBalanceInsert();
-			this.root.rank = 0;
-		}
-		if (this.root.parent != null) {
-			this.root = this.root.parent;
+			this.metrics.allocated(1);
 		}
+		this.fixRoot();
+		this.fireInserted(pos, c);
 	}
 
 	/**
@@ -164,31 +449,76 @@ public class EditTree {
 	 *             id pos is negative or too large for this tree
 	 */
 	public void add(char c, int pos) throws IndexOutOfBoundsException {
-		if (pos < 0 || pos > this.treeSize) {
+		if (pos < 0 || pos > this.root.size) {
 			throw new IndexOutOfBoundsException();
-		} else if (this.root.equals(NULL_NODE)) {
+		}
+		this.modCount++;
+		if (this.root.equals(NULL_NODE)) {
 			this.root = new Node(c);
-			this.root.parent = null;
-			this.root.rank = 0;
-			this.root.balance = Code.SAME;
-			this.treeSize++;
+			this.metrics.allocated(1);
 		} else {
-			this.root.add(c, pos);
-			this.treeSize++;
+			this.root.add(c, pos, this.metrics);
 		}
-		if (this.root.parent != null) {
-			this.root = this.root.parent;
+		this.fixRoot();
+		this.fireInserted(pos, c);
+	}
+
+	/**
+	 * @param s
+	 *            characters to add to the end of this tree.
+	 */
+	public void add(CharSequence s) {
+		this.add(s, this.root.size);
+	}
+
+	/**
+	 * Adds all of s in O(|s| + log N) time: s becomes a balanced subtree in
+	 * one pass, like in the EditTree(String) constructor, and is joined in
+	 * between the two halves of this tree split at pos, so no rebalancing is
+	 * done per character.
+	 *
+	 * @param s
+	 *            characters to add
+	 * @param pos
+	 *            the first one is added in this inorder position
+	 * @throws IndexOutOfBoundsException
+	 *             id pos is negative or too large for this tree
+	 */
+	public void add(CharSequence s, int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.root.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		int length = s.length();
+		if (length == 0) {
+			return;
 		}
+		if (s == this || s instanceof SubSequence
+				&& ((SubSequence) s).tree == this) {
+			// Text pasted from this tree is copied before the tree changes
+			// under it, and listeners get the copy
+			s = s.toString();
+		}
+		// The first and last characters become the pivots of the two joins
+		Node first = new Node(s.charAt(0));
+		Node middle = Node.build(s, 1, length - 1);
+		Node last = length == 1 ? null : new Node(s.charAt(length - 1));
+		this.modCount++;
+		this.metrics.allocated(length);
+		Node[] parts = Node.split(this.root, pos, this.metrics);
+		if (last == null) {
+			this.root = Node.join(parts[0], first, parts[1], this.metrics);
+		} else {
+			Node head = Node.join(parts[0], first, middle, this.metrics);
+			this.root = Node.join(head, last, parts[1], this.metrics);
+		}
+		this.fireInserted(pos, s);
 	}
 
 	/**
 	 * @return the number of nodes in this tree
 	 */
 	public int size() {
-		if (this.root == null) {
-			return 0;
-		}
-		return this.root.size();
+		return this.root.size;
 	}
 
 	/**
@@ -199,15 +529,18 @@ public class EditTree {
 	 * @throws IndexOutOfBoundsException
 	 */
 	public char delete(int pos) throws IndexOutOfBoundsException {
-		if (pos < 0 || pos >= this.treeSize || this.root == NULL_NODE) {
+		if (pos < 0 || pos >= this.root.size || this.root == NULL_NODE) {
 			throw new IndexOutOfBoundsException();
 		}
 
-		char thingy = this.root.delete(pos);
-		if (this.root.parent != null) {
-			this.root = this.root.parent;
+		this.modCount++;
+		int size = this.root.size - 1;
+		char thingy = this.root.delete(pos, this.metrics);
+		this.fixRoot();
+		if (size == 0) {
+			this.root = NULL_NODE;
 		}
-		this.treeSize--;
+		this.fireDeleted(pos, 1);
 		return thingy;
 		// Implementation requirement:
 		// When deleting a node with two children, you normally replace the
@@ -217,7 +550,7 @@ public class EditTree {
 	}
 
 	/**
-	 * This method operates in O(length*log N), where N is the size of this
+	 * This method operates in O(length + log N), where N is the size of this
 	 * tree.
 	 * 
 	 * @param pos
@@ -230,16 +563,110 @@ public class EditTree {
 	 *             within this tree.
 	 */
 	public String get(int pos, int length) throws IndexOutOfBoundsException {
-		if (this.treeSize == 0) {
+		checkRange(pos, length);
+		return this.root.get(pos, length);
+	}
+
+	/**
+	 * Copies the string of length that starts in position pos into dst,
+	 * without any intermediate allocation. This method operates in O(length +
+	 * log N), where N is the size of this tree.
+	 * 
+	 * @param pos
+	 *            location of the beginning of the string to retrieve
+	 * @param length
+	 *            length of the string to retrieve
+	 * @param dst
+	 *            array to copy the characters into
+	 * @param dstOff
+	 *            index in dst of the character at position pos
+	 * @throws IndexOutOfBoundsException
+	 *             unless both pos and pos+length-1 are legitimate indexes
+	 *             within this tree, and the copied characters fit in dst.
+	 */
+	public void get(int pos, int length, char[] dst, int dstOff)
+			throws IndexOutOfBoundsException {
+		checkRange(pos, length);
+		if (dstOff < 0 || dstOff + length > dst.length) {
 			throw new IndexOutOfBoundsException();
 		}
-		if (pos < 0) {
+		this.root.copy(pos, pos + length, dst, dstOff);
+	}
+
+	// Checks that pos and pos+length-1 are legitimate indexes
+	private void checkRange(int pos, int length)
+			throws IndexOutOfBoundsException {
+		if (this.root.size == 0) {
 			throw new IndexOutOfBoundsException();
 		}
-		if (pos + length > this.treeSize) {
+		if (pos < 0 || length < 0) {
 			throw new IndexOutOfBoundsException();
 		}
-		return this.root.get(pos, length);
+		if (pos + length > this.root.size) {
+			throw new IndexOutOfBoundsException();
+		}
+	}
+
+	/**
+	 * Every node counts the newlines in its subtree, so lines are found by
+	 * descending from the root instead of scanning the text.
+	 *
+	 * @return the number of lines in this tree, which is one more than the
+	 *         number of '\n' characters
+	 */
+	public int lineCount() {
+		return this.root.newlines + 1;
+	}
+
+	/**
+	 * This operation is done in time proportional to the height of this tree.
+	 *
+	 * @param line
+	 *            line number, starting from 0
+	 * @return the position of the first character of that line
+	 * @throws IndexOutOfBoundsException
+	 *             unless 0 <= line < lineCount()
+	 */
+	public int lineStartOffset(int line) throws IndexOutOfBoundsException {
+		if (line < 0 || line > this.root.newlines) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (line == 0) {
+			return 0;
+		}
+		return this.root.newlinePosition(line - 1) + 1;
+	}
+
+	/**
+	 * This operation is done in time proportional to the height of this tree.
+	 *
+	 * @param offset
+	 *            position in this tree, from 0 to its size
+	 * @return the number of the line that offset is on, which is the number
+	 *         of '\n' characters before it
+	 * @throws IndexOutOfBoundsException
+	 */
+	public int lineOf(int offset) throws IndexOutOfBoundsException {
+		if (offset < 0 || offset > this.root.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return this.root.newlinesBefore(offset);
+	}
+
+	/**
+	 * This operation is done in O(length + log N).
+	 *
+	 * @param line
+	 *            line number, starting from 0
+	 * @return the characters of that line, without the '\n' that ends it
+	 * @throws IndexOutOfBoundsException
+	 *             unless 0 <= line < lineCount()
+	 */
+	public String getLine(int line) throws IndexOutOfBoundsException {
+		int start = this.lineStartOffset(line);
+		int end = line == this.root.newlines ? this.root.size : this.root
+				.newlinePosition(line);
+		return start == end ? "" : this.get(start, end - start);
 	}
 
 	/**
@@ -259,13 +686,20 @@ public class EditTree {
 	 */
 	public EditTree delete(int start, int length)
 			throws IndexOutOfBoundsException {
-		if (start < 0 || start + length >= this.size())
+		if (start < 0 || length < 0 || start + length > this.root.size)
 			throw new IndexOutOfBoundsException(
 					(start < 0) ? "negative first argument to delete"
 							: "delete range extends past end of string");
-		EditTree t2 = this.split(start);
-		EditTree t3 = t2.split(length);
-		this.concatenate(t3);
+		this.modCount++;
+		Node[] head = Node.split(this.root, start, this.metrics);
+		Node[] tail = Node.split(head[1], length, this.metrics);
+		EditTree t2 = new EditTree();
+		t2.root = tail[0];
+		this.root = head[0];
+		this.append(tail[1]);
+		if (length > 0) {
+			this.fireDeleted(start, length);
+		}
 		return t2;
 	}
 
@@ -282,83 +716,74 @@ public class EditTree {
 		if (this == other) {
 			throw new IllegalArgumentException();
 		}
-
-		if (this.size() == 0) {
-			this.root = other.root;
-			this.treeSize = other.treeSize;
-			other.root = null;
-			other.treeSize = 0;
-		} else if (other.size() == 0) {
+		this.modCount++;
+		other.modCount++;
+		int size = other.root.size;
+		if (size == 0) {
 			return;
-		} else if (this.size() == 1) {
-			this.root.right = other.root;
-			this.treeSize += other.treeSize;
-			if (other.root != NULL_NODE) {
-				other.root.parent = this.root;
-			}
-			other.root = NULL_NODE;
-			other.treeSize = 0;
-		} else {
-			Node temp = this.root;
-			int tempPos = temp.rank;
+		}
+		this.fireInserted(this.root.size, other);
+		this.append(other.root);
+		other.root = NULL_NODE;
+		other.fireDeleted(0, size);
+	}
 
-			// Gets the rightmost node
-			while (temp.right != NULL_NODE) {
-				temp = temp.right;
-				tempPos += temp.rank + 1;
-			}
-			if (this.height() == 0) {
-				this.root.right = other.root;
-				if (other.root != NULL_NODE) {
-					other.root.parent = this.root;
-				}
-				this.treeSize += other.treeSize;
-			} else {
-				// Deletes temp from the rightmost tree + cuts ties from temp
-				this.delete(tempPos);
-				temp.parent = null;
-				temp.rank = this.treeSize;
-
-				// Sets this as the left child, and other as the right child
-				temp.left = this.root;
-				temp.right = other.root;
-				if (other.root != NULL_NODE) {
-					other.root.parent = temp;
-				}
-				this.root.parent = temp;
-				this.root = temp;
-				this.treeSize += other.treeSize + 1;
-			}
-			int lHeight = this.root.left.height();
-			int rHeight = this.root.right.height();
-
-			if (Math.abs(lHeight - rHeight) <= 1) {
-				if (lHeight > rHeight) {
-					this.root.balance = Code.LEFT;
-				} else if (rHeight > lHeight) {
-					this.root.balance = Code.RIGHT;
-				} else {
-					this.root.balance = Code.SAME;
-				}
-			} else {
-				// if (lHeight > rHeight) {
-				// this.root.balance = Code.LEFT;
-				// } else if (rHeight > lHeight) {
-				// this.root.balance = Code.RIGHT;
-				// } else {
-				// this.root.balance = Code.SAME;
-				// }
-				this.root.concatenateBalance();
-			}
+	/**
+	 * Moves all of the other tree into this one so that its first character
+	 * ends up at pos, in time proportional to the log of the size of the
+	 * larger tree. Other is made empty. Listeners of this tree hear of the
+	 * characters of other being inserted, and of nothing else.
+	 *
+	 * @param other
+	 * @param pos
+	 *            position of the first character of other in this tree
+	 * @throws IllegalArgumentException
+	 *             if this == other
+	 * @throws IndexOutOfBoundsException
+	 *             id pos is negative or too large for this tree
+	 */
+	public void splice(EditTree other, int pos)
+			throws IllegalArgumentException, IndexOutOfBoundsException {
+		if (this == other) {
+			throw new IllegalArgumentException();
+		}
+		if (pos < 0 || pos > this.root.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		this.modCount++;
+		other.modCount++;
+		int size = other.root.size;
+		if (size == 0) {
+			return;
+		}
+		Node[] parts = Node.split(this.root, pos, this.metrics);
+		this.root = parts[0];
+		this.append(other.root);
+		this.append(parts[1]);
+		other.root = NULL_NODE;
+		this.fireInserted(pos, this.subSequence(pos, pos + size));
+		other.fireDeleted(0, size);
+	}
 
-			other.root = NULL_NODE;
-			other.treeSize = 0;
+	// Joins the tree rooted at other onto the end of this one
+	private void append(Node other) {
+		if (other.size == 0) {
+			return;
+		}
+		if (this.root.size == 0) {
+			this.root = other;
+		} else {
+			// The first node of other becomes the pivot of the join
+			Node[] parts = Node.split(other, 1, this.metrics);
+			this.root = Node.join(this.root, parts[0], parts[1],
+					this.metrics);
 		}
 	}
 
 	/**
-	 * This operation must be done in time proportional to the height of this
-	 * tree.
+	 * This operation is done in time proportional to the height of this tree:
+	 * the path down to pos is cut, and the pieces hanging off it on either
+	 * side are joined back together on the way up.
 	 * 
 	 * @param pos
 	 *            where to split this tree
@@ -368,45 +793,237 @@ public class EditTree {
 	 * @throws IndexOutOfBoundsException
 	 */
 	public EditTree split(int pos) throws IndexOutOfBoundsException {
-		Node newRightRoot = this.root.getNode(pos);
-		Node newLeftRoot = newRightRoot.left;
-		newRightRoot.left = NULL_NODE;
-		newLeftRoot.parent = null;
-		Node current = newRightRoot;
-
-		// Continues up to the node, splitting and reassigning parents
-		while (current.parent != null) {
-			// If current is a left child
-			if (current.parent.left == current) {
-				current.parent.left = newRightRoot;
-				current = current.parent;
-				if (newRightRoot != NULL_NODE) {
-					newRightRoot.parent = current;
-					newRightRoot = newRightRoot.parent;
-				} else {
-					newRightRoot = current;
-				}
-			}
-			// If current is a right child
-			else if (current.parent.right == current) {
-				current.parent.right = newLeftRoot;
-				current = current.parent;
-				if (newLeftRoot != NULL_NODE) {
-					newLeftRoot.parent = current;
-					newLeftRoot = newLeftRoot.parent;
-				} else {
-					newLeftRoot = current;
-				}
-			}
+		if (pos < 0 || pos > this.root.size) {
+			throw new IndexOutOfBoundsException();
 		}
+		this.modCount++;
+		Node[] parts = Node.split(this.root, pos, this.metrics);
 		EditTree returnTree = new EditTree();
-		returnTree.root = newRightRoot;
-		this.root = newLeftRoot;
+		returnTree.root = parts[1];
+		this.root = parts[0];
+		if (returnTree.root.size > 0) {
+			this.fireDeleted(pos, returnTree.root.size);
+		}
 		return returnTree;
 	}
 
 	/**
-	 * Don't worry if you can't do this one efficiently.
+	 * @return the number of characters in this tree
+	 */
+	@Override
+	public int length() {
+		return this.root.size;
+	}
+
+	/**
+	 * Like get(int), but reading consecutive positions in order costs
+	 * amortized O(1) per character, because the walk to the last position read
+	 * is kept and resumed.
+	 * 
+	 * @param index
+	 *            position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException
+	 */
+	@Override
+	public char charAt(int index) throws IndexOutOfBoundsException {
+		if (index < 0 || index >= this.root.size || this.root == NULL_NODE) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (this.finger == null || index != this.fingerPos
+				|| this.fingerModCount != this.modCount) {
+			if (this.finger == null) {
+				this.finger = new Node.InOrder(NULL_NODE);
+			}
+			this.finger.seek(this.root, index);
+			this.fingerModCount = this.modCount;
+		}
+		this.fingerPos = index + 1;
+		return this.finger.next();
+	}
+
+	/**
+	 * Returns a view of the characters in positions [start, end) that reads
+	 * through to this tree instead of copying them. The view is only
+	 * materialized by its toString(), and fails with a
+	 * ConcurrentModificationException once this tree is modified.
+	 * 
+	 * @param start
+	 * @param end
+	 * @return a view of the given range of this tree
+	 * @throws IndexOutOfBoundsException
+	 *             unless 0 <= start <= end <= length()
+	 */
+	@Override
+	public CharSequence subSequence(int start, int end)
+			throws IndexOutOfBoundsException {
+		if (start < 0 || start > end || end > this.root.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return new SubSequence(this, start, end - start);
+	}
+
+	// A range of an EditTree, read through to the tree
+	private static final class SubSequence implements CharSequence {
+		private final EditTree tree;
+		private final int offset;
+		private final int length;
+		private final int expectedModCount;
+
+		SubSequence(EditTree tree, int offset, int length) {
+			this.tree = tree;
+			this.offset = offset;
+			this.length = length;
+			this.expectedModCount = tree.modCount;
+		}
+
+		private void checkForModification() {
+			if (this.tree.modCount != this.expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+
+		@Override
+		public int length() {
+			return this.length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			checkForModification();
+			if (index < 0 || index >= this.length) {
+				throw new IndexOutOfBoundsException();
+			}
+			return this.tree.charAt(this.offset + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			checkForModification();
+			if (start < 0 || start > end || end > this.length) {
+				throw new IndexOutOfBoundsException();
+			}
+			return new SubSequence(this.tree, this.offset + start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			checkForModification();
+			if (this.length == 0) {
+				return "";
+			}
+			return this.tree.get(this.offset, this.length);
+		}
+	}
+
+	/**
+	 * @param pos
+	 *            number of characters before the cursor
+	 * @return a cursor just before the character at pos
+	 * @throws IndexOutOfBoundsException
+	 *             if pos is negative or larger than the size of this tree
+	 */
+	public TextCursor cursor(int pos) throws IndexOutOfBoundsException {
+		return new TextCursor(this, pos);
+	}
+
+	/**
+	 * @return an iterator over the characters of this tree, in order, that
+	 *         costs amortized O(1) per character
+	 */
+	public PrimitiveIterator.OfInt charIterator() {
+		final TextCursor cursor = this.cursor(0);
+		return new PrimitiveIterator.OfInt() {
+			@Override
+			public boolean hasNext() {
+				return cursor.hasNext();
+			}
+
+			@Override
+			public int nextInt() {
+				return cursor.next();
+			}
+		};
+	}
+
+	/**
+	 * Streams the characters of this tree through charIterator() instead of
+	 * through charAt().
+	 */
+	@Override
+	public IntStream chars() {
+		return StreamSupport.intStream(Spliterators.spliterator(
+				this.charIterator(), this.root.size, Spliterator.ORDERED),
+				false);
+	}
+
+	// Finds the node at pos for a cursor; null at the end of this tree
+	Node nodeAt(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.root.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return pos == this.root.size ? null : this.root.getNode(pos,
+				this.metrics);
+	}
+
+	// Finds the node of the last character; null if this tree is empty
+	Node lastNode() {
+		if (this.root == NULL_NODE) {
+			return null;
+		}
+		Node node = this.root;
+		while (node.right != NULL_NODE) {
+			node = node.right;
+		}
+		return node;
+	}
+
+	// Adds c just before node, which is at pos, or at the end if node is
+	// null, without descending from the root
+	void addBefore(Node node, int pos, char c) {
+		if (node != null) {
+			node.addBefore(c, this.metrics);
+		} else if (this.root == NULL_NODE) {
+			this.root = new Node(c);
+			this.metrics.allocated(1);
+			this.root.balance = Code.SAME;
+		} else {
+			this.lastNode().addAfter(c, this.metrics);
+		}
+		this.modCount++;
+		this.fixRoot();
+		this.fireInserted(pos, c);
+	}
+
+	// Deletes the character held by node, which is at pos, without
+	// descending from the root. Returns the node that holds the next
+	// character afterwards, or null if it was the last one.
+	Node delete(Node node, int pos) {
+		// Deleting a node with a right child moves its successor's element
+		// into it; otherwise the successor is an ancestor and stays put.
+		Node next = node.right != NULL_NODE ? node : node.successor();
+		int size = this.root.size - 1;
+		node.remove(this.metrics);
+		this.modCount++;
+		this.fixRoot();
+		if (size == 0) {
+			this.root = NULL_NODE;
+			next = null;
+		}
+		this.fireDeleted(pos, 1);
+		return next;
+	}
+
+	// Rotations at the root leave the old root below the new one
+	private void fixRoot() {
+		while (this.root.parent != null) {
+			this.root = this.root.parent;
+		}
+	}
+
+	/**
+	 * Walks the tree once with a cursor, matching incrementally, so no copy of
+	 * the text is made and the walk stops at the first occurrence.
 	 * 
 	 * @param s
 	 *            the string to look for
@@ -414,13 +1031,7 @@ public class EditTree {
 	 *         does not occur
 	 */
 	public int find(String s) {
-		if (s.equals("") && this.treeSize == 0) {
-			return 0;
-		}
-		if (s.equals("")) {
-			return 0;
-		}
-		return this.root.find(s);
+		return this.find(s, 0);
 	}
 
 	/**
@@ -428,13 +1039,123 @@ public class EditTree {
 	 * @param s
 	 *            the string to search for
 	 * @param pos
-	 *            the position in the tree to begin the search
+	 *            the position in the tree to begin the search; as with
+	 *            String.indexOf, a negative one counts as 0 and one past the
+	 *            end as the size of the tree
 	 * @return the position in this tree of the first occurrence of s that does
 	 *         not occur before position pos; -1 if s does not occur
 	 */
 	public int find(String s, int pos) {
-		String tree = this.toString();
-		return this.root.find(s, tree.substring(pos));
+		pos = Math.min(Math.max(pos, 0), this.root.size);
+		if (s.isEmpty()) {
+			return pos;
+		}
+		if (pos + s.length() > this.root.size) {
+			return -1;
+		}
+		StringMatcher matcher = new StringMatcher(s, false);
+		TextCursor cursor = this.cursor(pos);
+		int last = this.root.size - s.length();
+		while (cursor.position() - matcher.matched() <= last) {
+			if (matcher.feed(cursor.next())) {
+				return cursor.position() - s.length();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Walks the tree backwards from its end with a cursor, like find(String).
+	 * 
+	 * @param s
+	 *            the string to look for
+	 * @return the position in this tree of the last occurrence of s; -1 if s
+	 *         does not occur
+	 */
+	public int findLast(String s) {
+		return this.findLast(s, this.root.size);
+	}
+
+	/**
+	 * 
+	 * @param s
+	 *            the string to search for
+	 * @param pos
+	 *            the largest position an occurrence may start at
+	 * @return the position in this tree of the last occurrence of s that does
+	 *         not start after position pos; -1 if s does not occur
+	 */
+	public int findLast(String s, int pos) {
+		pos = Math.min(pos, this.root.size - s.length());
+		if (pos < 0) {
+			return -1;
+		}
+		if (s.isEmpty()) {
+			return pos;
+		}
+		StringMatcher matcher = new StringMatcher(s, true);
+		TextCursor cursor = this.cursor(pos + s.length());
+		while (cursor.position() + matcher.matched() >= s.length()) {
+			if (matcher.feed(cursor.previous())) {
+				return cursor.position();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Streams the positions of every occurrence of s in order, overlapping
+	 * ones included. The tree is only walked as far as the stream is
+	 * consumed, so short-circuiting operations like findFirst() or limit()
+	 * stop the search early. The tree must not be modified while the stream
+	 * is in use.
+	 * 
+	 * @param s
+	 *            the string to look for
+	 * @return the positions in this tree where s occurs
+	 */
+	public IntStream findAll(final String s) {
+		if (s.isEmpty()) {
+			return IntStream.rangeClosed(0, this.root.size);
+		}
+		final StringMatcher matcher = new StringMatcher(s, false);
+		final TextCursor cursor = this.cursor(0);
+		PrimitiveIterator.OfInt matches = new PrimitiveIterator.OfInt() {
+			// Position of the next occurrence; -1 once there is none, and
+			// UNKNOWN until the walk has been advanced to it
+			private static final int UNKNOWN = -2;
+			private int next = UNKNOWN;
+
+			private int advance() {
+				while (cursor.hasNext()) {
+					if (matcher.feed(cursor.next())) {
+						return cursor.position() - s.length();
+					}
+				}
+				return -1;
+			}
+
+			@Override
+			public boolean hasNext() {
+				if (this.next == UNKNOWN) {
+					this.next = advance();
+				}
+				return this.next >= 0;
+			}
+
+			@Override
+			public int nextInt() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int found = this.next;
+				this.next = UNKNOWN;
+				return found;
+			}
+		};
+		return StreamSupport.intStream(Spliterators.spliteratorUnknownSize(
+				matches, Spliterator.ORDERED | Spliterator.DISTINCT
+						| Spliterator.SORTED | Spliterator.NONNULL), false);
 	}
 
 	/**
@@ -0,0 +1,149 @@
+package editortrees;
+
+import static editortrees.TestUtil.randomText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the bulk read operations of {@link editortrees.EditTree}
+ */
+public class EditTreeBulkAccessTest {
+
+	@Test
+	public void testGetRange() {
+		Random random = new Random(17);
+		String s = randomText(random, 2000);
+		EditTree t = new EditTree(s);
+		for (int k = 0; k < 200; k++) {
+			int pos = random.nextInt(s.length());
+			int length = random.nextInt(s.length() - pos + 1);
+			assertEquals(s.substring(pos, pos + length), t.get(pos, length));
+		}
+		assertEquals(s, t.get(0, s.length()));
+	}
+
+	@Test
+	public void testGetRangeAfterAdds() {
+		EditTree t = new EditTree();
+		StringBuilder expected = new StringBuilder();
+		for (int k = 0; k < 1000; k++) {
+			char c = (char) ('a' + k % 26);
+			t.add(c);
+			expected.append(c);
+		}
+		for (int pos = 0; pos < 1000; pos += 37) {
+			int length = Math.min(100, 1000 - pos);
+			assertEquals(expected.substring(pos, pos + length),
+					t.get(pos, length));
+		}
+	}
+
+	@Test
+	public void testGetRangeIntoArray() {
+		String s = randomText(new Random(3), 500);
+		EditTree t = new EditTree(s);
+		char[] dst = new char[20];
+		dst[0] = '[';
+		dst[11] = ']';
+		t.get(123, 10, dst, 1);
+		assertEquals("[" + s.substring(123, 133) + "]", new String(dst, 0, 12));
+
+		t.get(0, 0, dst, 20);
+		assertEquals('[', dst[0]);
+	}
+
+	@Test
+	public void testGetRangeIntoArrayThrows() {
+		EditTree t = new EditTree("abcdef");
+		char[] dst = new char[4];
+		try {
+			t.get(0, 5, dst, 0);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.get(4, 3, new char[10], 0);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.get(1, -1, dst, 0);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testToStringLargeTree() {
+		String s = randomText(new Random(5), 100000);
+		assertEquals(s, new EditTree(s).toString());
+		assertEquals("", new EditTree().toString());
+	}
+
+	@Test
+	public void testCopyToArray() {
+		String s = randomText(new Random(7), 1000);
+		EditTree t = new EditTree(s);
+		char[] dst = new char[1001];
+		dst[1000] = '!';
+		t.copyTo(dst);
+		assertEquals(s + "!", new String(dst));
+		try {
+			t.copyTo(new char[999]);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testCopyToCharBuffer() {
+		String s = randomText(new Random(11), 20000);
+		EditTree t = new EditTree(s);
+
+		CharBuffer heap = CharBuffer.allocate(20002);
+		heap.put('<');
+		t.copyTo(heap);
+		heap.put('>');
+		heap.flip();
+		assertEquals("<" + s + ">", heap.toString());
+
+		CharBuffer direct = ByteBuffer.allocateDirect(2 * 20000)
+				.asCharBuffer();
+		t.copyTo(direct);
+		assertEquals(0, direct.remaining());
+		direct.flip();
+		assertEquals(s, direct.toString());
+
+		try {
+			t.copyTo(CharBuffer.allocate(10));
+			fail("Did not throw BufferOverflowException");
+		} catch (BufferOverflowException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testWriteTo() throws IOException {
+		String s = randomText(new Random(13), 50000);
+		StringWriter out = new StringWriter();
+		new EditTree(s).writeTo(out);
+		assertEquals(s, out.toString());
+
+		out = new StringWriter();
+		new EditTree().writeTo(out);
+		assertEquals("", out.toString());
+	}
+}
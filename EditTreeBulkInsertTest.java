@@ -0,0 +1,103 @@
+package editortrees;
+
+import static editortrees.TestUtil.assertValid;
+import static editortrees.TestUtil.randomText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.EditTree#add(CharSequence, int)}
+ */
+public class EditTreeBulkInsertTest {
+
+	@Test
+	public void testAddToEmpty() {
+		for (String s : new String[] { "a", "ab", "abc", "abcdefghijklmnop" }) {
+			EditTree t = new EditTree();
+			t.add(s, 0);
+			assertValid(s, t);
+		}
+		EditTree t = new EditTree();
+		t.add("", 0);
+		assertEquals(0, t.size());
+	}
+
+	@Test
+	public void testAddAtEnds() {
+		EditTree t = new EditTree("middle");
+		t.add("start ", 0);
+		assertValid("start middle", t);
+		t.add(" end");
+		assertValid("start middle end", t);
+		t.add('!');
+		t.add('?', 0);
+		assertValid("?start middle end!", t);
+	}
+
+	@Test
+	public void testAddRandom() {
+		Random random = new Random(19);
+		EditTree t = new EditTree();
+		StringBuilder expected = new StringBuilder();
+		for (int k = 0; k < 300; k++) {
+			String s = randomText(random, random.nextInt(k % 10 == 0 ? 500
+					: 20));
+			int pos = random.nextInt(expected.length() + 1);
+			t.add(s, pos);
+			expected.insert(pos, s);
+			assertValid(expected.toString(), t);
+		}
+		assertEquals(expected.toString().split("\n", -1).length,
+				t.lineCount());
+	}
+
+	@Test
+	public void testAddLargePaste() {
+		String s = randomText(new Random(23), 100000);
+		EditTree t = new EditTree("<>");
+		t.add(s, 1);
+		assertValid("<" + s + ">", t);
+		// a perfectly balanced paste stays as low as the tree allows
+		assertTrue(t.height() <= 17);
+		assertEquals(s.length(), t.getMetrics().allocations() - 2);
+	}
+
+	@Test
+	public void testAddFromSameTree() {
+		EditTree t = new EditTree("hello world");
+		TestUtil.Recorder recorder = new TestUtil.Recorder();
+		t.addEditListener(recorder);
+		t.add(t.subSequence(0, 5), 11);
+		assertValid("hello worldhello", t);
+		t.add(t, 3);
+		assertValid("helhello worldhellolo worldhello", t);
+		t.add(t.subSequence(3, 4), 0);
+		assertValid("hhelhello worldhellolo worldhello", t);
+		assertEquals(Arrays.asList("+11:hello", "+3:hello worldhello",
+				"+0:h"), recorder.events);
+	}
+
+	@Test
+	public void testAddThrows() {
+		EditTree t = new EditTree("abc");
+		try {
+			t.add("xyz", 4);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.add("xyz", -1);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		assertValid("abc", t);
+	}
+}
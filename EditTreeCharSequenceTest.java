@@ -0,0 +1,125 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ConcurrentModificationException;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.EditTree} as a {@link CharSequence}
+ */
+public class EditTreeCharSequenceTest {
+
+	@Test
+	public void testLengthAndCharAt() {
+		String s = "the quick brown fox jumps over the lazy dog";
+		EditTree t = new EditTree(s);
+		assertEquals(s.length(), t.length());
+		for (int i = 0; i < s.length(); i++) {
+			assertEquals(s.charAt(i), t.charAt(i));
+		}
+		for (int i = s.length() - 1; i >= 0; i -= 3) {
+			assertEquals(s.charAt(i), t.charAt(i));
+		}
+		assertEquals(0, new EditTree().length());
+	}
+
+	@Test
+	public void testCharAtAfterModification() {
+		EditTree t = new EditTree("abcdef");
+		assertEquals('a', t.charAt(0));
+		assertEquals('b', t.charAt(1));
+		t.add('X', 2);
+		assertEquals('X', t.charAt(2));
+		assertEquals('c', t.charAt(3));
+		t.delete(3);
+		assertEquals('d', t.charAt(3));
+	}
+
+	@Test
+	public void testCharAtThrows() {
+		EditTree t = new EditTree("abc");
+		try {
+			t.charAt(3);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			new EditTree().charAt(0);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testRegexOnTree() {
+		Random random = new Random(42);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			sb.append((char) ('a' + random.nextInt(4)));
+			if (random.nextInt(50) == 0) {
+				sb.append("needle");
+			}
+		}
+		String s = sb.toString();
+		EditTree t = new EditTree(s);
+		Pattern pattern = Pattern.compile("ne+dle");
+		Matcher expected = pattern.matcher(s);
+		Matcher actual = pattern.matcher(t);
+		int matches = 0;
+		while (expected.find()) {
+			assertTrue(actual.find());
+			assertEquals(expected.start(), actual.start());
+			matches++;
+		}
+		assertTrue(matches > 0);
+		assertTrue(!actual.find());
+	}
+
+	@Test
+	public void testSubSequence() {
+		String s = "abcdefghijklmnopqrstuvwxyz";
+		EditTree t = new EditTree(s);
+		CharSequence view = t.subSequence(3, 20);
+		assertEquals(17, view.length());
+		assertEquals('d', view.charAt(0));
+		CharSequence inner = view.subSequence(2, 5);
+		assertEquals("fgh", inner.toString());
+		assertEquals(s.substring(3, 20), view.toString());
+		assertEquals("", t.subSequence(4, 4).toString());
+		assertEquals(s, t.subSequence(0, s.length()).toString());
+	}
+
+	@Test
+	public void testSubSequenceThrows() {
+		EditTree t = new EditTree("abcdef");
+		try {
+			t.subSequence(4, 2);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.subSequence(0, 7);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		CharSequence view = t.subSequence(1, 3);
+		t.add('z');
+		try {
+			view.charAt(0);
+			fail("Did not throw ConcurrentModificationException");
+		} catch (ConcurrentModificationException e) {
+			// success
+		}
+	}
+}
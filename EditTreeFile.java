@@ -0,0 +1,209 @@
+package editortrees;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// An EditTree bound to the text file it was loaded from, which saves only
+// what changed. A DirtyRanges listens to the tree, and when the charset
+// gives every character the same number of bytes, as ISO-8859-1 and
+// UTF-16BE do, saving rewrites just the dirty ranges in place with
+// positional writes and then fixes the length of the file. Otherwise, or
+// when most of the text is dirty, or when the file is not the length the
+// last save left, the whole text is streamed to a temporary file that then
+// replaces the old one atomically.
+//
+// A save in place is not atomic: a crash in the middle of one can leave
+// the file partly updated. Pair it with an EditJournal where that matters.
+
+public class EditTreeFile implements AutoCloseable {
+	private static final int CHUNK = 8192;
+
+	private final EditTree tree;
+	private final Path path;
+	private final Charset charset;
+	private final int width; // Bytes per character, 0 if they vary
+	private final DirtyRanges dirty;
+
+	/**
+	 * Binds tree to path, which must hold the text of the tree, encoded with
+	 * charset, or not exist yet. Every change to the tree is tracked from now
+	 * on.
+	 *
+	 * @param tree
+	 * @param path
+	 * @param charset
+	 */
+	public EditTreeFile(EditTree tree, Path path, Charset charset) {
+		this.tree = tree;
+		this.path = path;
+		this.charset = charset;
+		CharsetEncoder encoder = this.newEncoder();
+		float max = encoder.maxBytesPerChar();
+		boolean fixed = (max == 1 || max == 2)
+				&& max == encoder.averageBytesPerChar()
+				&& max == encoder.replacement().length;
+		this.width = fixed ? (int) max : 0;
+		this.dirty = new DirtyRanges(tree.size());
+		tree.addEditListener(this.dirty);
+	}
+
+	/**
+	 * Loads the text file at path into a new tree bound to it.
+	 *
+	 * @param path
+	 * @param charset
+	 * @return the bound tree
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static EditTreeFile open(Path path, Charset charset)
+			throws IOException {
+		try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+			return new EditTreeFile(new EditTree(in, charset), path, charset);
+		}
+	}
+
+	private CharsetEncoder newEncoder() {
+		return this.charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * @return the tree whose changes are saved
+	 */
+	public EditTree getTree() {
+		return this.tree;
+	}
+
+	/**
+	 * @return the parts of the tree changed since the last save
+	 */
+	public DirtyRanges getDirtyRanges() {
+		return this.dirty;
+	}
+
+	/**
+	 * Writes the changes made since the last save to the file: in place if
+	 * the charset and the file allow it and at most half of the text is
+	 * dirty, otherwise by rewriting all of it. Does nothing if the file is
+	 * up to date.
+	 *
+	 * @return the number of characters written
+	 * @throws IOException
+	 *             if the file cannot be written; the changes stay dirty
+	 */
+	public int save() throws IOException {
+		boolean exists = Files.exists(this.path);
+		if (exists && !this.dirty.isDirty()) {
+			return 0;
+		}
+		int size = this.tree.size();
+		int[] ranges = this.dirty.ranges();
+		long dirtyCharacters = 0;
+		for (int i = 0; i < ranges.length; i += 2) {
+			dirtyCharacters += ranges[i + 1] - ranges[i];
+		}
+		boolean inPlace = this.width > 0 && exists
+				&& 2 * dirtyCharacters <= size
+				&& Files.size(this.path) == (long) this.width
+						* this.dirty.savedSize();
+		int written;
+		if (inPlace && this.writeInPlace(ranges)) {
+			written = (int) dirtyCharacters;
+		} else {
+			this.rewrite();
+			written = size;
+		}
+		this.dirty.markSaved(size);
+		return written;
+	}
+
+	// Writes the dirty ranges over the old text. Returns false, leaving the
+	// file to be rewritten, if a character does not encode to width bytes.
+	private boolean writeInPlace(int[] ranges) throws IOException {
+		int size = this.tree.size();
+		CharsetEncoder encoder = this.newEncoder();
+		char[] chars = new char[CHUNK];
+		ByteBuffer bytes = ByteBuffer.allocate(CHUNK * this.width);
+		try (FileChannel out = FileChannel.open(this.path,
+				StandardOpenOption.WRITE)) {
+			for (int i = 0; i < ranges.length; i += 2) {
+				// Surrogate pairs are encoded whole
+				int start = ranges[i];
+				int end = ranges[i + 1];
+				if (start > 0 && this.splitsPair(start)) {
+					start--;
+				}
+				if (end < size && this.splitsPair(end)) {
+					end++;
+				}
+				while (start < end) {
+					int length = Math.min(CHUNK, end - start);
+					this.tree.get(start, length, chars, 0);
+					if (length > 1 && start + length < end
+							&& Character.isHighSurrogate(chars[length - 1])) {
+						length--;
+					}
+					bytes.clear();
+					encoder.reset();
+					encoder.encode(CharBuffer.wrap(chars, 0, length), bytes,
+							true);
+					encoder.flush(bytes);
+					bytes.flip();
+					if (bytes.remaining() != length * this.width) {
+						return false;
+					}
+					long pos = (long) start * this.width;
+					while (bytes.hasRemaining()) {
+						pos += out.write(bytes, pos);
+					}
+					start += length;
+				}
+			}
+			out.truncate((long) size * this.width);
+			out.force(false);
+		}
+		return true;
+	}
+
+	// Whether pos falls between the two halves of a surrogate pair
+	private boolean splitsPair(int pos) {
+		return Character.isLowSurrogate(this.tree.get(pos))
+				&& Character.isHighSurrogate(this.tree.get(pos - 1));
+	}
+
+	// Streams the whole text to a temporary file that replaces the old one
+	private void rewrite() throws IOException {
+		Path temp = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+		try (FileChannel out = FileChannel.open(temp,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			Writer writer = Channels.newWriter(out, this.newEncoder(), -1);
+			this.tree.writeTo(writer);
+			writer.flush();
+			out.force(false);
+		}
+		Files.move(temp, this.path, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Stops tracking the changes to the tree. The file is not saved.
+	 */
+	@Override
+	public void close() {
+		this.tree.removeEditListener(this.dirty);
+	}
+}
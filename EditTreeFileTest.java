@@ -0,0 +1,155 @@
+package editortrees;
+
+import static editortrees.TestUtil.randomText;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.EditTreeFile}
+ */
+public class EditTreeFileTest {
+	private Path dir;
+	private Path path;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("save");
+		this.path = this.dir.resolve("doc.txt");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(this.path);
+		Files.delete(this.dir);
+	}
+
+	private String read(Charset charset) throws IOException {
+		return new String(Files.readAllBytes(this.path), charset);
+	}
+
+	// Puts x over the character at pos behind the tree's back, so that a
+	// save that rewrites it shows
+	private void scribble(long pos, int width) throws IOException {
+		try (FileChannel out = FileChannel.open(this.path,
+				StandardOpenOption.WRITE)) {
+			ByteBuffer x = ByteBuffer.allocate(width);
+			x.put(width - 1, (byte) 'x');
+			out.write(x, pos * width);
+		}
+	}
+
+	@Test
+	public void testSaveInPlaceWritesOnlyDirtyRanges() throws IOException {
+		String s = randomText(new Random(179), 10000);
+		Files.write(this.path, s.getBytes(StandardCharsets.ISO_8859_1));
+		try (EditTreeFile file = EditTreeFile.open(this.path,
+				StandardCharsets.ISO_8859_1)) {
+			EditTree t = file.getTree();
+			assertEquals(0, file.save());
+			t.delete(5000, 3);
+			t.add("XYZ", 5000);
+			t.add('!', 9000);
+			t.delete(9100);
+			this.scribble(100, 1);
+			assertEquals(103, file.save());
+			assertEquals(s.substring(0, 100) + "x" + t.get(101, t.size() - 101),
+					this.read(StandardCharsets.ISO_8859_1));
+			assertEquals(0, file.save());
+		}
+	}
+
+	@Test
+	public void testSaveInPlaceGrowsAndShrinksTheFile() throws IOException {
+		String s = randomText(new Random(181), 1000);
+		Files.write(this.path, s.getBytes(StandardCharsets.UTF_16BE));
+		try (EditTreeFile file = EditTreeFile.open(this.path,
+				StandardCharsets.UTF_16BE)) {
+			EditTree t = file.getTree();
+			t.add("\ud83d\ude00 appended \u20ac");
+			assertEquals(13, file.save());
+			assertEquals(t.toString(), this.read(StandardCharsets.UTF_16BE));
+
+			t.delete(10);
+			t.add('\u00e9', 10);
+			// Only the low half of the pair changes, but it is encoded whole
+			t.delete(1001);
+			t.add('\ude01', 1001);
+			t.delete(1002, 11);
+			assertEquals(2, file.save());
+			assertEquals(t.toString(), this.read(StandardCharsets.UTF_16BE));
+
+			t.delete(t.size() - 3, 3);
+			assertEquals(0, file.save());
+			assertEquals(t.toString(), this.read(StandardCharsets.UTF_16BE));
+		}
+	}
+
+	@Test
+	public void testMostlyDirtyTextIsRewritten() throws IOException {
+		Files.write(this.path, "abcdef".getBytes(StandardCharsets.ISO_8859_1));
+		try (EditTreeFile file = EditTreeFile.open(this.path,
+				StandardCharsets.ISO_8859_1)) {
+			EditTree t = file.getTree();
+			t.add('>', 0);
+			this.scribble(6, 1);
+			assertEquals(7, file.save());
+			assertEquals(">abcdef", this.read(StandardCharsets.ISO_8859_1));
+		}
+	}
+
+	@Test
+	public void testVariableWidthCharsetIsRewritten() throws IOException {
+		String s = randomText(new Random(191), 1000);
+		Files.write(this.path, s.getBytes(StandardCharsets.UTF_8));
+		try (EditTreeFile file = EditTreeFile.open(this.path,
+				StandardCharsets.UTF_8)) {
+			EditTree t = file.getTree();
+			assertEquals(0, file.save());
+			t.add('\u00e9', 999);
+			assertEquals(1001, file.save());
+			assertEquals(t.toString(), this.read(StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void testUnmappablePairFallsBackToRewrite() throws IOException {
+		Files.write(this.path,
+				"abcdefgh".getBytes(StandardCharsets.ISO_8859_1));
+		try (EditTreeFile file = EditTreeFile.open(this.path,
+				StandardCharsets.ISO_8859_1)) {
+			EditTree t = file.getTree();
+			t.add("\ud83d\ude00", 8);
+			assertEquals(10, file.save());
+			assertEquals("abcdefgh?", this.read(StandardCharsets.ISO_8859_1));
+			// The file is shorter than the tree, so saves keep rewriting it
+			t.add('i');
+			assertEquals(11, file.save());
+			assertEquals("abcdefgh?i", this.read(StandardCharsets.ISO_8859_1));
+		}
+	}
+
+	@Test
+	public void testNewFile() throws IOException {
+		EditTree t = new EditTree("fresh");
+		try (EditTreeFile file = new EditTreeFile(t, this.path,
+				StandardCharsets.ISO_8859_1)) {
+			assertEquals(5, file.save());
+			assertEquals("fresh", this.read(StandardCharsets.ISO_8859_1));
+		}
+		t.add('!');
+		assertEquals("fresh", this.read(StandardCharsets.ISO_8859_1));
+	}
+}
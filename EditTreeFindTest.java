@@ -0,0 +1,91 @@
+package editortrees;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.EditTree#find(String, int)},
+ * {@link editortrees.EditTree#findLast(String, int)} and
+ * {@link editortrees.EditTree#findAll(String)}
+ */
+public class EditTreeFindTest {
+
+	private static String randomText(Random random, int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append((char) ('a' + random.nextInt(3)));
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testFindMatchesIndexOf() {
+		Random random = new Random(230);
+		String text = randomText(random, 3000);
+		EditTree t = new EditTree(text);
+		for (int k = 0; k < 300; k++) {
+			String pattern = randomText(random, 1 + random.nextInt(8));
+			int pos = random.nextInt(text.length() + 1);
+			assertEquals(text.indexOf(pattern), t.find(pattern));
+			assertEquals(text.indexOf(pattern, pos), t.find(pattern, pos));
+			assertEquals(text.lastIndexOf(pattern), t.findLast(pattern));
+			assertEquals(text.lastIndexOf(pattern, pos),
+					t.findLast(pattern, pos));
+		}
+	}
+
+	@Test
+	public void testFindFirstCharacterIsNotEnough() {
+		// "b" occurs before "bd", so the position of the first character
+		// alone is not the answer
+		EditTree t = new EditTree("abcabd");
+		assertEquals(4, t.find("bd"));
+		assertEquals(-1, t.find("bd", 5));
+		assertEquals(1, t.findLast("bc"));
+	}
+
+	@Test
+	public void testFindEdgeCases() {
+		EditTree t = new EditTree("aaaa");
+		assertEquals(0, t.find(""));
+		assertEquals(3, t.find("", 3));
+		assertEquals(4, t.find("", 5));
+		assertEquals(4, t.findLast(""));
+		assertEquals(0, t.find("aaaa"));
+		assertEquals(-1, t.find("aaaaa"));
+		assertEquals(-1, t.find("aa", 3));
+		assertEquals(0, t.find("aa", -4));
+		assertEquals(-1, new EditTree().find("a"));
+		assertEquals(-1, new EditTree().findLast("a"));
+		assertEquals(0, new EditTree().findLast(""));
+	}
+
+	@Test
+	public void testFindAll() {
+		Random random = new Random(7);
+		String text = randomText(random, 2000);
+		EditTree t = new EditTree(text);
+		String pattern = "aba";
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = text.indexOf(pattern); i >= 0; i = text.indexOf(pattern,
+				i + 1)) {
+			expected.add(i);
+		}
+		int[] actual = t.findAll(pattern).toArray();
+		assertEquals(expected.size(), actual.length);
+		for (int i = 0; i < actual.length; i++) {
+			assertEquals((int) expected.get(i), actual[i]);
+		}
+		assertEquals(expected.get(0).intValue(), t.findAll(pattern)
+				.findFirst().getAsInt());
+		assertArrayEquals(new int[] { 0, 1, 2 }, new EditTree("aaaa")
+				.findAll("aa").toArray());
+		assertEquals(0, t.findAll("zzz").count());
+	}
+}
@@ -0,0 +1,55 @@
+package editortrees;
+
+import static editortrees.TestUtil.assertValid;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the heights that {@link editortrees.Node} keeps
+ */
+public class EditTreeHeightTest {
+
+	@Test
+	public void testHeightAfterAdds() {
+		Random random = new Random(43);
+		EditTree t = new EditTree();
+		StringBuilder expected = new StringBuilder();
+		for (int k = 0; k < 2000; k++) {
+			char c = (char) ('a' + random.nextInt(26));
+			int pos = random.nextInt(expected.length() + 1);
+			t.add(c, pos);
+			expected.insert(pos, c);
+			if (k % 100 == 0) {
+				assertValid(expected.toString(), t);
+			}
+		}
+		assertValid(expected.toString(), t);
+	}
+
+	@Test
+	public void testHeightAfterCursorInserts() {
+		Random random = new Random(47);
+		EditTree t = new EditTree("0123456789");
+		StringBuilder expected = new StringBuilder("0123456789");
+		for (int k = 0; k < 1000; k++) {
+			int pos = random.nextInt(expected.length() + 1);
+			t.cursor(pos).insert('x');
+			expected.insert(pos, 'x');
+		}
+		assertValid(expected.toString(), t);
+	}
+
+	@Test
+	public void testHeightOfSmallTrees() {
+		EditTree t = new EditTree();
+		for (int k = 0; k < 1000; k++) {
+			t.add('a');
+		}
+		assertEquals(9, t.height());
+		assertEquals(-1, new EditTree().height());
+		assertEquals(0, new EditTree('a').height());
+	}
+}
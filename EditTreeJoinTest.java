@@ -0,0 +1,146 @@
+package editortrees;
+
+import static editortrees.TestUtil.assertValid;
+import static editortrees.TestUtil.randomText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the join-based {@link editortrees.EditTree#split(int)},
+ * {@link editortrees.EditTree#concatenate(EditTree)},
+ * {@link editortrees.EditTree#splice(EditTree, int)} and
+ * {@link editortrees.EditTree#delete(int, int)}
+ */
+public class EditTreeJoinTest {
+
+	@Test
+	public void testSplitEverywhere() {
+		String s = randomText(new Random(29), 200);
+		for (int pos = 0; pos <= s.length(); pos++) {
+			EditTree t = new EditTree(s);
+			EditTree tail = t.split(pos);
+			assertValid(s.substring(0, pos), t);
+			assertValid(s.substring(pos), tail);
+			assertEquals(s.substring(0, pos).split("\n", -1).length,
+					t.lineCount());
+		}
+	}
+
+	@Test
+	public void testConcatenateUnevenTrees() {
+		Random random = new Random(31);
+		for (int k = 0; k < 100; k++) {
+			String a = randomText(random, random.nextInt(k < 50 ? 10 : 3000));
+			String b = randomText(random, random.nextInt(k < 50 ? 3000 : 10));
+			EditTree t1 = new EditTree(a);
+			EditTree t2 = new EditTree(b);
+			t1.concatenate(t2);
+			assertValid(a + b, t1);
+			assertValid("", t2);
+		}
+	}
+
+	@Test
+	public void testSplitAndConcatenateRepeatedly() {
+		Random random = new Random(37);
+		String s = randomText(random, 5000);
+		EditTree t = new EditTree(s);
+		for (int k = 0; k < 500; k++) {
+			EditTree tail = t.split(random.nextInt(s.length() + 1));
+			if (random.nextBoolean()) {
+				t.concatenate(tail);
+			} else {
+				tail.concatenate(t);
+				t = tail;
+			}
+		}
+		assertEquals(s.length(), t.size());
+		assertTrue(t.height() <= 1.45 * Math.log(s.length() + 2) / Math.log(2));
+	}
+
+	@Test
+	public void testSplice() {
+		Random random = new Random(43);
+		String s = randomText(random, 2000);
+		EditTree t = new EditTree(s);
+		StringBuilder expected = new StringBuilder(s);
+		for (int k = 0; k < 200; k++) {
+			String fragment = randomText(random, random.nextInt(k < 100 ? 10
+					: 3000));
+			EditTree other = new EditTree(fragment);
+			int pos = random.nextInt(expected.length() + 1);
+			t.splice(other, pos);
+			expected.insert(pos, fragment);
+			assertValid(expected.toString(), t);
+			assertValid("", other);
+		}
+	}
+
+	@Test
+	public void testSpliceReportsOnlyTheFragment() {
+		EditTree t = new EditTree("abcdef");
+		EditTree other = new EditTree("XY");
+		TestUtil.Recorder recorder = new TestUtil.Recorder();
+		TestUtil.Recorder otherRecorder = new TestUtil.Recorder();
+		t.addEditListener(recorder);
+		other.addEditListener(otherRecorder);
+		t.splice(other, 2);
+		assertValid("abXYcdef", t);
+		assertEquals(Arrays.asList("+2:XY"), recorder.events);
+		assertEquals(Arrays.asList("-0,2"), otherRecorder.events);
+		try {
+			t.splice(t, 0);
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+		try {
+			t.splice(new EditTree("z"), 9);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		assertValid("abXYcdef", t);
+	}
+
+	@Test
+	public void testDeleteRange() {
+		Random random = new Random(41);
+		String s = randomText(random, 3000);
+		EditTree t = new EditTree(s);
+		StringBuilder expected = new StringBuilder(s);
+		while (expected.length() > 0) {
+			int start = random.nextInt(expected.length());
+			int length = random.nextInt(Math.min(100, expected.length()
+					- start) + 1);
+			EditTree removed = t.delete(start, length);
+			assertValid(expected.substring(start, start + length), removed);
+			expected.delete(start, start + length);
+			assertValid(expected.toString(), t);
+		}
+		try {
+			new EditTree("abc").delete(1, 3);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testSplitThrows() {
+		EditTree t = new EditTree("abc");
+		try {
+			t.split(4);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		assertValid("abc", t);
+	}
+}
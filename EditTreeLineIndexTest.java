@@ -0,0 +1,147 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the line index of {@link editortrees.EditTree}
+ */
+public class EditTreeLineIndexTest {
+
+	// Compares every line query against a scan of the expected text
+	private static void assertLines(String expected, EditTree t) {
+		String[] lines = expected.split("\n", -1);
+		assertEquals(lines.length, t.lineCount());
+		int start = 0;
+		for (int line = 0; line < lines.length; line++) {
+			assertEquals(start, t.lineStartOffset(line));
+			assertEquals(lines[line], t.getLine(line));
+			int end = start + lines[line].length();
+			for (int offset = start; offset <= end; offset++) {
+				assertEquals(line, t.lineOf(offset));
+			}
+			start = end + 1;
+		}
+	}
+
+	private static String randomText(Random random, int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append(random.nextInt(8) == 0 ? '\n'
+					: (char) ('a' + random.nextInt(26)));
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testEmptyAndSingleLine() {
+		EditTree t = new EditTree();
+		assertEquals(1, t.lineCount());
+		assertEquals(0, t.lineStartOffset(0));
+		assertEquals(0, t.lineOf(0));
+		assertEquals("", t.getLine(0));
+
+		assertLines("hello", new EditTree("hello"));
+		assertLines("\n", new EditTree("\n"));
+		assertLines("\n\n\n", new EditTree("\n\n\n"));
+	}
+
+	@Test
+	public void testConstructor() {
+		String s = randomText(new Random(1), 3000);
+		assertLines(s, new EditTree(s));
+		assertLines(s, new EditTree(new EditTree(s)));
+	}
+
+	@Test
+	public void testAdds() {
+		Random random = new Random(2);
+		EditTree t = new EditTree();
+		StringBuilder expected = new StringBuilder();
+		for (int k = 0; k < 500; k++) {
+			char c = random.nextInt(5) == 0 ? '\n' : 'x';
+			t.add(c);
+			expected.append(c);
+		}
+		assertLines(expected.toString(), t);
+
+		for (int k = 0; k < 500; k++) {
+			char c = random.nextInt(5) == 0 ? '\n' : 'y';
+			int pos = random.nextInt(expected.length() + 1);
+			t.add(c, pos);
+			expected.insert(pos, c);
+		}
+		assertLines(expected.toString(), t);
+	}
+
+	@Test
+	public void testCursorInserts() {
+		Random random = new Random(3);
+		String s = randomText(random, 1000);
+		EditTree t = new EditTree(s);
+		StringBuilder expected = new StringBuilder(s);
+		for (int k = 0; k < 300; k++) {
+			int pos = random.nextInt(expected.length() + 1);
+			char c = random.nextBoolean() ? '\n' : 'z';
+			t.cursor(pos).insert(c);
+			expected.insert(pos, c);
+		}
+		assertLines(expected.toString(), t);
+	}
+
+	@Test
+	public void testDeletes() {
+		String s = "one\ntwo\nthree\n\nfive";
+		EditTree t = new EditTree(s);
+		StringBuilder expected = new StringBuilder(s);
+		for (int pos : new int[] { 3, 0, 10, 13, 6 }) {
+			assertEquals(expected.charAt(pos), t.delete(pos));
+			expected.deleteCharAt(pos);
+			assertLines(expected.toString(), t);
+		}
+
+		t = new EditTree("ab\ncd\n\nef");
+		TextCursor cursor = t.cursor(2);
+		assertEquals('\n', cursor.delete());
+		assertLines("abcd\n\nef", t);
+		cursor.moveTo(5);
+		assertEquals('\n', cursor.delete());
+		assertLines("abcd\nef", t);
+	}
+
+	@Test
+	public void testConcatenate() {
+		String a = randomText(new Random(4), 300);
+		String b = randomText(new Random(5), 700);
+		EditTree t = new EditTree(a);
+		t.concatenate(new EditTree(b));
+		assertLines(a + b, t);
+	}
+
+	@Test
+	public void testOutOfBounds() {
+		EditTree t = new EditTree("a\nb");
+		try {
+			t.lineStartOffset(2);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.getLine(-1);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.lineOf(4);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package editortrees;
+
+// Instrumentation counters that a tree reports its work to. Every tree holds
+// its own, so counts from different documents never mix; trees that should
+// be counted together can share one thread-safe instance.
+
+public interface EditTreeMetrics {
+
+	/**
+	 * Counts rotations; a double rotation counts as two.
+	 *
+	 * @param count
+	 */
+	void rotated(int count);
+
+	/**
+	 * Counts nodes visited while descending from the root.
+	 *
+	 * @param count
+	 */
+	void visited(int count);
+
+	/**
+	 * Counts nodes allocated.
+	 *
+	 * @param count
+	 */
+	void allocated(int count);
+
+	/**
+	 * Counts levels climbed while fixing balance codes after an update.
+	 *
+	 * @param count
+	 */
+	void rebalanced(int count);
+
+	/**
+	 * @return the number of rotations counted
+	 */
+	long rotations();
+
+	/**
+	 * @return the number of nodes visited
+	 */
+	long nodesVisited();
+
+	/**
+	 * @return the number of nodes allocated
+	 */
+	long allocations();
+
+	/**
+	 * @return the number of levels climbed while rebalancing
+	 */
+	long rebalanceSteps();
+
+	/**
+	 * Sets every counter back to zero.
+	 */
+	void reset();
+
+	/**
+	 * @return the current values of all the counters
+	 */
+	default Snapshot snapshot() {
+		return new Snapshot(rotations(), nodesVisited(), allocations(),
+				rebalanceSteps());
+	}
+
+	/**
+	 * Immutable values of the counters at one moment, for exporting.
+	 */
+	public static final class Snapshot {
+		public final long rotations;
+		public final long nodesVisited;
+		public final long allocations;
+		public final long rebalanceSteps;
+
+		public Snapshot(long rotations, long nodesVisited, long allocations,
+				long rebalanceSteps) {
+			this.rotations = rotations;
+			this.nodesVisited = nodesVisited;
+			this.allocations = allocations;
+			this.rebalanceSteps = rebalanceSteps;
+		}
+
+		/**
+		 * @param earlier
+		 *            snapshot taken before this one
+		 * @return the work counted between the two snapshots
+		 */
+		public Snapshot minus(Snapshot earlier) {
+			return new Snapshot(this.rotations - earlier.rotations,
+					this.nodesVisited - earlier.nodesVisited, this.allocations
+							- earlier.allocations, this.rebalanceSteps
+							- earlier.rebalanceSteps);
+		}
+
+		@Override
+		public String toString() {
+			return "rotations=" + this.rotations + " nodesVisited="
+					+ this.nodesVisited + " allocations=" + this.allocations
+					+ " rebalanceSteps=" + this.rebalanceSteps;
+		}
+	}
+}
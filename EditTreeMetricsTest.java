@@ -0,0 +1,82 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.EditTreeMetrics}
+ */
+public class EditTreeMetricsTest {
+
+	@Test
+	public void testCountsArePerTree() {
+		EditTree t1 = new EditTree();
+		t1.add('a');
+		t1.add('b');
+		t1.add('c');
+		assertEquals(1, t1.totalRotationCount());
+
+		EditTree t2 = new EditTree();
+		assertEquals(0, t2.totalRotationCount());
+		assertEquals(1, t1.totalRotationCount());
+		t2.add('x');
+		t2.add('y', 0);
+		t2.add('z', 1);
+		assertEquals(2, t2.totalRotationCount());
+		assertEquals(1, t1.totalRotationCount());
+	}
+
+	@Test
+	public void testAllocationsAndVisits() {
+		EditTree t = new EditTree();
+		for (int k = 0; k < 100; k++) {
+			t.add((char) ('a' + k % 26));
+		}
+		EditTreeMetrics.Snapshot before = t.getMetrics().snapshot();
+		assertEquals(100, before.allocations);
+		assertTrue(before.rebalanceSteps > 0);
+
+		t.get(50);
+		EditTreeMetrics.Snapshot diff = t.getMetrics().snapshot()
+				.minus(before);
+		assertTrue(diff.nodesVisited >= 1);
+		assertTrue(diff.nodesVisited <= t.height() + 1);
+		assertEquals(0, diff.allocations);
+		assertEquals(0, diff.rotations);
+
+		assertEquals(10, new EditTree("abcdefghij").getMetrics().allocations());
+	}
+
+	@Test
+	public void testSharedStripedMetrics() throws InterruptedException {
+		final StripedMetrics shared = new StripedMetrics();
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					EditTree t = new EditTree();
+					t.setMetrics(shared);
+					for (int k = 0; k < 1000; k++) {
+						t.add('a');
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(4000, shared.allocations());
+
+		EditTree t = new EditTree();
+		t.setMetrics(shared);
+		assertSame(shared, t.getMetrics());
+		assertEquals(shared.rotations(), t.totalRotationCount());
+		shared.reset();
+		assertEquals(0, shared.snapshot().nodesVisited);
+	}
+}
@@ -0,0 +1,70 @@
+package editortrees;
+
+import static editortrees.TestUtil.assertValid;
+import static editortrees.TestUtil.randomText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.EditTree#EditTree(CharSequence, ForkJoinPool)}
+ */
+public class EditTreeParallelBuildTest {
+
+	// Checks that two trees have the same shape and elements
+	private static void assertSameTree(Node expected, Node actual) {
+		if (expected == EditTree.getNullNode()) {
+			assertSame(expected, actual);
+			return;
+		}
+		assertEquals(expected.element, actual.element);
+		assertEquals(expected.rank, actual.rank);
+		assertEquals(expected.height, actual.height);
+		assertSameTree(expected.left, actual.left);
+		assertSameTree(expected.right, actual.right);
+	}
+
+	@Test
+	public void testSameTreeAsSequentialBuild() {
+		Random random = new Random(127);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			int cutoff = Node.BuildTask.SEQUENTIAL_CUTOFF;
+			for (int length : new int[] { 0, 1, 1000, cutoff, cutoff + 1,
+					3 * cutoff + 17, 500000 }) {
+				String s = randomText(random, length);
+				EditTree t = new EditTree(s, pool);
+				assertValid(s, t);
+				assertSameTree(new EditTree(s).getRoot(), t.getRoot());
+				assertEquals(length, t.getMetrics().allocations());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testEditsAfterParallelBuild() {
+		String s = randomText(new Random(131), 200000);
+		EditTree t = new EditTree(s, ForkJoinPool.commonPool());
+		StringBuilder expected = new StringBuilder(s);
+		Random random = new Random(137);
+		for (int k = 0; k < 1000; k++) {
+			int pos = random.nextInt(expected.length());
+			if (k % 2 == 0) {
+				t.delete(pos);
+				expected.deleteCharAt(pos);
+			} else {
+				t.add('x', pos);
+				expected.insert(pos, 'x');
+			}
+		}
+		assertValid(expected.toString(), t);
+		assertEquals(s.split("\n", -1).length, new EditTree(s,
+				ForkJoinPool.commonPool()).lineCount());
+	}
+}
@@ -0,0 +1,89 @@
+package editortrees;
+
+import static editortrees.TestUtil.assertValid;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the loop-based descents and the rebalance pass of
+ * {@link editortrees.Node}
+ */
+public class EditTreeRetraceTest {
+
+	@Test
+	public void testRandomAddsAndDeletes() {
+		Random random = new Random(59);
+		EditTree t = new EditTree();
+		StringBuilder expected = new StringBuilder();
+		for (int k = 0; k < 5000; k++) {
+			if (random.nextInt(5) < 2 && expected.length() > 0) {
+				int pos = random.nextInt(expected.length());
+				assertEquals(expected.charAt(pos), t.delete(pos));
+				expected.deleteCharAt(pos);
+			} else {
+				char c = random.nextInt(10) == 0 ? '\n'
+						: (char) ('a' + random.nextInt(26));
+				int pos = random.nextInt(expected.length() + 1);
+				t.add(c, pos);
+				expected.insert(pos, c);
+			}
+			if (k % 250 == 0) {
+				assertValid(expected.toString(), t);
+			}
+		}
+		assertValid(expected.toString(), t);
+	}
+
+	@Test
+	public void testDeleteDownToEmpty() {
+		EditTree t = new EditTree("abcdefghijklmnopqrstuvwxyz");
+		StringBuilder expected = new StringBuilder(t.toString());
+		Random random = new Random(61);
+		while (expected.length() > 0) {
+			int pos = random.nextInt(expected.length());
+			assertEquals(expected.charAt(pos), t.delete(pos));
+			expected.deleteCharAt(pos);
+			assertValid(expected.toString(), t);
+		}
+		assertEquals(-1, t.height());
+		t.add('a');
+		assertValid("a", t);
+	}
+
+	@Test
+	public void testCursorDeletes() {
+		Random random = new Random(67);
+		EditTree t = new EditTree();
+		StringBuilder expected = new StringBuilder();
+		for (int k = 0; k < 2000; k++) {
+			t.add((char) ('a' + k % 26));
+			expected.append((char) ('a' + k % 26));
+		}
+		while (expected.length() > 100) {
+			int pos = random.nextInt(expected.length());
+			assertEquals(expected.charAt(pos), t.cursor(pos).delete());
+			expected.deleteCharAt(pos);
+		}
+		assertValid(expected.toString(), t);
+	}
+
+	@Test
+	public void testSequentialAddsStayShallow() {
+		EditTree t = new EditTree();
+		for (int k = 0; k < 100000; k++) {
+			t.add('x', k / 2);
+		}
+		assertTrue(t.height() <= 1.45 * Math.log(100002) / Math.log(2));
+		assertEquals('x', t.get(99999));
+		EditTree u = new EditTree();
+		for (int k = 0; k < 1000; k++) {
+			u.add('y');
+		}
+		assertValid(u.toString(), u);
+		assertEquals(9, u.height());
+	}
+}
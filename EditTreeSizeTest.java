@@ -0,0 +1,68 @@
+package editortrees;
+
+import static editortrees.TestUtil.assertValid;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the subtree sizes that {@link editortrees.Node} keeps
+ */
+public class EditTreeSizeTest {
+
+	@Test
+	public void testSizeAfterSplit() {
+		EditTree t = new EditTree("abcdefghij");
+		EditTree tail = t.split(4);
+		assertEquals(4, t.size());
+		assertEquals(6, tail.size());
+		assertEquals(4, t.getRoot().size);
+		assertEquals(6, tail.getRoot().size);
+		t.add('x');
+		assertValid("abcdx", t);
+		tail.concatenate(t);
+		assertValid("efghijabcdx", tail);
+		assertEquals(0, t.size());
+	}
+
+	@Test
+	public void testSizeAfterEdits() {
+		Random random = new Random(53);
+		EditTree t = new EditTree();
+		StringBuilder expected = new StringBuilder();
+		for (int k = 0; k < 1000; k++) {
+			int pos = random.nextInt(expected.length() + 1);
+			char c = (char) ('a' + random.nextInt(26));
+			if (k % 3 == 2 && expected.length() > 0) {
+				pos = random.nextInt(expected.length());
+				int length = random.nextInt(Math.min(5, expected.length()
+						- pos)) + 1;
+				assertEquals(length, t.delete(pos, length).size());
+				expected.delete(pos, pos + length);
+			} else {
+				t.add(c, pos);
+				expected.insert(pos, c);
+			}
+			assertEquals(expected.length(), t.size());
+		}
+		assertValid(expected.toString(), t);
+	}
+
+	@Test
+	public void testDeleteRangeChecksSize() {
+		EditTree t = new EditTree("abcdef");
+		EditTree removed = t.delete(2, 4);
+		assertValid("ab", t);
+		assertValid("cdef", removed);
+		try {
+			t.delete(1, 2);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		assertValid("ab", t);
+	}
+}
@@ -0,0 +1,159 @@
+package editortrees;
+
+import static editortrees.TestUtil.assertValid;
+import static editortrees.TestUtil.randomText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the binary snapshots of {@link editortrees.EditTree}
+ */
+public class EditTreeSnapshotTest {
+	private Path dir;
+	private Path path;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("snapshot");
+		this.path = this.dir.resolve("doc.snapshot");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(this.path);
+		Files.delete(this.dir);
+	}
+
+	// Checks that two trees have the same shape, elements and balance codes
+	private static void assertSameShape(Node expected, Node actual) {
+		if (expected == EditTree.getNullNode()) {
+			assertSame(EditTree.getNullNode(), actual);
+			return;
+		}
+		assertEquals(expected.element, actual.element);
+		assertEquals(expected.balance, actual.balance);
+		assertEquals(expected.rank, actual.rank);
+		assertEquals(expected.height, actual.height);
+		assertSameShape(expected.left, actual.left);
+		assertSameShape(expected.right, actual.right);
+	}
+
+	private EditTree roundTrip(EditTree t) throws IOException {
+		t.writeSnapshot(this.path);
+		EditTree loaded = EditTree.readSnapshot(this.path);
+		assertValid(t.toString(), loaded);
+		assertSameShape(t.getRoot(), loaded.getRoot());
+		return loaded;
+	}
+
+	@Test
+	public void testSmallTrees() throws IOException {
+		for (String s : new String[] { "", "a", "ab", "abc", "a\nb\n" }) {
+			this.roundTrip(new EditTree(s));
+		}
+	}
+
+	@Test
+	public void testEditedTreeKeepsItsShape() throws IOException {
+		Random random = new Random(163);
+		EditTree t = new EditTree(randomText(random, 1000));
+		for (int k = 0; k < 3000; k++) {
+			if (random.nextBoolean()) {
+				t.add((char) ('a' + random.nextInt(26)),
+						random.nextInt(t.size() + 1));
+			} else {
+				t.delete(random.nextInt(t.size()));
+			}
+		}
+		EditTree loaded = this.roundTrip(t);
+		assertEquals(t.lineCount(), loaded.lineCount());
+		assertEquals(t.height(), loaded.height());
+	}
+
+	@Test
+	public void testLargeTreeLoadsWithoutRotations() throws IOException {
+		String s = randomText(new Random(167), 300001);
+		EditTree t = new EditTree(s);
+		t.add("\u00e9\u20ac\uffff", 12345);
+		EditTree loaded = this.roundTrip(t);
+		assertEquals(0, loaded.getMetrics().rotations());
+		assertEquals(t.size(), loaded.getMetrics().allocations());
+		assertEquals(20 + 2L * t.size() + (t.size() + 1) / 2,
+				Files.size(this.path));
+		assertFalse(Files.exists(this.dir.resolve("doc.snapshot.tmp")));
+	}
+
+	@Test
+	public void testLoadedTreeCanBeEdited() throws IOException {
+		EditTree loaded = this.roundTrip(new EditTree("hello world"));
+		loaded.add('!');
+		loaded.delete(0, 6);
+		loaded.add("big ", 0);
+		assertValid("big world!", loaded);
+	}
+
+	private void assertRejected() {
+		try {
+			EditTree.readSnapshot(this.path);
+			fail("Did not throw IOException");
+		} catch (IOException e) {
+			// success
+		}
+	}
+
+	private void overwrite(long pos, byte... bytes) throws IOException {
+		try (FileChannel out = FileChannel.open(this.path,
+				StandardOpenOption.WRITE)) {
+			out.write(ByteBuffer.wrap(bytes), pos);
+		}
+	}
+
+	@Test
+	public void testDamagedFilesAreRejected() throws IOException {
+		EditTree t = new EditTree("abcdefg");
+		t.writeSnapshot(this.path);
+		this.overwrite(0, (byte) 'X');
+		this.assertRejected();
+
+		t.writeSnapshot(this.path);
+		this.overwrite(7, (byte) 2);
+		this.assertRejected();
+
+		t.writeSnapshot(this.path);
+		try (FileChannel out = FileChannel.open(this.path,
+				StandardOpenOption.WRITE)) {
+			out.truncate(out.size() - 1);
+		}
+		this.assertRejected();
+
+		// The root of "abcdefg" has two children and is balanced; claiming
+		// that it leans left is caught
+		t.writeSnapshot(this.path);
+		this.overwrite(20 + 2 * 7, (byte) 0xD0);
+		this.assertRejected();
+
+		// Claiming that it has no children leaves nodes unread
+		t.writeSnapshot(this.path);
+		this.overwrite(20 + 2 * 7, (byte) 0x00);
+		this.assertRejected();
+	}
+
+	@Test
+	public void testMissingFile() {
+		this.assertRejected();
+	}
+}
@@ -0,0 +1,93 @@
+package editortrees;
+
+import static editortrees.TestUtil.assertValid;
+import static editortrees.TestUtil.randomText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the streaming constructors of {@link editortrees.EditTree}
+ */
+public class EditTreeStreamingBuildTest {
+
+	// Hands out one character per read, like a slow stream
+	private static class TrickleReader extends Reader {
+		private final String s;
+		private int pos;
+
+		TrickleReader(String s) {
+			this.s = s;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) {
+			if (this.pos == this.s.length()) {
+				return -1;
+			}
+			cbuf[off] = this.s.charAt(this.pos++);
+			return 1;
+		}
+
+		@Override
+		public void close() {
+			// nothing to release
+		}
+	}
+
+	@Test
+	public void testReaderOfEverySmallSize() throws IOException {
+		Random random = new Random(103);
+		for (int length = 0; length <= 300; length++) {
+			String s = randomText(random, length);
+			assertValid(s, new EditTree(new StringReader(s)));
+		}
+	}
+
+	@Test
+	public void testLargeReader() throws IOException {
+		String s = randomText(new Random(107), 100000);
+		EditTree t = new EditTree(new TrickleReader(s));
+		assertValid(s, t);
+		assertTrue(t.height() <= 1.45 * Math.log(s.length() + 2)
+				/ Math.log(2));
+		assertEquals(s.split("\n", -1).length, t.lineCount());
+		assertEquals(s.length(), t.getMetrics().allocations());
+		t.add('x', 500);
+		t.delete(70000);
+		assertValid(s.substring(0, 500) + "x" + s.substring(500, 69999)
+				+ s.substring(70000), t);
+	}
+
+	@Test
+	public void testChannelWithCharset() throws IOException {
+		String s = "na\u00efve caf\u00e9 \u65e5\u672c\u8a9e \ud83d\ude00\n"
+				+ randomText(new Random(109), 20000);
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		EditTree t = new EditTree(Channels.newChannel(new ByteArrayInputStream(
+				bytes)), StandardCharsets.UTF_8);
+		assertValid(s, t);
+
+		EditTree malformed = new EditTree(Channels.newChannel(
+				new ByteArrayInputStream(new byte[] { 'a', (byte) 0xFF, 'b' })),
+				StandardCharsets.UTF_8);
+		assertEquals("a\ufffdb", malformed.toString());
+	}
+
+	@Test
+	public void testCharArrayAndCharSequence() {
+		String s = randomText(new Random(113), 5000);
+		assertValid(s, new EditTree(s.toCharArray()));
+		assertValid(s, new EditTree(new StringBuilder(s)));
+		assertValid("", new EditTree(new char[0]));
+	}
+}
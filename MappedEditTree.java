@@ -0,0 +1,291 @@
+package editortrees;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// A text editor buffer over a file that is memory-mapped read-only instead of
+// read into the heap. The document is a piece table: a height-balanced tree
+// with rank of pieces, each a range of either the original file or an
+// append-only buffer of added characters. Opening a file creates a single
+// piece, edits only split and join pieces, and the file's pages are read by
+// the operating system when they are first touched, so a multi-gigabyte
+// file opens at once and only the edited regions take up heap.
+//
+// Every byte of the file is one character, as in ISO-8859-1, so that a
+// position maps straight to a file offset. Positions are longs because a
+// file can be larger than 2^31 bytes.
+
+public class MappedEditTree implements AutoCloseable {
+	private static final int REGION_SHIFT = 30; // 1GB per mapped region
+	private static final long REGION_MASK = (1L << REGION_SHIFT) - 1;
+
+	private FileChannel channel;
+	private MappedByteBuffer[] regions;
+	private final StringBuilder added = new StringBuilder();
+	private PieceNode root;
+
+	private MappedEditTree(FileChannel channel, MappedByteBuffer[] regions,
+			long length) {
+		this.channel = channel;
+		this.regions = regions;
+		this.root = length == 0 ? null : new PieceNode(false, 0, length);
+	}
+
+	/**
+	 * Opens a file for editing without reading it. The file must not be
+	 * changed by anyone else while the tree is open.
+	 *
+	 * @param path
+	 * @return a tree whose toString is the content of the file
+	 * @throws IOException
+	 *             if the file cannot be opened or mapped
+	 */
+	public static MappedEditTree open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			long length = channel.size();
+			MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((length
+					+ REGION_MASK) >>> REGION_SHIFT)];
+			for (int i = 0; i < regions.length; i++) {
+				long offset = (long) i << REGION_SHIFT;
+				regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+						Math.min(length - offset, 1L << REGION_SHIFT));
+			}
+			return new MappedEditTree(channel, regions, length);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes the file. The mapping goes away once the tree is unreachable; a
+	 * closed tree throws IllegalStateException. Closing a closed tree does
+	 * nothing.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.channel == null) {
+			return;
+		}
+		this.channel.close();
+		this.channel = null;
+		this.regions = null;
+		this.root = null;
+	}
+
+	private void checkOpen() {
+		if (this.channel == null) {
+			throw new IllegalStateException("tree is closed");
+		}
+	}
+
+	/**
+	 * @return the number of characters in this tree
+	 */
+	public long size() {
+		this.checkOpen();
+		return PieceNode.size(this.root);
+	}
+
+	/**
+	 *
+	 * @return the height of this tree, counted in pieces
+	 */
+	public int height() {
+		this.checkOpen();
+		return PieceNode.height(this.root);
+	}
+
+	// Number of pieces the document is made of
+	int pieces() {
+		return PieceNode.count(this.root);
+	}
+
+	/**
+	 * Return the string produced by an inorder traversal of this tree
+	 *
+	 * @throws IllegalStateException
+	 *             if there are too many characters for a String
+	 */
+	@Override
+	public String toString() {
+		long size = this.size();
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalStateException("too large for a String");
+		}
+		return this.get(0, (int) size);
+	}
+
+	// Reads one character of a piece
+	private char charAt(PieceNode piece, long offset) {
+		long at = piece.start + offset;
+		if (piece.added) {
+			return this.added.charAt((int) at);
+		}
+		return (char) (this.regions[(int) (at >>> REGION_SHIFT)]
+				.get((int) (at & REGION_MASK)) & 0xFF);
+	}
+
+	/**
+	 * @param pos
+	 *            position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char get(long pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos >= this.size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		PieceNode node = this.root;
+		while (true) {
+			if (pos < node.rank) {
+				node = node.left;
+			} else if (pos < node.rank + node.length) {
+				return this.charAt(node, pos - node.rank);
+			} else {
+				pos -= node.rank + node.length;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * This method operates in O(length + log P), where P is the number of
+	 * pieces.
+	 *
+	 * @param pos
+	 *            location of the beginning of the string to retrieve
+	 * @param length
+	 *            length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException
+	 *             unless both pos and pos+length-1 are legitimate indexes
+	 *             within this tree.
+	 */
+	public String get(long pos, int length) throws IndexOutOfBoundsException {
+		if (pos < 0 || length < 0 || pos + length > this.size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		char[] chars = new char[length];
+		this.copy(this.root, pos, pos + length, chars, 0);
+		return new String(chars);
+	}
+
+	// Copies the characters in positions [from, to) of a subtree into dst,
+	// starting at dstOff, walking the right spine without recursion
+	private void copy(PieceNode node, long from, long to, char[] dst,
+			int dstOff) {
+		while (node != null && from < to) {
+			long start = node.rank;
+			long end = start + node.length;
+			if (from < start) {
+				this.copy(node.left, from, Math.min(to, start), dst, dstOff);
+			}
+			long stop = Math.min(to, end);
+			for (long pos = Math.max(from, start); pos < stop; pos++) {
+				dst[dstOff + (int) (pos - from)] = this.charAt(node, pos
+						- start);
+			}
+			if (to <= end) {
+				return;
+			}
+			long next = Math.max(from, end);
+			dstOff += (int) (next - from);
+			from = next - end;
+			to -= end;
+			node = node.right;
+		}
+	}
+
+	/**
+	 * @param c
+	 *            character to add to the end of this tree.
+	 */
+	public void add(char c) {
+		this.add(String.valueOf(c), this.size());
+	}
+
+	/**
+	 * @param c
+	 *            character to add
+	 * @param pos
+	 *            character added in this inorder position
+	 * @throws IndexOutOfBoundsException
+	 *             id pos is negative or too large for this tree
+	 */
+	public void add(char c, long pos) throws IndexOutOfBoundsException {
+		this.add(String.valueOf(c), pos);
+	}
+
+	/**
+	 * Appends s to the add buffer and links it in as a piece at pos, in
+	 * O(|s| + log P) time. Characters typed one after another extend the
+	 * same piece.
+	 *
+	 * @param s
+	 *            characters to add
+	 * @param pos
+	 *            position of the first of them in this tree
+	 * @throws IndexOutOfBoundsException
+	 *             id pos is negative or too large for this tree
+	 */
+	public void add(CharSequence s, long pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (s.length() == 0) {
+			return;
+		}
+		int start = this.added.length();
+		this.added.append(s);
+		PieceNode[] parts = new PieceNode[2];
+		PieceNode.split(this.root, pos, parts);
+		// Joining merges the new piece with the one before it if that ends
+		// where it starts in the add buffer
+		PieceNode piece = new PieceNode(true, start, s.length());
+		this.root = PieceNode.join(PieceNode.join(parts[0], piece), parts[1]);
+	}
+
+	/**
+	 *
+	 * @param pos
+	 *            position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char delete(long pos) throws IndexOutOfBoundsException {
+		char deleted = this.get(pos);
+		this.delete(pos, 1);
+		return deleted;
+	}
+
+	/**
+	 * Deletes length characters starting at start, in O(log P) time. Only
+	 * pieces are cut; the file and the add buffer are never changed.
+	 *
+	 * @param start
+	 *            position of beginning of string to delete
+	 *
+	 * @param length
+	 *            length of string to delete
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	public void delete(long start, long length)
+			throws IndexOutOfBoundsException {
+		if (start < 0 || length < 0 || start + length > this.size())
+			throw new IndexOutOfBoundsException(
+					(start < 0) ? "negative first argument to delete"
+							: "delete range extends past end of string");
+		PieceNode[] head = new PieceNode[2];
+		PieceNode.split(this.root, start, head);
+		PieceNode[] tail = new PieceNode[2];
+		PieceNode.split(head[1], length, tail);
+		this.root = PieceNode.join(head[0], tail[1]);
+	}
+}
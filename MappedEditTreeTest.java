@@ -0,0 +1,152 @@
+package editortrees;
+
+import static editortrees.TestUtil.randomText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.MappedEditTree}
+ */
+public class MappedEditTreeTest {
+
+	private static Path write(String s) throws IOException {
+		Path path = Files.createTempFile("mapped", ".txt");
+		Files.write(path, s.getBytes(StandardCharsets.ISO_8859_1));
+		return path;
+	}
+
+	@Test
+	public void testOpen() throws IOException {
+		String s = "first line\nsecond line\n\u00e9t\u00e9";
+		Path path = write(s);
+		try (MappedEditTree t = EditTree.open(path)) {
+			assertEquals(s, t.toString());
+			assertEquals(s.length(), t.size());
+			assertEquals(1, t.pieces());
+			assertEquals('s', t.get(11));
+			assertEquals("second", t.get(11, 6));
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testOpenEmptyFile() throws IOException {
+		Path path = write("");
+		try (MappedEditTree t = MappedEditTree.open(path)) {
+			assertEquals("", t.toString());
+			assertEquals(0, t.size());
+			t.add("abc", 0);
+			assertEquals("abc", t.toString());
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testTypingExtendsOnePiece() throws IOException {
+		Path path = write("hello world");
+		try (MappedEditTree t = MappedEditTree.open(path)) {
+			String typed = ", dear";
+			for (int i = 0; i < typed.length(); i++) {
+				t.add(typed.charAt(i), 5 + i);
+			}
+			assertEquals("hello, dear world", t.toString());
+			assertEquals(3, t.pieces());
+			t.add('!');
+			assertEquals("hello, dear world!", t.toString());
+			assertEquals(4, t.pieces());
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testRandomEdits() throws IOException {
+		Random random = new Random(101);
+		String s = randomText(random, 20000);
+		Path path = write(s);
+		try (MappedEditTree t = MappedEditTree.open(path)) {
+			StringBuilder expected = new StringBuilder(s);
+			for (int k = 0; k < 2000; k++) {
+				int choice = random.nextInt(3);
+				if (choice == 0 && expected.length() > 0) {
+					int pos = random.nextInt(expected.length());
+					assertEquals(expected.charAt(pos), t.delete(pos));
+					expected.deleteCharAt(pos);
+				} else if (choice == 1) {
+					int start = random.nextInt(expected.length() + 1);
+					int length = random.nextInt(Math.min(50,
+							expected.length() - start) + 1);
+					t.delete(start, length);
+					expected.delete(start, start + length);
+				} else {
+					String added = randomText(random, random.nextInt(10) + 1);
+					int pos = random.nextInt(expected.length() + 1);
+					t.add(added, pos);
+					expected.insert(pos, added);
+				}
+			}
+			assertEquals(expected.toString(), t.toString());
+			assertEquals(expected.length(), t.size());
+			assertTrue(t.height() <= 1.45 * Math.log(t.pieces() + 2)
+					/ Math.log(2));
+			int pos = random.nextInt(expected.length() - 100);
+			assertEquals(expected.substring(pos, pos + 100), t.get(pos, 100));
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testClose() throws IOException {
+		Path path = write("abc");
+		MappedEditTree t = MappedEditTree.open(path);
+		t.close();
+		t.close();
+		try {
+			t.get(0);
+			fail("Did not throw IllegalStateException");
+		} catch (IllegalStateException e) {
+			// success
+		}
+		Files.delete(path);
+	}
+
+	@Test
+	public void testOutOfBounds() throws IOException {
+		Path path = write("abc");
+		try (MappedEditTree t = MappedEditTree.open(path)) {
+			try {
+				t.add('x', 4);
+				fail("Did not throw IndexOutOfBoundsException");
+			} catch (IndexOutOfBoundsException e) {
+				// success
+			}
+			try {
+				t.delete(1, 3);
+				fail("Did not throw IndexOutOfBoundsException");
+			} catch (IndexOutOfBoundsException e) {
+				// success
+			}
+			try {
+				t.get(3);
+				fail("Did not throw IndexOutOfBoundsException");
+			} catch (IndexOutOfBoundsException e) {
+				// success
+			}
+			assertEquals("abc", t.toString());
+		} finally {
+			Files.delete(path);
+		}
+	}
+}
@@ -1,5 +1,8 @@
 package editortrees;
 
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+
 // A node in a height-balanced binary tree with rank.
 // Except for the NULL_NODE (if you choose to use one), one node cannot
 // belong to two different trees.
@@ -18,11 +21,15 @@ public class Node {
 	char element;
 	Node left, right, parent; // subtrees
 	int rank; // Number of nodes in left subtree
+	int size; // Number of nodes in this subtree
+	int newlines; // Number of '\n' elements in this subtree
+	int height; // Height of this subtree, -1 for the NULL_NODE
 	Code balance;
 
 	// Node constructor with no element
 	public Node() {
 		this.element = '\0';
+		this.height = -1;
 		this.left = EditTree.getNullNode();
 		this.right = EditTree.getNullNode();
 	}
@@ -30,732 +37,356 @@ public class Node {
 	// Node constructor with only an element
 	public Node(char element) {
 		this.element = element;
+		this.newlines = element == '\n' ? 1 : 0;
+		this.size = 1;
+		this.balance = Code.SAME;
 		this.left = EditTree.getNullNode();
 		this.right = EditTree.getNullNode();
 	}
 
-	// Returns the height of the tree
+	// Returns the height of the tree, which every node keeps up to date
 	public int height() {
-		if (this == EditTree.getNullNode() || this.element == '\0') {
-			return -1;
-		}
-		if (this.balance == Code.LEFT)
-			return 1 + this.left.height();
-		if (this.balance == Code.RIGHT)
-			return 1 + this.right.height();
-		return Math.max(1 + this.left.height(), 1 + this.right.height());
-
+		return this.height;
 	}
 
-	// Returns the number of nodes in the tree
+	// Returns the number of nodes in the tree, which every node keeps up to
+	// date
 	public int size() {
-		if (this == EditTree.getNullNode()) {
-			return 0;
-		}
-
-		int s = 0;
-		s += this.rank;
-		s += this.right.size() + 1;
-		return s;
+		return this.size;
 	}
 
-	// Inorder toString
+	// Inorder toString, built iteratively a block at a time
 	@Override
 	public String toString() {
-		if (this.element == '\0') {
-			if (this.left == null && this.right == null) {
-				return "";
-			}
-			return this.left.toString() + '\0' + this.right.toString();
-		}
-
-		return this.left.toString() + this.element + this.right.toString();
-	}
-
-	/**
-	 * Performs a single left rotation.
-	 * 
-	 * @param myParent
-	 * @param myChild
-	 * @return a node that could be the new root of the tree
-	 */
-	@SuppressWarnings("null")
-	public Node singleRotateLeft(Node myParent, Node myChild) {
-		EditTree.rotateCount++;
-		Node temp = myChild.left;
-		Node temp1 = myParent.parent;
-		boolean isRight = false;
-
-		if (temp1 != null && temp1.right == myParent) {
-			isRight = true; // Check to see if this node is a right child
-		}
-
-		myChild.parent = myParent.parent;
-		myChild.left = myParent; // Change pointers
-		myChild.rank += myParent.rank + 1; // update rank
-		myChild.balance = Code.SAME;
-		myParent.right = temp; // Update balance codes
-		if (myParent.right == EditTree.getNullNode()
-				&& myParent.right == EditTree.getNullNode())
-			myParent.balance = Code.SAME;
-		if (isRight) {
-			temp1.right = myChild;
-		} // Reassigns children of the original parent node
-		if (temp1 != null && !isRight) {
-			temp1.left = myChild;
-		}
-		myParent.parent = myChild;
-		Node temp2 = myChild;
-		return temp2;
+		StringBuilder sb = new StringBuilder();
+		char[] block = new char[256];
+		InOrder walk = new InOrder(this);
+		int count;
+		while ((count = walk.read(block, 0, block.length)) > 0) {
+			sb.append(block, 0, count);
+		}
+		return sb.toString();
 	}
 
-	/**
-	 * Performs a single right rotation.
-	 * 
-	 * @param myParent
-	 * @param myChild
-	 * @return a node that could be the new root of the tree
-	 */
-	@SuppressWarnings("null")
-	public Node singleRotateRight(Node myParent, Node myChild) {
-		EditTree.rotateCount++;
-
-		myParent.rank -= myChild.rank + 1; // Update rank
-		Node temp = myChild.right;
-		Node temp1 = myParent.parent;
-		boolean isRight = false;
-
-		if (temp1 != null && temp1.right == myParent) {
-			isRight = true;
-		}
-		myChild.parent = myParent.parent;
-		myChild.right = myParent; // Reassign pointers
-		myChild.balance = Code.SAME;
-		myParent.left = temp; // update balance codes
-		myParent.balance = Code.SAME;
-		if (isRight) {
-			temp1.right = myChild;
-		} // Reassigns children of the original parent node
-		if (temp1 != null && !isRight) {
-			temp1.left = myChild;
-		}
-		myParent.parent = myChild;
-		Node temp2 = myChild;
-		return temp2;
-
-	}
-
-	/**
-	 * Does a double left rotation.
-	 * 
-	 * @param myParent
-	 * @param current
-	 * @param myChild
-	 * @return a node that could be the new root of the tree
-	 */
-	@SuppressWarnings("null")
-	public Node doubleRotateLeft(Node myParent, Node current, Node myChild) {
-		EditTree.rotateCount += 2;
-		Node tempRight = myChild.right;
-		Node tempLeft = myChild.left;
-		Node tempParent = myParent.parent;
-		boolean isRight = false;
-
-		if (tempParent != null && tempParent.right == myParent) {
-			isRight = true;
-		}
-		myChild.left = myParent;
-		myChild.right = current;
-		myParent.right = tempLeft;
-
-		if (tempLeft != null) {
-			tempLeft.parent = myParent;
-		}
-		current.left = tempRight;
-		if (tempRight != null && tempRight != EditTree.getNullNode()) {
-			tempRight.parent = current;
-			current.rank = tempRight.rank + 1;
-		} else {
-			current.rank = 0;
-		}
-
-		current.parent = myChild;
-		myChild.parent = tempParent;
-		if (isRight) {
-			tempParent.right = myChild;
-		}
-
-		if (tempParent != null && !isRight) {
-			tempParent.left = myChild;
-		}
-
-		myChild.balance = Code.SAME;
-		current.balance = Code.SAME;
-		myChild.rank += myParent.rank + 1;
-		myParent.parent = myChild;
-
-		if (myParent.right != null && myParent.left != null) {
-			if (myParent.left.height() < myParent.right.height()) {
-				myParent.balance = Code.RIGHT;
-			} else if (myParent.left.height() > myParent.right.height()) {
-				myParent.balance = Code.LEFT;
-			} else if (myParent.left.height() == myParent.right.height()) {
-				myParent.balance = Code.SAME;
+	// Reads the elements of a subtree in order, a block at a time. An explicit
+	// stack of ancestors is kept instead of recursing, so deep trees cannot
+	// overflow the call stack and a read can resume where the last one ended.
+	static class InOrder {
+		private Node[] stack = new Node[64];
+		private int depth = 0;
+
+		InOrder(Node root) {
+			pushLeft(root);
+		}
+
+		// Positions this walk so that the next element read is the one at
+		// position pos of the subtree rooted at root
+		void seek(Node root, int pos) {
+			this.depth = 0;
+			Node node = root;
+			while (node != null && node != EditTree.getNullNode()) {
+				if (pos <= node.rank) {
+					push(node);
+					if (pos == node.rank) {
+						return;
+					}
+					node = node.left;
+				} else {
+					pos -= node.rank + 1;
+					node = node.right;
+				}
 			}
 		}
 
-		else if (myParent.right == null && myParent.left != null) {
-			myParent.balance = Code.LEFT;
-		} else if (myParent.right != null && myParent.left == null) {
-			myParent.balance = Code.RIGHT;
-		} else {
-			myParent.balance = Code.SAME;
-		}
-		return myChild;
-	}
-
-	/**
-	 * Does a double right rotation.
-	 * 
-	 * @param myParent
-	 * @param current
-	 * @param myChild
-	 * @return a node that could be the new root of the tree
-	 */
-	@SuppressWarnings("null")
-	public Node doubleRotateRight(Node myParent, Node current, Node myChild) {
-		EditTree.rotateCount += 2;
-		Node tempRight = myChild.right;
-		Node tempLeft = myChild.left;
-		Node tempParent = myParent.parent;
-		boolean isRight = false;
-
-		if (tempParent != null && tempParent.right == myParent) {
-			isRight = true;
-		}
-		myChild.right = myParent;
-		myChild.left = current;
-		myParent.left = tempRight;
-
-		myParent.rank = tempRight.size();
-
-		if (tempRight != null && tempRight != EditTree.getNullNode()) {
-			tempRight.parent = myParent;
-		} else {
-			myParent.rank = 0;
+		private void push(Node node) {
+			if (this.depth == this.stack.length) {
+				this.stack = Arrays.copyOf(this.stack, 2 * this.depth);
+			}
+			this.stack[this.depth++] = node;
 		}
-		current.right = tempLeft;
 
-		if (tempLeft != null) {
-			tempLeft.parent = current;
-		} else {
-			myParent.rank = 0;
+		// Pushes node and its chain of left descendants
+		private void pushLeft(Node node) {
+			while (node != null && node != EditTree.getNullNode()) {
+				push(node);
+				node = node.left;
+			}
 		}
-		current.parent = myChild;
-		myChild.parent = tempParent;
 
-		if (isRight) {
-			tempParent.right = myChild;
-		}
-		if (tempParent != null && !isRight) {
-			tempParent.left = myChild;
+		// Returns the next element; the walk must not be exhausted
+		char next() {
+			Node node = this.stack[--this.depth];
+			pushLeft(node.right);
+			return node.element;
 		}
 
-		myChild.balance = Code.SAME;
-		current.balance = Code.SAME;
-		myChild.rank += current.rank + 1;
-		myParent.parent = myChild;
-
-		if (myParent.right != null && myParent.left != null) {
-			if (myParent.left.height() < myParent.right.height()) {
-				myParent.balance = Code.RIGHT;
-			} else if (myParent.left.height() > myParent.right.height()) {
-				myParent.balance = Code.LEFT;
-			} else if (myParent.left.height() == myParent.right.height()) {
-				myParent.balance = Code.SAME;
+		// Copies up to length elements into dst starting at dstOff, and
+		// returns how many were copied; 0 once the subtree is exhausted
+		int read(char[] dst, int dstOff, int length) {
+			int count = 0;
+			while (count < length && this.depth > 0) {
+				Node node = this.stack[--this.depth];
+				dst[dstOff + count++] = node.element;
+				pushLeft(node.right);
 			}
+			return count;
 		}
-
-		else if (myParent.right == null && myParent.left != null) {
-			myParent.balance = Code.LEFT;
-		} else if (myParent.right != null && myParent.left == null) {
-			myParent.balance = Code.RIGHT;
-		} else {
-			myParent.balance = Code.SAME;
-		}
-		return myChild;
 	}
 
-	// Adds a node with element c
-	public void add(char c) {
-		// add the node all the way to the right side
-		if (this.right != EditTree.getNullNode()) {
-			this.right.add(c);
-		} else {
-			this.right = new Node(c);
-			this.right.parent = this;
-			this.right.rank = 0;
-			this.right.setBalanceInsert();
-		}
-
+	// Adds a node with element c at the end of this tree, walking down the
+	// right spine
+	public void add(char c, EditTreeMetrics metrics) {
+		Node node = this;
+		metrics.visited(1);
+		while (node.right != EditTree.getNullNode()) {
+			node = node.right;
+			metrics.visited(1);
+		}
+		node.right = new Node(c);
+		metrics.allocated(1);
+		node.right.parent = node;
+		retrace(node, metrics);
 	}
 
-	// Gets the node at a certain position
-	public char get(int pos) {
-		if (this.rank == pos) {
-			return this.element;
-		} else if (pos < this.rank) {
-			return this.left.get(pos);
-		} else {
-			return this.right.get(pos - this.rank - 1);
-		}
+	// Gets the element at a certain position
+	public char get(int pos, EditTreeMetrics metrics) {
+		return this.getNode(pos, metrics).element;
 	}
 
-	// Gets the max node in a subtree
+	// Gets the position of the max node in a subtree
 	public int getMax() {
-		if (this.equals(EditTree.getNullNode())) {
+		if (this == EditTree.getNullNode()) {
 			return -1;
-		} else if (this.right.equals(EditTree.getNullNode())) {
-			return this.rank;
-		} else {
-			return this.right.getMax();
 		}
+		return getRight(this).rank;
 	}
 
-	// Adds a node with element c at position pos
-	public void add(char c, int pos) {
-		if (pos < this.rank) {
-			if (this.left.equals(EditTree.getNullNode())) {
-				this.left = new Node(c);
-				this.left.parent = this;
-				this.rank++;
-				this.left.setBalanceInsert();
-			} else {
-				this.rank++;
-				this.left.add(c, pos);
-			}
-		} else if (pos > this.rank) {
-
-			if (this.right.equals(EditTree.getNullNode())) {
-				this.right = new Node(c);
-				this.right.parent = this;
-				this.right.rank = 0;
-				this.right.setBalanceInsert();
-			} else {
-				int newPos = (pos - (this.rank + 1));
-				this.right.add(c, newPos);
-			}
-		} else if (pos == this.rank) {
-			if (pos == 0) {
-				this.left = new Node(c);
-				this.left.parent = this;
-				this.rank++;
-				this.left.setBalanceInsert();
+	// Adds a node with element c at position pos. The new node becomes a leaf
+	// on the path down to pos: positions up to a node's rank go left, the
+	// rest go right.
+	public void add(char c, int pos, EditTreeMetrics metrics) {
+		Node node = this;
+		Node created = new Node(c);
+		metrics.allocated(1);
+		while (true) {
+			metrics.visited(1);
+			if (pos <= node.rank) {
+				if (node.left == EditTree.getNullNode()) {
+					node.left = created;
+					break;
+				}
+				node = node.left;
 			} else {
-				this.rank++;
-				this.left.add(c);
+				pos -= node.rank + 1;
+				if (node.right == EditTree.getNullNode()) {
+					node.right = created;
+					break;
+				}
+				node = node.right;
 			}
 		}
+		created.parent = node;
+		retrace(node, metrics);
 	}
 
-	// Sets the balance codes after an insert
-	public void setBalanceInsert() {
-		if (this.right == EditTree.getNullNode()
-				&& this.left == EditTree.getNullNode()) {
-			this.balance = Code.SAME;
-		}
-		if (this.parent != EditTree.getNullNode() && this.parent != null) {
+	// Deletes the node at position pos and returns its element
+	public char delete(int pos, EditTreeMetrics metrics) {
+		Node node = this.getNode(pos, metrics);
+		char element = node.element;
+		node.remove(metrics);
+		return element;
+	}
 
-			if (this.parent.left == this) {
-				if (this.parent.balance == Code.RIGHT) {
-					this.parent.balance = Code.SAME;
-				} else if (this.parent.balance == Code.SAME) {
-					this.parent.balance = Code.LEFT;
-					this.parent.setBalanceInsert();
-				} else if (this.parent.balance == Code.LEFT) {
-					if (this.balance == Code.RIGHT) {
-						doubleRotateRight(this.parent, this, this.right);
-					} else if (this.balance == Code.LEFT) {
-						singleRotateRight(this.parent, this);
-					}
-				}
-			} else if (this.parent.right == this) {
-				if (this.parent.balance == Code.LEFT) {
-					this.parent.balance = Code.SAME;
-				} else if (this.parent.balance == Code.SAME) {
-					this.parent.balance = Code.RIGHT;
-					this.parent.setBalanceInsert();
-				} else if (this.parent.balance == Code.RIGHT) {
-					if (this.balance == Code.LEFT) {
-						doubleRotateLeft(this.parent, this, this.left);
-					} else if (this.balance == Code.RIGHT) {
-						singleRotateLeft(this.parent, this);
-					}
-				}
-			}
+	// Removes this node's element from the tree. A node with a right child
+	// takes over its successor's element and a node with only a left child
+	// takes over that child's element, so the node that is unlinked has at
+	// most one child. The only node of a tree is left in place for the caller
+	// to drop.
+	void remove(EditTreeMetrics metrics) {
+		Node victim = this;
+		if (this.right != EditTree.getNullNode()) {
+			victim = getLeft(this.right);
+		} else if (this.left != EditTree.getNullNode()) {
+			victim = this.left;
+		}
+		this.element = victim.element;
+		Node parent = victim.parent;
+		if (parent == null) {
+			this.element = EditTree.getNullNode().element;
+			return;
+		}
+		Node child = victim.left != EditTree.getNullNode() ? victim.left
+				: victim.right;
+		if (parent.left == victim) {
+			parent.left = child;
+		} else {
+			parent.right = child;
 		}
+		if (child != EditTree.getNullNode()) {
+			child.parent = parent;
+		}
+		victim.parent = null;
+		retrace(parent, metrics);
 	}
 
-	// Delets a node at position pos
-	public char delete(int pos) {
-		// first finds the node, then removes it
-		if (this.rank == pos) { // this is the root
-			char temp = this.element;
-			this.remove();
-			return temp;
-		} else if (this.rank != 0 && this.left.rank == pos) { // Left child is
-																// the one we
-																// delet
-			char temp = this.left.element;
-			this.left.remove();
-
-			// Step up tree from this node
-
-			return temp;
-		} else if (this.right != null && this.right.rank == pos - this.rank - 1) {
-			char temp = this.right.element;
-			this.right.remove();
-
-			// Step up tree from this node
-
-			return temp;
-		} else if (pos < this.rank)
-			return this.left.delete(pos);
-		else
-			return this.right.delete(pos - this.rank - 1);
+	/**
+	 * Walks from node up to the root along the parent pointers, updating
+	 * every node on the way and rotating wherever a subtree has become
+	 * unbalanced. Every node whose subtree changed must be on that path and
+	 * every subtree hanging off it must already be up to date.
+	 * 
+	 * @param node
+	 *            lowest node whose children changed
+	 * @param metrics
+	 * @return the root of the tree
+	 */
+	static Node retrace(Node node, EditTreeMetrics metrics) {
+		Node root = node;
+		while (node != null) {
+			metrics.rebalanced(1);
+			root = rebalance(node, metrics);
+			node = root.parent;
+		}
+		return root;
 	}
 
-	// Removes a node from the tree
-	private void remove() {
-		// if the node being removed has 2 children, returns the left most node
-		// on the right side aka the successor
-		if (this.right != EditTree.getNullNode()
-				&& this.left != EditTree.getNullNode()) {
-
-			Node temp = getLeft(this.right);
-
-			this.adjustRank();
-
-			this.element = temp.element;
-			temp.setBalanceDelete();
+	// Points the parent pointers of this node's children back at it
+	void adoptChildren() {
+		if (this.left != EditTree.getNullNode()) {
+			this.left.parent = this;
 		}
-		// node has only left child
-		else if (this.right == EditTree.getNullNode()
-				&& this.left != EditTree.getNullNode()) {
-
-			Node temp = this.left;
-
-			this.left = temp.left;
-			this.right = temp.right;
-			this.element = temp.element;
-			this.rank = temp.rank;
-			this.adjustRank();
-
+		if (this.right != EditTree.getNullNode()) {
+			this.right.parent = this;
 		}
-		// node has only right child
-		else if (this.right != EditTree.getNullNode()
-				&& this.left == EditTree.getNullNode()) {
-
-			Node temp = this.right;
-
-			this.left = temp.left;
-			this.right = temp.right;
-			this.element = temp.element;
-			this.rank = temp.rank;
-			this.adjustRank();
-
-		} else if (this.parent == null) {
+	}
 
-			this.element = EditTree.getNullNode().element;
+	// Returns the next node in order, or null if this is the last one
+	Node successor() {
+		if (this.right != EditTree.getNullNode()) {
+			return getLeft(this.right);
 		}
-		// node is a leaf, simply cut the link to its parent
-		else {
-			if (this.parent.left == this) {
-				this.adjustRank();
-				this.parent.left = EditTree.getNullNode();
-				// this.setBalanceDelete();
-				if (this.parent.right == EditTree.getNullNode()) {
-					this.parent.balance = Code.SAME;
-				} else if (this.parent.balance == Code.RIGHT
-						&& this.parent.right.balance == Code.RIGHT) {
-					singleRotateLeft(this.parent, this.parent.right);
-				} else if (this.parent.balance == Code.RIGHT
-						&& this.parent.right.balance == Code.LEFT) {
-					doubleRotateLeft(this.parent, this.parent.right,
-							this.parent.right.left);
-				} else if (this.parent.balance == Code.SAME) {
-					this.parent.balance = Code.RIGHT;
-				}
-				// Go back up till we hit the root
-				Node temp = this;
-
-				while (temp.parent != null
-						&& temp.parent != EditTree.getNullNode()
-						&& temp.parent.balance == Code.SAME) {
-					temp = temp.parent;
-				}
-				if (temp.parent != null) {
-					// checks if the parent needs a rotation before moving up
-
-					temp.parent.setBalanceDeleted();
-				}
-			}
-
-			else if (this.parent.right == this) {
-				this.adjustRank();
-				this.parent.right = EditTree.getNullNode();
-
-				if (this.parent.left == EditTree.getNullNode()) {
-					this.parent.balance = Code.SAME;
-				}
-
-				else if (this.parent.balance == Code.LEFT
-						&& this.parent.left.balance == Code.LEFT) {
-					singleRotateRight(this.parent, this.parent.left);
-				} else if (this.parent.balance == Code.LEFT
-						&& this.parent.left.balance == Code.RIGHT) {
-					doubleRotateRight(this.parent, this.parent.left,
-							this.parent.left.right);
-				}
-
-				else if (this.parent.balance == Code.SAME) {
-					this.parent.balance = Code.LEFT;
-				}
-
-				// Go back up till we hit the root
-				Node temp = this;
-				while (temp.parent != null
-						&& temp.parent != EditTree.getNullNode()
-						&& temp.parent.balance == Code.SAME) {
-					temp = temp.parent;
-				}
-				if (temp.parent != null) {
-
-					if (temp.parent.balance == Code.RIGHT
-							&& temp.parent.right.balance == Code.LEFT) {
-						doubleRotateLeft(temp.parent, temp.parent.right,
-								temp.parent.right.left);
-					}
-					// checks if the parent needs a rotation before moving up
-
-					temp.parent.setBalanceDeleted();
-				}
-			}
-
+		Node node = this;
+		while (node.parent != null && node.parent.right == node) {
+			node = node.parent;
 		}
-
+		return node.parent;
 	}
 
-	// Sets the balance codes after a delete
-	private void setBalanceDelete() {
-		if (this.parent != null) {
-			// node is a right child
-			if (this.parent.right == this) {
-				if (this.right == EditTree.getNullNode()) {
-					this.parent.right = EditTree.getNullNode();
-				} else {
-					this.parent.right = this.right;
-					this.right.parent = this.parent;
-				}
-
-				if (this.parent.balance == Code.SAME) {
-					this.parent.balance = Code.LEFT;
-					this.parent.setBalance();
-				} else if (this.parent.balance == Code.RIGHT) {
-					this.parent.balance = Code.SAME;
-					this.parent.setBalance();
-				} else { // leaning LEFT
-					if (this.parent.balance == Code.LEFT
-							&& this.parent.left.balance == Code.RIGHT) {
-						doubleRotateRight(this.parent, this.parent.left,
-								this.parent.left.right);
-					} else {
-						singleRotateRight(this.parent, this.parent.left);
-					}
-					// this.parent.setBalance();
-
-				}
-			} else {// node is a left child
-
-				if (this.parent.left == this) {
-					if (this.left == EditTree.getNullNode()) {
-						this.parent.left = EditTree.getNullNode();
-					}
-					// } else {
-					// this.parent.left = this.left;
-					// this.left.parent = this.parent;
-					// }
-
-					if (this.parent.balance == Code.SAME) {
-						this.parent.balance = Code.RIGHT;
-						this.parent.setBalance();
-					} else if (this.parent.balance == Code.LEFT) {
-						this.parent.balance = Code.SAME;
-
-						// this.parent.setBalance();
-
-						this.setBalance();
-					} else { // leaning RIGHT
-						if (this.parent.balance == Code.RIGHT
-								&& this.parent.right.balance == Code.LEFT) {
-							doubleRotateLeft(this.parent, this.parent.right,
-									this.parent.right.left);
-						} else {
-							singleRotateLeft(this.parent, this.parent.right);
-						}
-						// this.parent.setBalance();
-					}
-
-				}
-			}
-		} else {
-			if (this.balance == Code.LEFT && this.left.balance == Code.LEFT) {
-				singleRotateRight(this, this.left);
-			} else if (this.balance == Code.LEFT
-					&& this.left.balance == Code.RIGHT) {
-				doubleRotateRight(this, this.left, this.left.right);
-			} else if (this.balance == Code.RIGHT
-					&& this.right.balance == Code.RIGHT) {
-				singleRotateLeft(this, this.right);
-			} else if (this.balance == Code.RIGHT
-					&& this.right.balance == Code.LEFT) {
-				doubleRotateLeft(this, this.right, this.right.left);
-			}
+	// Returns the previous node in order, or null if this is the first one
+	Node predecessor() {
+		if (this.left != EditTree.getNullNode()) {
+			return getRight(this.left);
 		}
+		Node node = this;
+		while (node.parent != null && node.parent.left == node) {
+			node = node.parent;
+		}
+		return node.parent;
 	}
 
-	// Sets the balance after a node is deleted
-	private void setBalanceDeleted() {
-		if (this.parent != null) {
-			// node is a right child
-			if (this.parent.right == this) {
-				if (this.right == EditTree.getNullNode()) {
-					// this.parent.right = EditTree.getNullNode();
-					// } else {
-					// this.parent.right = this.right;
-					// this.right.parent = this.parent;
-				}
-
-				if (this.parent.balance == Code.SAME) {
-					this.parent.balance = Code.LEFT;
-					this.parent.setBalance();
-				} else if (this.parent.balance == Code.RIGHT) {
-					// this.parent.balance = Code.SAME;
-					this.parent.setBalance();
-				} else { // leaning LEFT
-					if (this.parent.balance == Code.LEFT
-							&& this.parent.left.balance == Code.RIGHT) {
-						doubleRotateRight(this.parent, this.parent.left,
-								this.parent.left.right);
-					} else {
-						singleRotateRight(this.parent, this.parent.left);
-					}
-					// this.parent.setBalance();
-
-				}
-			} else {// node is a left child
-
-				if (this.parent.left == this) {
-					if (this.left == EditTree.getNullNode()) {
-						// this.parent.left = EditTree.getNullNode();
-					}
-					// } else {
-					// this.parent.left = this.left;
-					// this.left.parent = this.parent;
-					// }
-
-					if (this.parent.balance == Code.SAME) {
-						this.parent.balance = Code.RIGHT;
-						this.parent.setBalance();
-					} else if (this.parent.balance == Code.LEFT) {
-						// this.parent.balance = Code.SAME;
-
-						// this.parent.setBalance();
-
-						this.setBalance();
-					} else { // leaning RIGHT
-						if (this.parent.balance == Code.RIGHT
-								&& this.parent.right.balance == Code.LEFT) {
-							doubleRotateLeft(this.parent, this.parent.right,
-									this.parent.right.left);
-						} else {
-							singleRotateLeft(this.parent, this.parent.right);
-						}
-						// this.parent.setBalance();
-					}
-
-				}
-			}
+	// Adds a node with element c just before this one in order. Ranks are
+	// fixed by retracing up the parent pointers instead of descending from
+	// the root. Returns the new node.
+	Node addBefore(char c, EditTreeMetrics metrics) {
+		Node created = new Node(c);
+		metrics.allocated(1);
+		if (this.left == EditTree.getNullNode()) {
+			this.left = created;
+			created.parent = this;
 		} else {
-			if (this.balance == Code.LEFT && this.left.balance == Code.LEFT) {
-				singleRotateRight(this, this.left);
-			} else if (this.balance == Code.LEFT
-					&& this.left.balance == Code.RIGHT) {
-				doubleRotateRight(this, this.left, this.left.right);
-			} else if (this.balance == Code.RIGHT
-					&& this.right.balance == Code.RIGHT) {
-				singleRotateLeft(this, this.right);
-			} else if (this.balance == Code.RIGHT
-					&& this.right.balance == Code.LEFT) {
-				doubleRotateLeft(this, this.right, this.right.left);
-			}
+			Node before = getRight(this.left);
+			before.right = created;
+			created.parent = before;
 		}
+		retrace(created.parent, metrics);
+		return created;
 	}
 
-	// Sets the balance codes for a tree
-	private void setBalance() {
-		if (this.right == EditTree.getNullNode()
-				&& this.left == EditTree.getNullNode()) {
-			this.balance = Code.SAME;
+	// Adds a node with element c just after this one in order, like
+	// addBefore. Returns the new node.
+	Node addAfter(char c, EditTreeMetrics metrics) {
+		Node created = new Node(c);
+		metrics.allocated(1);
+		if (this.right == EditTree.getNullNode()) {
+			this.right = created;
+			created.parent = this;
+		} else {
+			Node after = getLeft(this.right);
+			after.left = created;
+			created.parent = after;
 		}
-		if (this.parent != EditTree.getNullNode() && this.parent != null) {
-
-			if (this.parent.left == this) {
-				if (this.balance == Code.SAME) {
-					if (this.parent.balance == Code.LEFT) {
-						this.parent.balance = Code.SAME;
-					} else if (this.parent.balance == Code.SAME) {
-						this.parent.balance = Code.RIGHT;
-					}
-					this.parent.setBalance();
-				} else if (this.balance == Code.LEFT) {
-					if (this.left.balance == Code.LEFT) {
-						singleRotateRight(this, this.left);
-					} else if (this.left.balance == Code.RIGHT) {
-						// double
-					}
-					this.parent.setBalance();
-
-				}
+		retrace(created.parent, metrics);
+		return created;
+	}
 
-			} else if (this.parent.right == this) {
-				if (this.balance == Code.SAME) {
-					if (this.parent.balance == Code.RIGHT) {
-						this.parent.balance = Code.SAME;
-					} else if (this.parent.balance == Code.SAME) {
-						this.parent.balance = Code.LEFT;
-					}
+	// Recomputes what this node keeps about its subtree, namely its rank,
+	// size, height, balance code and number of newlines, from its children.
+	// The NULL_NODE never changes.
+	void update() {
+		if (this == EditTree.getNullNode()) {
+			return;
+		}
+		int leftHeight = this.left.height;
+		int rightHeight = this.right.height;
+		this.rank = this.left.size;
+		this.size = this.left.size + this.right.size + 1;
+		this.height = Math.max(leftHeight, rightHeight) + 1;
+		this.balance = leftHeight > rightHeight ? Code.LEFT
+				: leftHeight < rightHeight ? Code.RIGHT : Code.SAME;
+		this.newlines = this.left.newlines + this.right.newlines
+				+ (this.element == '\n' ? 1 : 0);
+	}
 
+	// Returns the position in this subtree of the newline with the given
+	// index, which must be less than this.newlines
+	int newlinePosition(int index) {
+		Node node = this;
+		int offset = 0;
+		while (true) {
+			if (index < node.left.newlines) {
+				node = node.left;
+				continue;
+			}
+			index -= node.left.newlines;
+			if (node.element == '\n') {
+				if (index == 0) {
+					return offset + node.rank;
 				}
-				this.parent.setBalance();
+				index--;
 			}
+			offset += node.rank + 1;
+			node = node.right;
 		}
 	}
 
-	// Adjusts the rank after a delete
-	private void adjustRank() {
-		if (this.parent != null) {
-			if (this.parent.left == this) {
-				this.parent.rank--;
+	// Returns the number of newlines in this subtree before position pos
+	int newlinesBefore(int pos) {
+		int count = 0;
+		Node node = this;
+		while (node != EditTree.getNullNode()) {
+			if (pos <= node.rank) {
+				node = node.left;
+			} else {
+				count += node.left.newlines + (node.element == '\n' ? 1 : 0);
+				pos -= node.rank + 1;
+				node = node.right;
 			}
-			this.parent.adjustRank();
 		}
+		return count;
+	}
+
+	// Gets the right of a node
+	private Node getRight(Node node) {
+		while (node.right != EditTree.getNullNode()) {
+			node = node.right;
+		}
+		return node;
 	}
 
 	// Gets the left of a node
 	private Node getLeft(Node node) {
-		if (node.left != EditTree.getNullNode()) {
-			return getLeft(node.left);
+		while (node.left != EditTree.getNullNode()) {
+			node = node.left;
 		}
 		return node;
 	}
@@ -764,6 +395,9 @@ public class Node {
 	public void create(Node toMimic) {
 		this.element = toMimic.element;
 		this.rank = toMimic.rank;
+		this.newlines = toMimic.newlines;
+		this.height = toMimic.height;
+		this.size = toMimic.size;
 		this.balance = toMimic.balance;
 
 		if (toMimic.right != null
@@ -782,100 +416,289 @@ public class Node {
 
 	// Gets a substring starting at pos of length length
 	public String get(int pos, int length) {
-		String s = "";
-		for (int x = 0; x < length; x++) {
-			s += this.get(pos + x);
+		char[] chars = new char[length];
+		this.copy(pos, pos + length, chars, 0);
+		return new String(chars);
+	}
+
+	// Copies the elements in positions [from, to) of this subtree into dst,
+	// starting at dstOff. Only the path down to from and the nodes in the
+	// range are visited, and the right spine is walked without recursion.
+	public void copy(int from, int to, char[] dst, int dstOff) {
+		Node node = this;
+		while (node != EditTree.getNullNode() && from < to) {
+			if (from < node.rank) {
+				node.left.copy(from, Math.min(to, node.rank), dst, dstOff);
+			}
+			if (from <= node.rank && node.rank < to) {
+				dst[dstOff + node.rank - from] = node.element;
+			}
+			int end = node.rank + 1;
+			if (to <= end) {
+				return;
+			}
+			int next = Math.max(from, end);
+			dstOff += next - from;
+			from = next - end;
+			to -= end;
+			node = node.right;
 		}
-		return s;
 	}
 
-	// Finds a string inside the tree
-	public int find(String s) {
-		String tree = this.toString();
-		if (tree.contains(s)) {
+	// Gets a node at position pos
+	public Node getNode(int pos, EditTreeMetrics metrics) {
+		Node node = this;
+		while (true) {
+			metrics.visited(1);
+			if (pos == node.rank) {
+				return node;
+			} else if (pos < node.rank) {
+				node = node.left;
+			} else {
+				pos -= node.rank + 1;
+				node = node.right;
+			}
+		}
+	}
 
-			for (int x = 0; x < tree.length(); x++) {
-				if (tree.charAt(x) == s.charAt(0)) {
-					return x;
+	// Builds a perfectly balanced subtree out of s[from, to) in O(to - from)
+	// time, without copying s. Returns the NULL_NODE if the range is empty.
+	static Node build(CharSequence s, int from, int to) {
+		if (from >= to) {
+			return EditTree.getNullNode();
+		}
+		int mid = (from + to) >>> 1;
+		Node node = new Node(s.charAt(mid));
+		return node.link(build(s, from, mid), build(s, mid + 1, to));
+	}
+
+	// Makes left and right, which differ in height by at most one, this
+	// node's subtrees, and returns this node
+	Node link(Node left, Node right) {
+		this.left = left;
+		this.right = right;
+		this.adoptChildren();
+		this.update();
+		return this;
+	}
+
+	// Builds the same tree as build(s, from, to), with the two halves of
+	// every range longer than SEQUENTIAL_CUTOFF built in parallel. s is read
+	// from several threads at once.
+	static class BuildTask extends RecursiveTask<Node> {
+		static final int SEQUENTIAL_CUTOFF = 1 << 15;
+		private static final long serialVersionUID = 1L;
+
+		private final CharSequence s;
+		private final int from, to;
+
+		BuildTask(CharSequence s, int from, int to) {
+			this.s = s;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Node compute() {
+			if (this.to - this.from <= SEQUENTIAL_CUTOFF) {
+				return build(this.s, this.from, this.to);
+			}
+			int mid = (this.from + this.to) >>> 1;
+			BuildTask leftTask = new BuildTask(this.s, this.from, mid);
+			leftTask.fork();
+			Node right = new BuildTask(this.s, mid + 1, this.to).compute();
+			return new Node(this.s.charAt(mid)).link(leftTask.join(), right);
+		}
+	}
+
+	// Builds a balanced tree out of characters appended one at a time, in
+	// O(N) time without knowing N in advance. Like a binary counter, level i
+	// of the spine holds a node whose left subtree is a perfect tree of
+	// height i - 1 and whose right subtree is still to come: each new node
+	// completes the pending nodes on the levels below the first free one and
+	// waits there. The pending nodes are joined together at the end.
+	static class Builder {
+		private final Node[] spine = new Node[32];
+
+		void append(char c) {
+			Node carry = EditTree.getNullNode();
+			int level = 0;
+			while (this.spine[level] != null) {
+				Node pending = this.spine[level];
+				this.spine[level++] = null;
+				pending.right = carry;
+				pending.adoptChildren();
+				pending.update();
+				carry = pending;
+			}
+			Node node = new Node(c);
+			node.left = carry;
+			this.spine[level] = node;
+		}
+
+		void append(char[] chars, int from, int to) {
+			for (int i = from; i < to; i++) {
+				this.append(chars[i]);
+			}
+		}
+
+		// Returns the root of the tree of everything appended so far, and
+		// empties this builder
+		Node build(EditTreeMetrics metrics) {
+			Node root = EditTree.getNullNode();
+			for (int level = 0; level < this.spine.length; level++) {
+				Node pending = this.spine[level];
+				if (pending != null) {
+					this.spine[level] = null;
+					root = join(pending.left, pending, root, metrics);
 				}
 			}
+			return root;
 		}
-		return -1;
 	}
 
-	// Gets a node at position pos
-	public Node getNode(int pos) {
-		if (this.rank == pos) {
-			return this;
-		} else if (pos < this.rank) {
-			return this.left.getNode(pos);
+	/**
+	 * Joins two balanced trees around a pivot node, in time proportional to
+	 * the difference of their heights: the spine of the taller tree is
+	 * followed down to the height of the shorter one, the pivot is linked in
+	 * there and the spine is rebalanced on the way back up.
+	 * 
+	 * @param left
+	 *            tree of the elements before the pivot
+	 * @param pivot
+	 *            node whose links are all overwritten
+	 * @param right
+	 *            tree of the elements after the pivot
+	 * @param metrics
+	 * @return the root of the joined tree, whose parent is null
+	 */
+	static Node join(Node left, Node pivot, Node right,
+			EditTreeMetrics metrics) {
+		metrics.visited(1);
+		Node root;
+		if (left.height > right.height + 1) {
+			// the pivot goes down the right spine of left
+			left.right = join(left.right, pivot, right, metrics);
+			left.right.parent = left;
+			root = rebalance(left, metrics);
+		} else if (right.height > left.height + 1) {
+			// the pivot goes down the left spine of right
+			right.left = join(left, pivot, right.left, metrics);
+			right.left.parent = right;
+			root = rebalance(right, metrics);
 		} else {
-			return this.right.getNode(pos - this.rank - 1);
+			pivot.left = left;
+			pivot.right = right;
+			pivot.adoptChildren();
+			root = rebalance(pivot, metrics);
 		}
+		root.parent = null;
+		return root;
 	}
 
-	// Finds the string in a subtree
-	public int find(String s, String subTree) {
-		String tree = this.toString();
-		if (subTree.contains(s)) {
-
-			for (int x = 0; x < tree.length(); x++) {
-				if (tree.charAt(x) == s.charAt(0)) {
-					return x;
-				}
+	// Restores the AVL property at node, whose subtrees are balanced and
+	// differ in height by at most two, with at most two rotations. Fixes the
+	// balance codes and summaries of the nodes involved and returns the new
+	// root of the subtree; the caller links it into node's old parent.
+	private static Node rebalance(Node node, EditTreeMetrics metrics) {
+		int diff = node.right.height - node.left.height;
+		if (diff > 1) {
+			if (node.right.left.height > node.right.right.height) {
+				rotateRight(node.right, metrics);
 			}
+			node = rotateLeft(node, metrics);
+		} else if (diff < -1) {
+			if (node.left.right.height > node.left.left.height) {
+				rotateLeft(node.left, metrics);
+			}
+			node = rotateRight(node, metrics);
+		} else {
+			node.update();
 		}
-		return -1;
+		return node;
 	}
 
-	// Creates a tree from a string
-	public Node createTree(String s) {
-		if (!s.equals("")) {
-			int rootNum = s.length() / 2;
-			Node root = new Node(s.charAt(rootNum));
-			if (s.substring(0, rootNum).length() > s.substring(rootNum + 1)
-					.length()) {
-				root.balance = Code.LEFT;
-			} else if (s.substring(0, rootNum).length() < s.substring(
-					rootNum + 1).length()) {
-				root.balance = Code.RIGHT;
+	// Rotates node's right child up into its place, fixing ranks, parent
+	// pointers, balance codes and summaries. Links the child into node's
+	// parent and returns it.
+	private static Node rotateLeft(Node node, EditTreeMetrics metrics) {
+		metrics.rotated(1);
+		Node child = node.right;
+		Node parent = node.parent;
+		node.right = child.left;
+		if (node.right != EditTree.getNullNode()) {
+			node.right.parent = node;
+		}
+		child.left = node;
+		node.parent = child;
+		child.parent = parent;
+		if (parent != null) {
+			if (parent.left == node) {
+				parent.left = child;
 			} else {
-				root.balance = Code.SAME;
+				parent.right = child;
 			}
-			root.rank = s.substring(0, rootNum).length();
-			root.left = createTree(s.substring(0, rootNum));
-			root.right = createTree(s.substring(rootNum + 1));
-			return root;
 		}
-		return EditTree.getNullNode();
+		node.update();
+		child.update();
+		return child;
 	}
 
-	// Balances the tree after a concatenation
-	public void concatenateBalance() {
-		if (this != EditTree.getNullNode() && this.balance != Code.SAME) {
-			if (this.balance == Code.LEFT) {
-				if (this.left.balance == Code.SAME
-						|| this.left.balance == Code.LEFT) {
-					singleRotateRight(this, this.left);
-				} else {
-					doubleRotateRight(this, this.left, this.left.right);
-				}
-			} else if (this.balance == Code.RIGHT) {
-				if (this.right.balance == Code.SAME
-						|| this.right.balance == Code.RIGHT) {
-					singleRotateLeft(this, this.right);
-				} else {
-					doubleRotateLeft(this, this.right, this.right.left);
-				}
-			}
-			// do root trick
-			Node root = this;
-			while (root.parent != null) {
-				root = root.parent;
+	// The mirror image of rotateLeft
+	private static Node rotateRight(Node node, EditTreeMetrics metrics) {
+		metrics.rotated(1);
+		Node child = node.left;
+		Node parent = node.parent;
+		node.left = child.right;
+		if (node.left != EditTree.getNullNode()) {
+			node.left.parent = node;
+		}
+		child.right = node;
+		node.parent = child;
+		child.parent = parent;
+		if (parent != null) {
+			if (parent.left == node) {
+				parent.left = child;
+			} else {
+				parent.right = child;
 			}
+		}
+		node.update();
+		child.update();
+		return child;
+	}
 
-			root.left.concatenateBalance();
-			root.right.concatenateBalance();
+	/**
+	 * Splits a tree so that its first pos nodes end up in one tree and the
+	 * rest in another, by cutting the path down to pos and joining the pieces
+	 * back together on the way up. The joins along the way cost O(height)
+	 * altogether.
+	 * 
+	 * @param node
+	 *            root of the tree, which is taken apart
+	 * @param pos
+	 *            number of nodes that go in the first tree
+	 * @param metrics
+	 * @return {first tree, second tree}, either of which may be the NULL_NODE
+	 */
+	static Node[] split(Node node, int pos, EditTreeMetrics metrics) {
+		if (node == EditTree.getNullNode()) {
+			return new Node[] { node, node };
+		}
+		metrics.visited(1);
+		Node left = node.left;
+		Node right = node.right;
+		int rank = node.rank;
+		left.parent = null;
+		right.parent = null;
+		Node[] parts;
+		if (pos <= rank) {
+			parts = split(left, pos, metrics);
+			parts[1] = join(parts[1], node, right, metrics);
+		} else {
+			parts = split(right, pos - rank - 1, metrics);
+			parts[0] = join(left, node, parts[0], metrics);
 		}
+		return parts;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,225 @@
+package editortrees;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// Fixed-size tree node records kept outside the Java heap, in pages of
+// direct ByteBuffers. A node is an int index; index 0 is the NIL record,
+// which plays the part of the NULL_NODE. Freed records are chained through
+// their left field and handed out again before a new page is allocated.
+//
+// The trees that share an arena are counted, and the pages are freed all at
+// once when the last of them is closed, so the heap never holds more than
+// one small ByteBuffer object per page however large the documents get.
+// Freeing does not wait for the garbage collector: the memory of each page
+// is handed back through Unsafe.invokeCleaner, and only on a JVM without it
+// is it left for the collector to reclaim.
+//
+// Direct buffers count against -XX:MaxDirectMemorySize, which defaults to
+// the maximum heap size, so a document of more than about a sixteenth of
+// -Xmx characters needs that limit raised. Running out of it throws an
+// OutOfMemoryError saying so.
+
+final class NodeArena {
+	static final int NIL = 0;
+
+	// Record layout: left, right and size ints, then the element and the
+	// height of the subtree (-1 for NIL)
+	private static final int LEFT = 0;
+	private static final int RIGHT = 4;
+	private static final int SIZE = 8;
+	private static final int ELEMENT = 12;
+	private static final int HEIGHT = 14;
+	private static final int RECORD_SHIFT = 4; // 16 bytes per record
+
+	private static final int PAGE_SHIFT = 16; // 64K records, 1MB per page
+	private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+	private static final int PAGE_BYTES = 1 << (PAGE_SHIFT + RECORD_SHIFT);
+
+	// Unsafe.invokeCleaner bound to the Unsafe instance, or null if this JVM
+	// does not provide it
+	private static final MethodHandle CLEANER = findCleaner();
+
+	private ByteBuffer[] pages = new ByteBuffer[4];
+	private int pageCount;
+	private int records; // Records handed out so far, counting NIL
+	private int free = NIL;
+	private int trees;
+
+	NodeArena() {
+		this.records = 1;
+		this.addPage();
+		this.height(NIL, -1);
+	}
+
+	// Registers one more tree that keeps its nodes here
+	void retain() {
+		this.trees++;
+	}
+
+	// Unregisters a tree; the last one out frees every page. Returns whether
+	// the arena is now closed.
+	boolean release() {
+		if (--this.trees > 0) {
+			return false;
+		}
+		for (int i = 0; i < this.pageCount; i++) {
+			clean(this.pages[i]);
+		}
+		this.pages = null;
+		this.pageCount = 0;
+		return true;
+	}
+
+	// Number of bytes of pages allocated outside the heap
+	long reservedBytes() {
+		return (long) this.pageCount << (PAGE_SHIFT + RECORD_SHIFT);
+	}
+
+	private void addPage() {
+		if (this.pageCount == this.pages.length) {
+			this.pages = Arrays.copyOf(this.pages, 2 * this.pageCount);
+		}
+		ByteBuffer page;
+		try {
+			page = ByteBuffer.allocateDirect(PAGE_BYTES);
+		} catch (OutOfMemoryError e) {
+			OutOfMemoryError error = new OutOfMemoryError("arena of "
+					+ this.reservedBytes() + " bytes cannot grow: raise"
+					+ " -XX:MaxDirectMemorySize");
+			error.initCause(e);
+			throw error;
+		}
+		// order returns the buffer itself, which the cleaner requires
+		this.pages[this.pageCount++] = page.order(ByteOrder.nativeOrder());
+	}
+
+	private static MethodHandle findCleaner() {
+		try {
+			Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+			Field instance = unsafe.getDeclaredField("theUnsafe");
+			instance.setAccessible(true);
+			return MethodHandles.lookup()
+					.findVirtual(unsafe, "invokeCleaner",
+							MethodType.methodType(void.class,
+									ByteBuffer.class))
+					.bindTo(instance.get(null));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	// Frees the memory of a page now, if the JVM lets us
+	private static void clean(ByteBuffer page) {
+		if (CLEANER == null) {
+			return;
+		}
+		try {
+			CLEANER.invokeExact(page);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// Returns a fresh leaf holding element
+	int allocate(char element) {
+		int node;
+		if (this.free != NIL) {
+			node = this.free;
+			this.free = this.left(node);
+		} else {
+			if (this.records == Integer.MAX_VALUE) {
+				throw new IllegalStateException("arena is full");
+			}
+			node = this.records++;
+			if (node >>> PAGE_SHIFT == this.pageCount) {
+				this.addPage();
+			}
+		}
+		this.left(node, NIL);
+		this.right(node, NIL);
+		this.size(node, 1);
+		this.element(node, element);
+		this.height(node, 0);
+		return node;
+	}
+
+	void free(int node) {
+		this.left(node, this.free);
+		this.free = node;
+	}
+
+	// Frees every node of a subtree
+	void freeTree(int node) {
+		if (node == NIL) {
+			return;
+		}
+		this.freeTree(this.left(node));
+		this.freeTree(this.right(node));
+		this.free(node);
+	}
+
+	private ByteBuffer page(int node) {
+		return this.pages[node >>> PAGE_SHIFT];
+	}
+
+	private static int offset(int node) {
+		return (node & PAGE_MASK) << RECORD_SHIFT;
+	}
+
+	int left(int node) {
+		return this.page(node).getInt(offset(node) + LEFT);
+	}
+
+	void left(int node, int left) {
+		this.page(node).putInt(offset(node) + LEFT, left);
+	}
+
+	int right(int node) {
+		return this.page(node).getInt(offset(node) + RIGHT);
+	}
+
+	void right(int node, int right) {
+		this.page(node).putInt(offset(node) + RIGHT, right);
+	}
+
+	int size(int node) {
+		return this.page(node).getInt(offset(node) + SIZE);
+	}
+
+	private void size(int node, int size) {
+		this.page(node).putInt(offset(node) + SIZE, size);
+	}
+
+	char element(int node) {
+		return this.page(node).getChar(offset(node) + ELEMENT);
+	}
+
+	void element(int node, char element) {
+		this.page(node).putChar(offset(node) + ELEMENT, element);
+	}
+
+	int height(int node) {
+		return this.page(node).get(offset(node) + HEIGHT);
+	}
+
+	private void height(int node, int height) {
+		this.page(node).put(offset(node) + HEIGHT, (byte) height);
+	}
+
+	// Recomputes the size and height of node from its children
+	void update(int node) {
+		int left = this.left(node);
+		int right = this.right(node);
+		this.size(node, this.size(left) + this.size(right) + 1);
+		this.height(node, Math.max(this.height(left), this.height(right)) + 1);
+	}
+}
@@ -0,0 +1,430 @@
+package editortrees;
+
+import static editortrees.NodeArena.NIL;
+
+// A height-balanced tree with rank whose nodes are records in a NodeArena
+// outside the Java heap, so that editing a document larger than the heap
+// neither runs out of memory nor makes the garbage collector trace one
+// object per character. Each node keeps the size and height of its subtree,
+// and split and concatenate are AVL joins as in EditTree.
+//
+// The trees split off one another share its arena, so that they can be
+// concatenated back in O(log N) time. Closing a tree frees its nodes, and
+// closing the last tree of an arena hands the arena's memory back to the
+// system at once; a closed tree throws IllegalStateException.
+//
+// The arena is made of direct buffers, which the JVM limits to
+// -XX:MaxDirectMemorySize, by default as much as -Xmx. Each character takes
+// 16 bytes, so a document larger than the heap needs that limit raised, for
+// example -XX:MaxDirectMemorySize=8g for up to about 500M characters.
+
+public class OffHeapEditTree implements AutoCloseable {
+	private NodeArena arena;
+	private int root = NIL;
+
+	/**
+	 * Construct an empty tree with an arena of its own
+	 */
+	public OffHeapEditTree() {
+		this(new NodeArena());
+	}
+
+	/**
+	 * Create a tree whose toString is s, in O(N) time
+	 *
+	 * @param s
+	 */
+	public OffHeapEditTree(CharSequence s) {
+		this();
+		this.root = this.build(s, 0, s.length());
+	}
+
+	private OffHeapEditTree(NodeArena arena) {
+		this.arena = arena;
+		arena.retain();
+	}
+
+	// Builds a perfectly balanced subtree out of s[from, to)
+	private int build(CharSequence s, int from, int to) {
+		if (from >= to) {
+			return NIL;
+		}
+		int mid = (from + to) >>> 1;
+		int node = this.arena.allocate(s.charAt(mid));
+		this.arena.left(node, this.build(s, from, mid));
+		this.arena.right(node, this.build(s, mid + 1, to));
+		this.arena.update(node);
+		return node;
+	}
+
+	private NodeArena arena() {
+		if (this.arena == null) {
+			throw new IllegalStateException("tree is closed");
+		}
+		return this.arena;
+	}
+
+	/**
+	 * Frees the nodes of this tree, and the memory of its arena if no other
+	 * tree split off this one is still open. Closing a closed tree does
+	 * nothing.
+	 */
+	@Override
+	public void close() {
+		if (this.arena == null) {
+			return;
+		}
+		if (!this.arena.release()) {
+			this.arena.freeTree(this.root);
+		}
+		this.arena = null;
+		this.root = NIL;
+	}
+
+	/**
+	 * @return whether this tree has been closed
+	 */
+	public boolean isClosed() {
+		return this.arena == null;
+	}
+
+	/**
+	 * @return the number of characters in this tree
+	 */
+	public int size() {
+		return this.arena().size(this.root);
+	}
+
+	/**
+	 *
+	 * @return the height of this tree
+	 */
+	public int height() {
+		return this.arena().height(this.root);
+	}
+
+	/**
+	 * @return the number of bytes this tree's arena has reserved outside the
+	 *         heap, including the space of freed nodes waiting to be reused
+	 */
+	public long reservedBytes() {
+		return this.arena().reservedBytes();
+	}
+
+	/**
+	 * Return the string produced by an inorder traversal of this tree
+	 */
+	@Override
+	public String toString() {
+		return this.get(0, this.size());
+	}
+
+	/**
+	 * @param pos
+	 *            position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char get(int pos) throws IndexOutOfBoundsException {
+		NodeArena a = this.arena();
+		if (pos < 0 || pos >= a.size(this.root)) {
+			throw new IndexOutOfBoundsException();
+		}
+		int node = this.root;
+		while (true) {
+			int rank = a.size(a.left(node));
+			if (pos == rank) {
+				return a.element(node);
+			} else if (pos < rank) {
+				node = a.left(node);
+			} else {
+				pos -= rank + 1;
+				node = a.right(node);
+			}
+		}
+	}
+
+	/**
+	 * This method operates in O(length + log N).
+	 *
+	 * @param pos
+	 *            location of the beginning of the string to retrieve
+	 * @param length
+	 *            length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException
+	 *             unless both pos and pos+length-1 are legitimate indexes
+	 *             within this tree.
+	 */
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+		if (pos < 0 || length < 0 || pos + length > this.size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		char[] chars = new char[length];
+		this.copy(this.root, pos, pos + length, chars, 0);
+		return new String(chars);
+	}
+
+	// Copies the elements in positions [from, to) of a subtree into dst,
+	// starting at dstOff, walking the right spine without recursion
+	private void copy(int node, int from, int to, char[] dst, int dstOff) {
+		NodeArena a = this.arena;
+		while (node != NIL && from < to) {
+			int rank = a.size(a.left(node));
+			if (from < rank) {
+				this.copy(a.left(node), from, Math.min(to, rank), dst, dstOff);
+			}
+			if (from <= rank && rank < to) {
+				dst[dstOff + rank - from] = a.element(node);
+			}
+			int end = rank + 1;
+			if (to <= end) {
+				return;
+			}
+			int next = Math.max(from, end);
+			dstOff += next - from;
+			from = next - end;
+			to -= end;
+			node = a.right(node);
+		}
+	}
+
+	/**
+	 * @param c
+	 *            character to add to the end of this tree.
+	 */
+	public void add(char c) {
+		this.add(c, this.size());
+	}
+
+	/**
+	 * @param c
+	 *            character to add
+	 * @param pos
+	 *            character added in this inorder position
+	 * @throws IndexOutOfBoundsException
+	 *             id pos is negative or too large for this tree
+	 */
+	public void add(char c, int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		this.root = this.insert(this.root, c, pos);
+	}
+
+	private int insert(int node, char c, int pos) {
+		NodeArena a = this.arena;
+		if (node == NIL) {
+			return a.allocate(c);
+		}
+		int rank = a.size(a.left(node));
+		if (pos <= rank) {
+			a.left(node, this.insert(a.left(node), c, pos));
+		} else {
+			a.right(node, this.insert(a.right(node), c, pos - rank - 1));
+		}
+		return this.rebalance(node);
+	}
+
+	/**
+	 *
+	 * @param pos
+	 *            position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char delete(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos >= this.size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		char[] removed = new char[1];
+		this.root = this.remove(this.root, pos, removed);
+		return removed[0];
+	}
+
+	// Removes the node at pos from a subtree, puts its element in removed[0]
+	// and returns the new root of the subtree. Like EditTree, a node with two
+	// children takes over its successor's element instead.
+	private int remove(int node, int pos, char[] removed) {
+		NodeArena a = this.arena;
+		int rank = a.size(a.left(node));
+		if (pos < rank) {
+			a.left(node, this.remove(a.left(node), pos, removed));
+		} else if (pos > rank) {
+			a.right(node, this.remove(a.right(node), pos - rank - 1, removed));
+		} else if (a.left(node) == NIL || a.right(node) == NIL) {
+			removed[0] = a.element(node);
+			int child = a.left(node) == NIL ? a.right(node) : a.left(node);
+			a.free(node);
+			return child;
+		} else {
+			char deleted = a.element(node);
+			a.right(node, this.remove(a.right(node), 0, removed));
+			a.element(node, removed[0]);
+			removed[0] = deleted;
+		}
+		return this.rebalance(node);
+	}
+
+	/**
+	 * Deletes length characters starting at start, in O(log N) time.
+	 *
+	 * @param start
+	 *            position of beginning of string to delete
+	 *
+	 * @param length
+	 *            length of string to delete
+	 * @return a tree containing the deleted string, which shares this tree's
+	 *         arena
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	public OffHeapEditTree delete(int start, int length)
+			throws IndexOutOfBoundsException {
+		if (start < 0 || length < 0 || start + length > this.size())
+			throw new IndexOutOfBoundsException(
+					(start < 0) ? "negative first argument to delete"
+							: "delete range extends past end of string");
+		OffHeapEditTree t2 = this.split(start);
+		OffHeapEditTree t3 = t2.split(length);
+		this.concatenate(t3);
+		t3.close();
+		return t2;
+	}
+
+	/**
+	 * Append the contents of the other tree to this one. Other is made empty
+	 * after this operation but stays open. A tree split off this one shares
+	 * its arena and is joined in time proportional to the log of the size of
+	 * the larger tree; any other tree is copied into this one's arena in time
+	 * proportional to its size.
+	 *
+	 * @param other
+	 * @throws IllegalArgumentException
+	 *             if this == other
+	 */
+	public void concatenate(OffHeapEditTree other)
+			throws IllegalArgumentException {
+		if (this == other) {
+			throw new IllegalArgumentException();
+		}
+		NodeArena a = this.arena();
+		int otherRoot = other.root;
+		if (other.arena() != a) {
+			otherRoot = this.build(other.toString(), 0, other.size());
+			other.arena.freeTree(other.root);
+		}
+		other.root = NIL;
+		if (otherRoot == NIL) {
+			return;
+		}
+		// The first node of other becomes the pivot of the join
+		int[] parts = this.split(otherRoot, 1);
+		this.root = this.join(this.root, parts[0], parts[1]);
+	}
+
+	/**
+	 * This operation is done in time proportional to the height of this tree.
+	 *
+	 * @param pos
+	 *            where to split this tree
+	 * @return a new tree containing all of the elements of this tree whose
+	 *         positions are >= position. Their nodes are removed from this
+	 *         tree. The new tree shares this tree's arena and must be closed
+	 *         as well.
+	 * @throws IndexOutOfBoundsException
+	 */
+	public OffHeapEditTree split(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		int[] parts = this.split(this.root, pos);
+		OffHeapEditTree returnTree = new OffHeapEditTree(this.arena);
+		this.root = parts[0];
+		returnTree.root = parts[1];
+		return returnTree;
+	}
+
+	// Splits a subtree into its first pos nodes and the rest, like
+	// Node.split
+	private int[] split(int node, int pos) {
+		NodeArena a = this.arena;
+		if (node == NIL) {
+			return new int[] { NIL, NIL };
+		}
+		int left = a.left(node);
+		int right = a.right(node);
+		int rank = a.size(left);
+		int[] parts;
+		if (pos <= rank) {
+			parts = this.split(left, pos);
+			parts[1] = this.join(parts[1], node, right);
+		} else {
+			parts = this.split(right, pos - rank - 1);
+			parts[0] = this.join(left, node, parts[0]);
+		}
+		return parts;
+	}
+
+	// Joins two balanced subtrees around a pivot node, like Node.join
+	private int join(int left, int pivot, int right) {
+		NodeArena a = this.arena;
+		if (a.height(left) > a.height(right) + 1) {
+			a.right(left, this.join(a.right(left), pivot, right));
+			return this.rebalance(left);
+		} else if (a.height(right) > a.height(left) + 1) {
+			a.left(right, this.join(left, pivot, a.left(right)));
+			return this.rebalance(right);
+		}
+		a.left(pivot, left);
+		a.right(pivot, right);
+		a.update(pivot);
+		return pivot;
+	}
+
+	// Restores the AVL property at node, whose subtrees are balanced and
+	// differ in height by at most two, and returns the new root of the
+	// subtree
+	private int rebalance(int node) {
+		NodeArena a = this.arena;
+		int left = a.left(node);
+		int right = a.right(node);
+		int diff = a.height(right) - a.height(left);
+		if (diff > 1) {
+			if (a.height(a.left(right)) > a.height(a.right(right))) {
+				a.right(node, this.rotateRight(right));
+			}
+			return this.rotateLeft(node);
+		} else if (diff < -1) {
+			if (a.height(a.right(left)) > a.height(a.left(left))) {
+				a.left(node, this.rotateLeft(left));
+			}
+			return this.rotateRight(node);
+		}
+		a.update(node);
+		return node;
+	}
+
+	// Rotates node's right child up into its place and returns it
+	private int rotateLeft(int node) {
+		NodeArena a = this.arena;
+		int child = a.right(node);
+		a.right(node, a.left(child));
+		a.left(child, node);
+		a.update(node);
+		a.update(child);
+		return child;
+	}
+
+	// The mirror image of rotateLeft
+	private int rotateRight(int node) {
+		NodeArena a = this.arena;
+		int child = a.left(node);
+		a.left(node, a.right(child));
+		a.right(child, node);
+		a.update(node);
+		a.update(child);
+		return child;
+	}
+}
@@ -0,0 +1,198 @@
+package editortrees;
+
+import static editortrees.TestUtil.maxHeight;
+import static editortrees.TestUtil.randomText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.OffHeapEditTree}
+ */
+public class OffHeapEditTreeTest {
+
+	@Test
+	public void testEmpty() {
+		try (OffHeapEditTree t = new OffHeapEditTree()) {
+			assertEquals("", t.toString());
+			assertEquals(0, t.size());
+			assertEquals(-1, t.height());
+		}
+	}
+
+	@Test
+	public void testConstructorWithString() {
+		String s = randomText(new Random(83), 1000);
+		try (OffHeapEditTree t = new OffHeapEditTree(s)) {
+			assertEquals(s, t.toString());
+			assertEquals(1000, t.size());
+			assertEquals(9, t.height());
+			for (int i = 0; i < s.length(); i++) {
+				assertEquals(s.charAt(i), t.get(i));
+			}
+			assertEquals(s.substring(100, 300), t.get(100, 200));
+		}
+	}
+
+	@Test
+	public void testRandomAddsAndDeletes() {
+		Random random = new Random(89);
+		try (OffHeapEditTree t = new OffHeapEditTree()) {
+			StringBuilder expected = new StringBuilder();
+			for (int k = 0; k < 20000; k++) {
+				if (random.nextInt(5) < 2 && expected.length() > 0) {
+					int pos = random.nextInt(expected.length());
+					assertEquals(expected.charAt(pos), t.delete(pos));
+					expected.deleteCharAt(pos);
+				} else {
+					char c = (char) ('a' + random.nextInt(26));
+					int pos = random.nextInt(expected.length() + 1);
+					t.add(c, pos);
+					expected.insert(pos, c);
+				}
+			}
+			assertEquals(expected.toString(), t.toString());
+			assertTrue(t.height() <= maxHeight(t.size()));
+		}
+	}
+
+	@Test
+	public void testSplitAndConcatenate() {
+		Random random = new Random(97);
+		String s = randomText(random, 5000);
+		try (OffHeapEditTree t = new OffHeapEditTree(s)) {
+			for (int k = 0; k < 200; k++) {
+				int pos = random.nextInt(s.length() + 1);
+				try (OffHeapEditTree tail = t.split(pos)) {
+					assertEquals(s.substring(0, pos), t.toString());
+					assertEquals(s.substring(pos), tail.toString());
+					assertTrue(tail.height() <= maxHeight(tail.size()));
+					t.concatenate(tail);
+					assertEquals(0, tail.size());
+				}
+			}
+			assertEquals(s, t.toString());
+			assertTrue(t.height() <= maxHeight(t.size()));
+
+			OffHeapEditTree removed = t.delete(100, 1000);
+			assertEquals(s.substring(100, 1100), removed.toString());
+			assertEquals(s.substring(0, 100) + s.substring(1100), t.toString());
+			removed.close();
+		}
+	}
+
+	@Test
+	public void testConcatenateCopiesFromAnotherArena() {
+		try (OffHeapEditTree t = new OffHeapEditTree("abc");
+				OffHeapEditTree other = new OffHeapEditTree("defgh")) {
+			t.concatenate(other);
+			assertEquals("abcdefgh", t.toString());
+			assertEquals("", other.toString());
+			other.add('x');
+			assertEquals("x", other.toString());
+		}
+	}
+
+	@Test
+	public void testClose() {
+		OffHeapEditTree t = new OffHeapEditTree("hello world");
+		OffHeapEditTree tail = t.split(5);
+		t.close();
+		assertTrue(t.isClosed());
+		t.close();
+		// the tail keeps the shared arena open
+		assertFalse(tail.isClosed());
+		assertEquals(" world", tail.toString());
+		tail.close();
+		try {
+			tail.size();
+			fail("Did not throw IllegalStateException");
+		} catch (IllegalStateException e) {
+			// success
+		}
+		try {
+			t.add('x');
+			fail("Did not throw IllegalStateException");
+		} catch (IllegalStateException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testCloseFreesMemory() {
+		OffHeapEditTree t = new OffHeapEditTree(randomText(new Random(89),
+				200000));
+		OffHeapEditTree tail = t.split(100000);
+		long reserved = t.reservedBytes();
+		t.close();
+		long before = directMemoryUsed();
+		tail.close();
+		// the pages are freed by close, not by a later garbage collection
+		assertTrue(before - directMemoryUsed() >= reserved);
+	}
+
+	// Returns the number of bytes of direct buffers the JVM has allocated
+	private static long directMemoryUsed() {
+		for (BufferPoolMXBean pool : ManagementFactory
+				.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if (pool.getName().equals("direct")) {
+				return pool.getMemoryUsed();
+			}
+		}
+		throw new AssertionError("no direct buffer pool");
+	}
+
+	@Test
+	public void testFreedNodesAreReused() {
+		try (OffHeapEditTree t = new OffHeapEditTree()) {
+			for (int k = 0; k < 100000; k++) {
+				t.add('a');
+			}
+			long reserved = t.reservedBytes();
+			for (int k = 0; k < 100000; k++) {
+				t.add(t.delete(k % t.size()), (7 * k) % t.size());
+			}
+			try (OffHeapEditTree tail = t.split(50000)) {
+				tail.delete(0, 50000).close();
+				t.concatenate(tail);
+			}
+			for (int k = 0; k < 50000; k++) {
+				t.add('b', k);
+			}
+			assertEquals(reserved, t.reservedBytes());
+			assertEquals(100000, t.size());
+		}
+	}
+
+	@Test
+	public void testOutOfBounds() {
+		try (OffHeapEditTree t = new OffHeapEditTree("abc")) {
+			try {
+				t.add('x', 4);
+				fail("Did not throw IndexOutOfBoundsException");
+			} catch (IndexOutOfBoundsException e) {
+				// success
+			}
+			try {
+				t.split(4);
+				fail("Did not throw IndexOutOfBoundsException");
+			} catch (IndexOutOfBoundsException e) {
+				// success
+			}
+			try {
+				t.delete(1, 3);
+				fail("Did not throw IndexOutOfBoundsException");
+			} catch (IndexOutOfBoundsException e) {
+				// success
+			}
+			assertEquals("abc", t.toString());
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package editortrees;
+
+// An immutable height-balanced tree with rank. Every update returns a new
+// version that shares all untouched subtrees with the old one, copying only
+// O(log N) nodes, so old versions stay readable forever, from any thread,
+// without locks. Taking a snapshot is just keeping a reference.
+
+public final class PersistentEditTree {
+	private static final PersistentEditTree EMPTY = new PersistentEditTree(
+			(PersistentNode) null);
+
+	private final PersistentNode root;
+
+	private PersistentEditTree(PersistentNode root) {
+		this.root = root;
+	}
+
+	/**
+	 * Construct an empty tree
+	 */
+	public PersistentEditTree() {
+		this((PersistentNode) null);
+	}
+
+	/**
+	 * Create a tree whose toString is s, in O(N) time.
+	 *
+	 * @param s
+	 */
+	public PersistentEditTree(CharSequence s) {
+		this(PersistentNode.build(s, 0, s.length()));
+	}
+
+	/**
+	 * @return the empty tree
+	 */
+	public static PersistentEditTree empty() {
+		return EMPTY;
+	}
+
+	// Wraps a root, sharing the empty version
+	private static PersistentEditTree of(PersistentNode root) {
+		return root == null ? EMPTY : new PersistentEditTree(root);
+	}
+
+	/**
+	 *
+	 * @return the height of this tree
+	 */
+	public int height() {
+		return PersistentNode.height(this.root);
+	}
+
+	/**
+	 * @return the number of nodes in this tree
+	 */
+	public int size() {
+		return PersistentNode.size(this.root);
+	}
+
+	/**
+	 * Return the string produced by an inorder traversal of this tree
+	 */
+	@Override
+	public String toString() {
+		char[] chars = new char[size()];
+		PersistentNode.copy(this.root, 0, chars.length, chars, 0);
+		return new String(chars);
+	}
+
+	/**
+	 * @param pos
+	 *            position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char get(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos >= size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		return PersistentNode.get(this.root, pos);
+	}
+
+	/**
+	 * This method operates in O(length + log N).
+	 *
+	 * @param pos
+	 *            location of the beginning of the string to retrieve
+	 * @param length
+	 *            length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException
+	 *             unless both pos and pos+length-1 are legitimate indexes
+	 *             within this tree.
+	 */
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+		if (pos < 0 || length < 0 || pos + length > size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		char[] chars = new char[length];
+		PersistentNode.copy(this.root, pos, pos + length, chars, 0);
+		return new String(chars);
+	}
+
+	/**
+	 * @param c
+	 *            character to add to the end of this tree.
+	 * @return the new version
+	 */
+	public PersistentEditTree add(char c) {
+		return this.add(c, size());
+	}
+
+	/**
+	 * @param c
+	 *            character to add
+	 * @param pos
+	 *            character added in this inorder position
+	 * @return the new version
+	 * @throws IndexOutOfBoundsException
+	 *             id pos is negative or too large for this tree
+	 */
+	public PersistentEditTree add(char c, int pos)
+			throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		return of(PersistentNode.add(this.root, c, pos));
+	}
+
+	/**
+	 *
+	 * @param pos
+	 *            position of character to delete from this tree
+	 * @return the new version
+	 * @throws IndexOutOfBoundsException
+	 */
+	public PersistentEditTree delete(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos >= size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		return of(PersistentNode.delete(this.root, pos));
+	}
+
+	/**
+	 * Deletes length characters starting at start, in O(log N) time.
+	 *
+	 * @param start
+	 *            position of beginning of string to delete
+	 * @param length
+	 *            length of string to delete
+	 * @return the new version
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	public PersistentEditTree delete(int start, int length)
+			throws IndexOutOfBoundsException {
+		if (start < 0 || length < 0 || start + length > size())
+			throw new IndexOutOfBoundsException(
+					(start < 0) ? "negative first argument to delete"
+							: "delete range extends past end of string");
+		PersistentNode[] head = PersistentNode.split(this.root, start);
+		PersistentNode[] tail = PersistentNode.split(head[1], length);
+		return of(PersistentNode.join(head[0], tail[1]));
+	}
+
+	/**
+	 * Append (in time proportional to the log of the size of the larger tree)
+	 * the contents of the other tree to this one. Neither tree changes.
+	 *
+	 * @param other
+	 * @return the new version
+	 */
+	public PersistentEditTree concatenate(PersistentEditTree other) {
+		return of(PersistentNode.join(this.root, other.root));
+	}
+
+	/**
+	 * This operation is done in time proportional to the height of this tree.
+	 * This tree does not change.
+	 *
+	 * @param pos
+	 *            where to split this tree
+	 * @return two versions: the first holds the elements of this tree whose
+	 *         positions are < pos, the second those whose positions are >=
+	 *         pos
+	 * @throws IndexOutOfBoundsException
+	 */
+	public PersistentEditTree[] split(int pos)
+			throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		PersistentNode[] parts = PersistentNode.split(this.root, pos);
+		return new PersistentEditTree[] { of(parts[0]), of(parts[1]) };
+	}
+
+	/**
+	 * @return The root of this tree; null if it is empty.
+	 */
+	public PersistentNode getRoot() {
+		return this.root;
+	}
+}
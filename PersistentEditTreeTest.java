@@ -0,0 +1,101 @@
+package editortrees;
+
+import static editortrees.TestUtil.maxHeight;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.PersistentEditTree}
+ */
+public class PersistentEditTreeTest {
+
+	@Test
+	public void testOldVersionsAreUnchanged() {
+		Random random = new Random(230);
+		PersistentEditTree t = PersistentEditTree.empty();
+		StringBuilder expected = new StringBuilder();
+		List<PersistentEditTree> versions = new ArrayList<PersistentEditTree>();
+		List<String> contents = new ArrayList<String>();
+		for (int k = 0; k < 3000; k++) {
+			if (expected.length() > 0 && random.nextInt(3) == 0) {
+				int pos = random.nextInt(expected.length());
+				t = t.delete(pos);
+				expected.deleteCharAt(pos);
+			} else {
+				int pos = random.nextInt(expected.length() + 1);
+				char c = (char) ('a' + random.nextInt(26));
+				t = t.add(c, pos);
+				expected.insert(pos, c);
+			}
+			if (k % 100 == 0) {
+				versions.add(t);
+				contents.add(expected.toString());
+			}
+		}
+		assertEquals(expected.toString(), t.toString());
+		assertTrue(t.height() <= maxHeight(t.size()));
+		for (int i = 0; i < versions.size(); i++) {
+			assertEquals(contents.get(i), versions.get(i).toString());
+		}
+	}
+
+	@Test
+	public void testAddSharesUntouchedSubtrees() {
+		PersistentEditTree t1 = new PersistentEditTree("abcdefghijklmno");
+		PersistentEditTree t2 = t1.add('z');
+		assertEquals("abcdefghijklmno", t1.toString());
+		assertEquals("abcdefghijklmnoz", t2.toString());
+		assertSame(t1.getRoot().left, t2.getRoot().left);
+	}
+
+	@Test
+	public void testSplitAndConcatenate() {
+		String s = "abcdefghijklmnopqrstuvwxyz";
+		PersistentEditTree t = new PersistentEditTree(s);
+		for (int i = 0; i <= s.length(); i++) {
+			PersistentEditTree[] parts = t.split(i);
+			assertEquals(s.substring(0, i), parts[0].toString());
+			assertEquals(s.substring(i), parts[1].toString());
+			assertTrue(parts[0].height() <= maxHeight(parts[0].size()));
+			assertTrue(parts[1].height() <= maxHeight(parts[1].size()));
+			PersistentEditTree joined = parts[1].concatenate(parts[0]);
+			assertEquals(s.substring(i) + s.substring(0, i), joined
+					.toString());
+		}
+		assertEquals(s, t.toString());
+	}
+
+	@Test
+	public void testDeleteRangeAndGet() {
+		String s = "the quick brown fox";
+		PersistentEditTree t = new PersistentEditTree(s);
+		PersistentEditTree shorter = t.delete(4, 6);
+		assertEquals("the brown fox", shorter.toString());
+		assertEquals(s, t.toString());
+		assertEquals('q', t.get(4));
+		assertEquals("brown", shorter.get(4, 5));
+		try {
+			shorter.get(13);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testEmpty() {
+		PersistentEditTree t = new PersistentEditTree();
+		assertEquals("", t.toString());
+		assertEquals(-1, t.height());
+		assertEquals(0, t.add('a').delete(0).size());
+		assertSame(PersistentEditTree.empty(), t.add('a').delete(0));
+	}
+}
@@ -0,0 +1,225 @@
+package editortrees;
+
+// An immutable node in a height-balanced binary tree with rank. Nodes are
+// never changed once built, so any number of tree versions can share them;
+// an update copies only the nodes on the path it touches. Empty subtrees
+// are null.
+
+public final class PersistentNode {
+
+	final char element;
+	final PersistentNode left, right; // subtrees
+	final int size; // Number of nodes in this subtree
+	final int height;
+
+	// PersistentNode constructor; size and height follow from the children
+	PersistentNode(char element, PersistentNode left, PersistentNode right) {
+		this.element = element;
+		this.left = left;
+		this.right = right;
+		this.size = size(left) + 1 + size(right);
+		this.height = 1 + Math.max(height(left), height(right));
+	}
+
+	// Number of nodes in the left subtree
+	int rank() {
+		return size(this.left);
+	}
+
+	// Returns the height of a subtree, -1 for the empty one
+	static int height(PersistentNode node) {
+		return node == null ? -1 : node.height;
+	}
+
+	// Returns the number of nodes in a subtree
+	static int size(PersistentNode node) {
+		return node == null ? 0 : node.size;
+	}
+
+	// Builds a perfectly balanced tree out of s[from, to)
+	static PersistentNode build(CharSequence s, int from, int to) {
+		if (from >= to) {
+			return null;
+		}
+		int mid = (from + to) >>> 1;
+		PersistentNode left = build(s, from, mid);
+		return new PersistentNode(s.charAt(mid), left, build(s, mid + 1, to));
+	}
+
+	// Returns a balanced node equivalent to one with the given element and
+	// children, which are balanced and differ in height by at most two
+	static PersistentNode balance(char element, PersistentNode left,
+			PersistentNode right) {
+		int diff = height(left) - height(right);
+		if (diff > 1) {
+			if (height(left.left) >= height(left.right)) {
+				// single right rotation
+				return new PersistentNode(left.element, left.left,
+						new PersistentNode(element, left.right, right));
+			}
+			// double right rotation
+			PersistentNode middle = left.right;
+			return new PersistentNode(middle.element, new PersistentNode(
+					left.element, left.left, middle.left), new PersistentNode(
+					element, middle.right, right));
+		}
+		if (diff < -1) {
+			if (height(right.right) >= height(right.left)) {
+				// single left rotation
+				return new PersistentNode(right.element, new PersistentNode(
+						element, left, right.left), right.right);
+			}
+			// double left rotation
+			PersistentNode middle = right.left;
+			return new PersistentNode(middle.element, new PersistentNode(
+					element, left, middle.left), new PersistentNode(
+					right.element, middle.right, right.right));
+		}
+		return new PersistentNode(element, left, right);
+	}
+
+	/**
+	 * Joins two balanced trees around a pivot element, copying only the nodes
+	 * on the spine of the taller tree down to the height of the shorter one.
+	 *
+	 * @param left
+	 * @param element
+	 * @param right
+	 * @return the root of the joined tree
+	 */
+	static PersistentNode join(PersistentNode left, char element,
+			PersistentNode right) {
+		int leftHeight = height(left);
+		int rightHeight = height(right);
+		if (leftHeight > rightHeight + 1) {
+			return balance(left.element, left.left, join(left.right, element,
+					right));
+		}
+		if (rightHeight > leftHeight + 1) {
+			return balance(right.element, join(left, element, right.left),
+					right.right);
+		}
+		return new PersistentNode(element, left, right);
+	}
+
+	/**
+	 * Joins two balanced trees without a pivot.
+	 *
+	 * @param left
+	 * @param right
+	 * @return the root of the joined tree
+	 */
+	static PersistentNode join(PersistentNode left, PersistentNode right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+		PersistentNode last = left;
+		while (last.right != null) {
+			last = last.right;
+		}
+		return join(delete(left, left.size - 1), last.element, right);
+	}
+
+	/**
+	 * Splits a tree so that the first pos nodes end up in the left part and
+	 * the rest in the right part. The given tree is left unchanged.
+	 *
+	 * @param node
+	 * @param pos
+	 * @return {left part, right part}
+	 */
+	static PersistentNode[] split(PersistentNode node, int pos) {
+		if (node == null) {
+			return new PersistentNode[2];
+		}
+		int rank = node.rank();
+		if (pos <= rank) {
+			PersistentNode[] parts = split(node.left, pos);
+			parts[1] = join(parts[1], node.element, node.right);
+			return parts;
+		}
+		PersistentNode[] parts = split(node.right, pos - rank - 1);
+		parts[0] = join(node.left, node.element, parts[0]);
+		return parts;
+	}
+
+	// Returns a tree with c added at position pos
+	static PersistentNode add(PersistentNode node, char c, int pos) {
+		if (node == null) {
+			return new PersistentNode(c, null, null);
+		}
+		int rank = node.rank();
+		if (pos <= rank) {
+			return balance(node.element, add(node.left, c, pos), node.right);
+		}
+		return balance(node.element, node.left, add(node.right, c, pos - rank
+				- 1));
+	}
+
+	// Returns a tree without the node at position pos. A node with two
+	// children is replaced by its successor.
+	static PersistentNode delete(PersistentNode node, int pos) {
+		int rank = node.rank();
+		if (pos < rank) {
+			return balance(node.element, delete(node.left, pos), node.right);
+		}
+		if (pos > rank) {
+			return balance(node.element, node.left, delete(node.right, pos
+					- rank - 1));
+		}
+		if (node.left == null) {
+			return node.right;
+		}
+		if (node.right == null) {
+			return node.left;
+		}
+		PersistentNode successor = node.right;
+		while (successor.left != null) {
+			successor = successor.left;
+		}
+		return balance(successor.element, node.left, delete(node.right, 0));
+	}
+
+	// Gets the element at position pos
+	static char get(PersistentNode node, int pos) {
+		while (true) {
+			int rank = node.rank();
+			if (pos == rank) {
+				return node.element;
+			}
+			if (pos < rank) {
+				node = node.left;
+			} else {
+				pos -= rank + 1;
+				node = node.right;
+			}
+		}
+	}
+
+	// Copies the elements in positions [from, to) of the subtree into dst,
+	// starting at dstOff
+	static void copy(PersistentNode node, int from, int to, char[] dst,
+			int dstOff) {
+		while (node != null && from < to) {
+			int rank = node.rank();
+			if (from < rank) {
+				copy(node.left, from, Math.min(to, rank), dst, dstOff);
+			}
+			if (from <= rank && rank < to) {
+				dst[dstOff + rank - from] = node.element;
+			}
+			int end = rank + 1;
+			if (to <= end) {
+				return;
+			}
+			int next = Math.max(from, end);
+			dstOff += next - from;
+			from = next - end;
+			to -= end;
+			node = node.right;
+		}
+	}
+}
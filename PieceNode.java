@@ -0,0 +1,54 @@
+package editortrees;
+
+// A node in a height-balanced binary tree with rank, where each node is a
+// piece: a range of either the original file or the add buffer of a
+// MappedEditTree. Rank and size are counted in characters, as longs, so that
+// a tree can describe files of more than 2^31 characters. Empty subtrees are
+// null.
+//
+// Two pieces that a join puts side by side become one if the second starts
+// where the first ends in the same source, as characters typed one after
+// another do.
+
+public class PieceNode extends BlockNode<PieceNode> {
+
+	boolean added; // whether the range is in the add buffer
+	long start; // first character of the range in its source
+	long length; // Number of characters in the range
+
+	// PieceNode constructor for the range [start, start + length) of the add
+	// buffer, if added, or of the original file
+	public PieceNode(boolean added, long start, long length) {
+		this.added = added;
+		this.start = start;
+		this.length = length;
+		this.size = length;
+		this.height = 0;
+	}
+
+	@Override
+	long length() {
+		return this.length;
+	}
+
+	// Only creates a node: the characters stay where they are
+	@Override
+	PieceNode cut(long offset) {
+		PieceNode tail = new PieceNode(this.added, this.start + offset,
+				this.length - offset);
+		this.length = offset;
+		return tail;
+	}
+
+	@Override
+	boolean mergeable(PieceNode next) {
+		return this.added == next.added
+				&& this.start + this.length == next.start;
+	}
+
+	@Override
+	boolean merge(PieceNode next) {
+		this.length += next.length;
+		return true;
+	}
+}
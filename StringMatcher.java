@@ -0,0 +1,78 @@
+package editortrees;
+
+// Knuth-Morris-Pratt matcher that is fed one character at a time, so a
+// pattern can be searched for while walking a tree with a cursor, without
+// ever materializing the text. Fed in reverse, it finds matches backwards.
+
+final class StringMatcher {
+	private final char[] pattern;
+	private final int[] failure;
+	private int matched;
+
+	/**
+	 * @param s
+	 *            non-empty pattern to look for
+	 * @param backwards
+	 *            whether the text will be fed from its end to its beginning
+	 */
+	StringMatcher(String s, boolean backwards) {
+		this.pattern = s.toCharArray();
+		if (backwards) {
+			for (int i = 0, j = this.pattern.length - 1; i < j; i++, j--) {
+				char c = this.pattern[i];
+				this.pattern[i] = this.pattern[j];
+				this.pattern[j] = c;
+			}
+		}
+		// failure[i] is the length of the longest proper border of the
+		// first i + 1 characters of the pattern
+		this.failure = new int[this.pattern.length];
+		int k = 0;
+		for (int i = 1; i < this.pattern.length; i++) {
+			while (k > 0 && this.pattern[i] != this.pattern[k]) {
+				k = this.failure[k - 1];
+			}
+			if (this.pattern[i] == this.pattern[k]) {
+				k++;
+			}
+			this.failure[i] = k;
+		}
+		this.matched = 0;
+	}
+
+	/**
+	 * @return the length of the pattern
+	 */
+	int length() {
+		return this.pattern.length;
+	}
+
+	/**
+	 * @return how many characters of the pattern the last characters fed
+	 *         match
+	 */
+	int matched() {
+		return this.matched;
+	}
+
+	/**
+	 * Feeds the next character of the text.
+	 *
+	 * @param c
+	 * @return whether an occurrence of the pattern ends with c
+	 */
+	boolean feed(char c) {
+		int k = this.matched;
+		if (k == this.pattern.length) {
+			k = this.failure[k - 1];
+		}
+		while (k > 0 && this.pattern[k] != c) {
+			k = this.failure[k - 1];
+		}
+		if (this.pattern[k] == c) {
+			k++;
+		}
+		this.matched = k;
+		return k == this.pattern.length;
+	}
+}
@@ -0,0 +1,62 @@
+package editortrees;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters that many trees on many threads can share. LongAdder spreads
+// contended adds over several cells, so updates stay cheap; reads sum the
+// cells and are only exact while nothing is counting.
+
+public class StripedMetrics implements EditTreeMetrics {
+	private final LongAdder rotations = new LongAdder();
+	private final LongAdder nodesVisited = new LongAdder();
+	private final LongAdder allocations = new LongAdder();
+	private final LongAdder rebalanceSteps = new LongAdder();
+
+	@Override
+	public void rotated(int count) {
+		this.rotations.add(count);
+	}
+
+	@Override
+	public void visited(int count) {
+		this.nodesVisited.add(count);
+	}
+
+	@Override
+	public void allocated(int count) {
+		this.allocations.add(count);
+	}
+
+	@Override
+	public void rebalanced(int count) {
+		this.rebalanceSteps.add(count);
+	}
+
+	@Override
+	public long rotations() {
+		return this.rotations.sum();
+	}
+
+	@Override
+	public long nodesVisited() {
+		return this.nodesVisited.sum();
+	}
+
+	@Override
+	public long allocations() {
+		return this.allocations.sum();
+	}
+
+	@Override
+	public long rebalanceSteps() {
+		return this.rebalanceSteps.sum();
+	}
+
+	@Override
+	public void reset() {
+		this.rotations.reset();
+		this.nodesVisited.reset();
+		this.allocations.reset();
+		this.rebalanceSteps.reset();
+	}
+}
@@ -0,0 +1,95 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import editortrees.Node.Code;
+
+// Helpers shared by the tests
+
+final class TestUtil {
+
+	private TestUtil() {
+	}
+
+	// Returns length random lowercase letters, about one in ten replaced by
+	// a newline
+	static String randomText(Random random, int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append(random.nextInt(10) == 0 ? '\n'
+					: (char) ('a' + random.nextInt(26)));
+		}
+		return sb.toString();
+	}
+
+	// Returns the height an AVL tree of n nodes can reach
+	static int maxHeight(int n) {
+		// An AVL tree of n nodes is never taller than 1.44 log2(n + 2)
+		return (int) (1.44 * Math.log(n + 2) / Math.log(2));
+	}
+
+	// Checks ranks, sizes, balance codes, parent pointers and newline counts
+	// of the whole tree, and returns its real height
+	static int checkStructure(Node node, Node parent) {
+		if (node == EditTree.getNullNode()) {
+			return -1;
+		}
+		assertSame(parent, node.parent);
+		int leftHeight = checkStructure(node.left, node);
+		int rightHeight = checkStructure(node.right, node);
+		assertTrue(Math.abs(leftHeight - rightHeight) <= 1);
+		Code expected = leftHeight > rightHeight ? Code.LEFT
+				: leftHeight < rightHeight ? Code.RIGHT : Code.SAME;
+		assertEquals(expected, node.balance);
+		assertEquals(count(node.left), node.rank);
+		assertEquals(count(node), node.size);
+		assertEquals(node.left.newlines + node.right.newlines
+				+ (node.element == '\n' ? 1 : 0), node.newlines);
+		return Math.max(leftHeight, rightHeight) + 1;
+	}
+
+	private static int count(Node node) {
+		if (node == EditTree.getNullNode()) {
+			return 0;
+		}
+		return count(node.left) + 1 + count(node.right);
+	}
+
+	// Checks that t holds expected and that its whole structure is sound
+	static void assertValid(String expected, EditTree t) {
+		assertEquals(expected, t.toString());
+		assertEquals(expected.length(), t.size());
+		if (expected.length() > 0) {
+			assertNull(t.getRoot().parent);
+			assertEquals(checkStructure(t.getRoot(), null), t.height());
+		}
+	}
+
+	// Records what an EditTree tells its listeners, as "+pos:text" for an
+	// insertion and "-start,length" for a deletion
+	static final class Recorder implements EditListener {
+		final List<String> events = new ArrayList<>();
+
+		@Override
+		public void inserted(int pos, char c) {
+			this.events.add("+" + pos + ":" + c);
+		}
+
+		@Override
+		public void inserted(int pos, CharSequence s) {
+			this.events.add("+" + pos + ":" + s);
+		}
+
+		@Override
+		public void deleted(int start, int length) {
+			this.events.add("-" + start + "," + length);
+		}
+	}
+}
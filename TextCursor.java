@@ -0,0 +1,131 @@
+package editortrees;
+
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+
+// A position between two characters of an EditTree, like a caret. Moving to
+// the next or previous character follows the parent pointers from the
+// current node, which costs amortized O(1) per step, and inserting or
+// deleting at the cursor works on that node without descending from the
+// root.
+
+public class TextCursor {
+	private final EditTree tree;
+	private Node node; // holds the character after the cursor; null at end
+	private int pos;
+	private int expectedModCount;
+
+	TextCursor(EditTree tree, int pos) {
+		this.tree = tree;
+		this.moveTo(pos);
+	}
+
+	/**
+	 * @return the number of characters before this cursor
+	 */
+	public int position() {
+		return this.pos;
+	}
+
+	/**
+	 * Moves this cursor just before the character at pos, in O(log N) time.
+	 *
+	 * @param pos
+	 *            new position, from 0 to the size of the tree
+	 * @throws IndexOutOfBoundsException
+	 */
+	public void moveTo(int pos) throws IndexOutOfBoundsException {
+		this.node = this.tree.nodeAt(pos);
+		this.pos = pos;
+		this.expectedModCount = this.tree.modCount;
+	}
+
+	/**
+	 * @return whether there is a character after this cursor
+	 */
+	public boolean hasNext() {
+		checkForModification();
+		return this.node != null;
+	}
+
+	/**
+	 * Moves this cursor past the next character.
+	 *
+	 * @return the character moved over
+	 * @throws NoSuchElementException
+	 *             if the cursor is at the end of the tree
+	 */
+	public char next() throws NoSuchElementException {
+		checkForModification();
+		if (this.node == null) {
+			throw new NoSuchElementException();
+		}
+		char c = this.node.element;
+		this.node = this.node.successor();
+		this.pos++;
+		return c;
+	}
+
+	/**
+	 * @return whether there is a character before this cursor
+	 */
+	public boolean hasPrevious() {
+		checkForModification();
+		return this.pos > 0;
+	}
+
+	/**
+	 * Moves this cursor back over the previous character.
+	 *
+	 * @return the character moved over
+	 * @throws NoSuchElementException
+	 *             if the cursor is at the beginning of the tree
+	 */
+	public char previous() throws NoSuchElementException {
+		checkForModification();
+		if (this.pos == 0) {
+			throw new NoSuchElementException();
+		}
+		this.node = this.node == null ? this.tree.lastNode() : this.node
+				.predecessor();
+		this.pos--;
+		return this.node.element;
+	}
+
+	/**
+	 * Inserts c before this cursor, so that the cursor ends up just after it.
+	 *
+	 * @param c
+	 *            character to add
+	 */
+	public void insert(char c) {
+		checkForModification();
+		this.tree.addBefore(this.node, this.pos, c);
+		this.pos++;
+		this.expectedModCount = this.tree.modCount;
+	}
+
+	/**
+	 * Deletes the character after this cursor. The cursor stays where it is.
+	 *
+	 * @return the character that is deleted
+	 * @throws NoSuchElementException
+	 *             if the cursor is at the end of the tree
+	 */
+	public char delete() throws NoSuchElementException {
+		checkForModification();
+		if (this.node == null) {
+			throw new NoSuchElementException();
+		}
+		char c = this.node.element;
+		this.node = this.tree.delete(this.node, this.pos);
+		this.expectedModCount = this.tree.modCount;
+		return c;
+	}
+
+	private void checkForModification() {
+		if (this.tree.modCount != this.expectedModCount) {
+			throw new ConcurrentModificationException();
+		}
+	}
+}
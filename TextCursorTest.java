@@ -0,0 +1,133 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.TextCursor}
+ */
+public class TextCursorTest {
+
+	private static String alphabet(int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testWalkForwardAndBack() {
+		String s = alphabet(1000);
+		EditTree t = new EditTree(s);
+		TextCursor cursor = t.cursor(0);
+		for (int i = 0; i < s.length(); i++) {
+			assertTrue(cursor.hasNext());
+			assertEquals(s.charAt(i), cursor.next());
+		}
+		assertFalse(cursor.hasNext());
+		assertEquals(s.length(), cursor.position());
+		for (int i = s.length() - 1; i >= 0; i--) {
+			assertTrue(cursor.hasPrevious());
+			assertEquals(s.charAt(i), cursor.previous());
+		}
+		assertFalse(cursor.hasPrevious());
+	}
+
+	@Test
+	public void testWalkAfterRotations() {
+		EditTree t = new EditTree();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			char c = (char) ('a' + i % 26);
+			t.add(c, 0);
+			expected.insert(0, c);
+		}
+		TextCursor cursor = t.cursor(250);
+		for (int i = 250; i < 500; i++) {
+			assertEquals(expected.charAt(i), cursor.next());
+		}
+		cursor.moveTo(10);
+		assertEquals(expected.charAt(9), cursor.previous());
+	}
+
+	@Test
+	public void testInsert() {
+		EditTree t = new EditTree("abcdef");
+		TextCursor cursor = t.cursor(3);
+		cursor.insert('X');
+		cursor.insert('Y');
+		assertEquals("abcXYdef", t.toString());
+		assertEquals(5, cursor.position());
+		assertEquals('d', cursor.next());
+		cursor.moveTo(t.size());
+		cursor.insert('!');
+		assertEquals("abcXYdef!", t.toString());
+		assertEquals(9, t.length());
+		assertTrue(t.height() <= 3);
+
+		EditTree empty = new EditTree();
+		TextCursor typing = empty.cursor(0);
+		for (char c : "hello".toCharArray()) {
+			typing.insert(c);
+		}
+		assertEquals("hello", empty.toString());
+		assertEquals(2, empty.height());
+	}
+
+	@Test
+	public void testDelete() {
+		EditTree t = new EditTree("abcdefg");
+		TextCursor cursor = t.cursor(2);
+		assertEquals('c', cursor.delete());
+		assertEquals("abdefg", t.toString());
+		assertEquals('d', cursor.delete());
+		assertEquals("abefg", t.toString());
+		assertEquals('e', cursor.next());
+		cursor.moveTo(4);
+		assertEquals('g', cursor.delete());
+		assertFalse(cursor.hasNext());
+		assertEquals("abef", t.toString());
+		try {
+			cursor.delete();
+			fail("Did not throw NoSuchElementException");
+		} catch (NoSuchElementException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testFailsAfterOutsideModification() {
+		EditTree t = new EditTree("abc");
+		TextCursor cursor = t.cursor(1);
+		t.add('z');
+		try {
+			cursor.next();
+			fail("Did not throw ConcurrentModificationException");
+		} catch (ConcurrentModificationException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testCharIterator() {
+		String s = alphabet(300);
+		EditTree t = new EditTree(s);
+		PrimitiveIterator.OfInt chars = t.charIterator();
+		for (int i = 0; i < s.length(); i++) {
+			assertEquals(s.charAt(i), chars.nextInt());
+		}
+		assertFalse(chars.hasNext());
+		assertEquals(s.chars().filter(c -> c == 'q').count(),
+				t.chars().filter(c -> c == 'q').count());
+		assertFalse(new EditTree().charIterator().hasNext());
+	}
+}
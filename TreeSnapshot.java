@@ -0,0 +1,236 @@
+package editortrees;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// The binary snapshot format of an EditTree, which keeps the exact shape of
+// the tree so that loading it is a single pass that allocates the nodes and
+// links them up, with no rotation and no decoding. All numbers are
+// big-endian:
+//
+//   int    MAGIC
+//   int    VERSION
+//   long   journal offset, the length of the EditJournal the snapshot goes
+//          with, or 0
+//   int    N, the number of nodes
+//   char   element of every node, in pre-order
+//   byte   a nibble per node, in pre-order, the first one in the high half:
+//          whether the node has a left child, whether it has a right child,
+//          and the ordinal of its Node.Code in the low two bits
+//
+// Ranks, sizes, heights and line counts follow from the shape and are
+// recomputed as the nodes are linked. The stored balance codes are checked
+// against them, which catches a damaged file.
+
+final class TreeSnapshot {
+	static final int MAGIC = 0x45545245; // "ETRE"
+	static final int VERSION = 1;
+	private static final int HEADER = 20;
+	private static final int HAS_LEFT = 8;
+	private static final int HAS_RIGHT = 4;
+	private static final int CODE_MASK = 3;
+	private static final int BUFFER_SIZE = 1 << 16;
+	// Deeper than any AVL tree of 2^31 nodes can be
+	private static final int MAX_DEPTH = 64;
+	private static final Node.Code[] CODES = Node.Code.values();
+
+	final EditTree tree;
+	final long journalOffset;
+
+	private TreeSnapshot(EditTree tree, long journalOffset) {
+		this.tree = tree;
+		this.journalOffset = journalOffset;
+	}
+
+	/**
+	 * Writes the tree rooted at root to path, through a temporary file next
+	 * to it that replaces path atomically once it is on the disk. Takes O(N)
+	 * time and O(1) extra space.
+	 *
+	 * @param root
+	 * @param path
+	 * @param journalOffset
+	 * @throws IOException
+	 */
+	static void write(Node root, Path path, long journalOffset)
+			throws IOException {
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel out = FileChannel.open(temp,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			new Writer(out, root.size).write(root, journalOffset);
+			out.force(false);
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// Fills the two sections of a snapshot at the same time, each through
+	// its own buffer, in one pre-order walk
+	private static final class Writer {
+		private final FileChannel out;
+		private final ByteBuffer elements = ByteBuffer.allocate(BUFFER_SIZE);
+		private final ByteBuffer codes = ByteBuffer.allocate(BUFFER_SIZE);
+		private final int count;
+		private long elementsPos = HEADER;
+		private long codesPos;
+		private int index;
+		private int pending; // High nibble of the byte being filled
+
+		Writer(FileChannel out, int count) {
+			this.out = out;
+			this.count = count;
+			this.codesPos = HEADER + 2L * count;
+		}
+
+		void write(Node root, long journalOffset) throws IOException {
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			header.putInt(MAGIC).putInt(VERSION).putLong(journalOffset)
+					.putInt(this.count);
+			this.drain(header, 0);
+			if (this.count > 0) {
+				this.visit(root);
+			}
+			if ((this.index & 1) == 1) {
+				if (!this.codes.hasRemaining()) {
+					this.codesPos += this.drain(this.codes, this.codesPos);
+				}
+				this.codes.put((byte) (this.pending << 4));
+			}
+			this.elementsPos += this.drain(this.elements, this.elementsPos);
+			this.codesPos += this.drain(this.codes, this.codesPos);
+		}
+
+		private void visit(Node node) throws IOException {
+			int nibble = node.balance.ordinal();
+			if (node.left != EditTree.getNullNode()) {
+				nibble |= HAS_LEFT;
+			}
+			if (node.right != EditTree.getNullNode()) {
+				nibble |= HAS_RIGHT;
+			}
+			if (!this.elements.hasRemaining()) {
+				this.elementsPos += this.drain(this.elements, this.elementsPos);
+			}
+			this.elements.putChar(node.element);
+			if ((this.index++ & 1) == 0) {
+				this.pending = nibble;
+			} else {
+				if (!this.codes.hasRemaining()) {
+					this.codesPos += this.drain(this.codes, this.codesPos);
+				}
+				this.codes.put((byte) (this.pending << 4 | nibble));
+			}
+			if ((nibble & HAS_LEFT) != 0) {
+				this.visit(node.left);
+			}
+			if ((nibble & HAS_RIGHT) != 0) {
+				this.visit(node.right);
+			}
+		}
+
+		// Writes out what buffer holds at pos and empties it. Returns the
+		// number of bytes written.
+		private int drain(ByteBuffer buffer, long pos) throws IOException {
+			buffer.flip();
+			int written = buffer.remaining();
+			while (buffer.hasRemaining()) {
+				pos += this.out.write(buffer, pos);
+			}
+			buffer.clear();
+			return written;
+		}
+	}
+
+	/**
+	 * Reads a snapshot back through a read-only mapping of the file, in O(N)
+	 * time. The nodes are the only copy of the text made.
+	 *
+	 * @param path
+	 * @return the tree and the journal offset of the snapshot
+	 * @throws IOException
+	 *             if the file cannot be read or is not a valid snapshot
+	 */
+	static TreeSnapshot read(Path path) throws IOException {
+		try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = in.size();
+			if (size < HEADER) {
+				throw new IOException("not a snapshot: " + path);
+			}
+			MappedByteBuffer header = in.map(FileChannel.MapMode.READ_ONLY, 0,
+					HEADER);
+			if (header.getInt(0) != MAGIC) {
+				throw new IOException("not a snapshot: " + path);
+			}
+			if (header.getInt(4) != VERSION) {
+				throw new IOException("unsupported snapshot version "
+						+ header.getInt(4) + ": " + path);
+			}
+			long journalOffset = header.getLong(8);
+			int count = header.getInt(16);
+			if (count < 0 || size != HEADER + 2L * count + (count + 1) / 2) {
+				throw new IOException("corrupt snapshot: " + path);
+			}
+			if (count > Integer.MAX_VALUE / 2) {
+				throw new IOException("snapshot too large to map: " + path);
+			}
+			EditTree tree;
+			if (count == 0) {
+				tree = new EditTree();
+			} else {
+				Reader reader = new Reader(in.map(
+						FileChannel.MapMode.READ_ONLY, HEADER, 2L * count)
+						.asCharBuffer(), in.map(FileChannel.MapMode.READ_ONLY,
+						HEADER + 2L * count, (count + 1) / 2));
+				Node root = reader.read(0);
+				if (reader.index != count) {
+					throw new IOException("corrupt snapshot: " + path);
+				}
+				tree = new EditTree(root);
+			}
+			return new TreeSnapshot(tree, journalOffset);
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("corrupt snapshot: " + path, e);
+		}
+	}
+
+	// Links up the nodes of a snapshot in the order they were written
+	private static final class Reader {
+		private final CharBuffer elements;
+		private final ByteBuffer codes;
+		private int index;
+
+		Reader(CharBuffer elements, ByteBuffer codes) {
+			this.elements = elements;
+			this.codes = codes;
+		}
+
+		Node read(int depth) throws IOException {
+			if (depth > MAX_DEPTH) {
+				throw new IOException("corrupt snapshot: too deep");
+			}
+			int i = this.index++;
+			int nibble = this.codes.get(i >>> 1);
+			nibble = (i & 1) == 0 ? nibble >>> 4 & 15 : nibble & 15;
+			Node node = new Node(this.elements.get(i));
+			Node left = (nibble & HAS_LEFT) != 0 ? this.read(depth + 1)
+					: EditTree.getNullNode();
+			Node right = (nibble & HAS_RIGHT) != 0 ? this.read(depth + 1)
+					: EditTree.getNullNode();
+			node.link(left, right);
+			if (Math.abs(left.height - right.height) > 1
+					|| (nibble & CODE_MASK) >= CODES.length
+					|| node.balance != CODES[nibble & CODE_MASK]) {
+				throw new IOException("corrupt snapshot: unbalanced node");
+			}
+			return node;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package editortrees.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import editortrees.ConcurrentEditTree;
+import editortrees.EditTree;
+
+// Throughput of 16 threads reading 80-character lines of a 1M-character
+// document while one thread types into it, once through ConcurrentEditTree
+// and once through an EditTree behind a synchronized block, the simplest
+// way to share one. The readers' score should grow with the cores for the
+// first and stay flat for the second. The readOnly benchmarks show the
+// same without a writer; run them with -t to vary the number of readers.
+
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 3, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class ConcurrentEditTreeBenchmark {
+	private static final int LINE = 80;
+
+	private ConcurrentEditTree concurrent;
+	private EditTree plain;
+	private int size;
+	private boolean typed;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		String text = EditTreeBenchmark.randomText(1000000, 42);
+		this.concurrent = new ConcurrentEditTree(text);
+		this.plain = new EditTree(text);
+		this.size = text.length();
+		this.typed = false;
+	}
+
+	private int line() {
+		return ThreadLocalRandom.current().nextInt(this.size - LINE);
+	}
+
+	@Benchmark
+	@Group("optimistic")
+	@GroupThreads(16)
+	public String optimisticRead() {
+		return this.concurrent.get(this.line(), LINE);
+	}
+
+	// Types a character in the middle and takes it back, so that the size
+	// the readers rely on stays within one character
+	@Benchmark
+	@Group("optimistic")
+	@GroupThreads(1)
+	public void optimisticWrite() {
+		int pos = this.size / 2;
+		if (this.typed) {
+			this.concurrent.delete(pos);
+		} else {
+			this.concurrent.add('x', pos);
+		}
+		this.typed = !this.typed;
+	}
+
+	@Benchmark
+	@Group("synchronized")
+	@GroupThreads(16)
+	public String synchronizedRead() {
+		int pos = this.line();
+		synchronized (this.plain) {
+			return this.plain.get(pos, LINE);
+		}
+	}
+
+	@Benchmark
+	@Group("synchronized")
+	@GroupThreads(1)
+	public void synchronizedWrite() {
+		int pos = this.size / 2;
+		synchronized (this.plain) {
+			if (this.typed) {
+				this.plain.delete(pos);
+			} else {
+				this.plain.add('x', pos);
+			}
+		}
+		this.typed = !this.typed;
+	}
+
+	@Benchmark
+	@Group("optimisticReadOnly")
+	public String optimisticReadOnly() {
+		return this.concurrent.get(this.line(), LINE);
+	}
+
+	@Benchmark
+	@Group("synchronizedReadOnly")
+	public String synchronizedReadOnly() {
+		int pos = this.line();
+		synchronized (this.plain) {
+			return this.plain.get(pos, LINE);
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(
+				ConcurrentEditTreeBenchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,82 @@
+package editortrees.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import editortrees.EditJournal;
+import editortrees.EditTree;
+
+// Average time of typing one character into a 1M-character document, with
+// and without an EditJournal attached. The difference is what journaling
+// costs the editing thread; the writes and fsyncs happen on the journal's
+// own thread, once per sync interval.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 3, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class EditJournalBenchmark {
+
+	@Param({ "false", "true" })
+	public boolean journaled;
+
+	private Path dir;
+	private EditTree tree;
+	private EditJournal journal;
+	private int cursor;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws IOException {
+		this.tree = new EditTree(EditTreeBenchmark.randomText(1000000, 42));
+		this.cursor = this.tree.size() / 2;
+		if (this.journaled) {
+			this.dir = Files.createTempDirectory("journal");
+			this.journal = new EditJournal(this.tree, this.dir
+					.resolve("bench.snapshot"), this.dir
+					.resolve("bench.journal"), 50, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws IOException {
+		if (this.journaled) {
+			this.journal.close();
+			Files.delete(this.dir.resolve("bench.journal"));
+			Files.delete(this.dir.resolve("bench.snapshot"));
+			Files.delete(this.dir);
+		}
+	}
+
+	@Benchmark
+	public void typeCharacter() {
+		this.tree.add('x', this.cursor++);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(
+				EditJournalBenchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,165 @@
+package editortrees.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import editortrees.EditTree;
+
+// Throughput and average time of every EditTree operation on documents of
+// 1K to 100M characters. Run main() to also get the allocation rate from
+// the GC profiler; the largest sizes need a heap of several gigabytes.
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class EditTreeBenchmark {
+	// Number of random positions drawn ahead of time, so that the random
+	// number generator is not part of what is measured
+	private static final int POSITIONS = 1 << 16;
+	private static final int LINE_LENGTH = 80;
+	private static final String PATTERN_ABSENT = "0123456789abcdef";
+
+	@Param({ "1000", "100000", "10000000", "100000000" })
+	public int size;
+
+	private String text;
+	private EditTree tree;
+	private int[] positions;
+	private int next;
+	private int cursor;
+	private String patternPresent;
+
+	// Random lowercase text, so that any pattern with a digit never occurs
+	static String randomText(int length, long seed) {
+		Random random = new Random(seed);
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char) ('a' + random.nextInt(26));
+		}
+		return new String(chars);
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.text = randomText(this.size, 42);
+		this.positions = new int[POSITIONS];
+		Random random = new Random(7);
+		for (int i = 0; i < POSITIONS; i++) {
+			this.positions[i] = random.nextInt(this.size);
+		}
+		int at = this.size - PATTERN_ABSENT.length();
+		this.patternPresent = this.text.substring(at,
+				at + PATTERN_ABSENT.length());
+		this.tree = new EditTree(this.text);
+		this.cursor = this.size / 2;
+	}
+
+	private int nextPosition() {
+		int pos = this.positions[this.next];
+		this.next = (this.next + 1) & (POSITIONS - 1);
+		return pos;
+	}
+
+	// Adding alone would grow the tree by millions of characters an
+	// iteration and swamp the smaller sizes, so every add benchmark deletes
+	// a character as well and the document keeps its size; each measures an
+	// add and a delete
+
+	@Benchmark
+	public char addAtEnd() {
+		this.tree.add('x');
+		return this.tree.delete(this.size);
+	}
+
+	@Benchmark
+	public char addAtFront() {
+		this.tree.add('x', 0);
+		return this.tree.delete(0);
+	}
+
+	// Typing in overwrite mode: every character goes right after the
+	// previous one and replaces the character there
+	@Benchmark
+	public char addSequential() {
+		this.tree.add('x', this.cursor++);
+		char removed = this.tree.delete(this.cursor);
+		if (this.cursor == this.size) {
+			this.cursor = 0;
+		}
+		return removed;
+	}
+
+	@Benchmark
+	public char addRandom() {
+		int pos = nextPosition();
+		this.tree.add('x', pos);
+		return this.tree.delete(pos);
+	}
+
+	// The same pair as addRandom the other way round, with the character
+	// deleted from the document put back
+	@Benchmark
+	public void deleteRandom() {
+		int pos = nextPosition();
+		this.tree.add(this.tree.delete(pos), pos);
+	}
+
+	@Benchmark
+	public char getRandom() {
+		return this.tree.get(nextPosition());
+	}
+
+	@Benchmark
+	public String getRange() {
+		int pos = Math.min(nextPosition(), this.size - LINE_LENGTH);
+		return this.tree.get(pos, LINE_LENGTH);
+	}
+
+	// Splitting alone would shrink the tree, so the halves are joined back
+	// together; this measures a split and a concatenate
+	@Benchmark
+	public EditTree splitConcatenate() {
+		EditTree tail = this.tree.split(nextPosition());
+		this.tree.concatenate(tail);
+		return tail;
+	}
+
+	// Worst case: the whole document is scanned
+	@Benchmark
+	public int findAbsent() {
+		return this.tree.find(PATTERN_ABSENT);
+	}
+
+	@Benchmark
+	public int findNearEnd() {
+		return this.tree.find(this.patternPresent);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include("editortrees\\.benchmarks\\..*")
+				.addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,69 @@
+package editortrees.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import editortrees.EditTree;
+
+// Time to build a tree out of a whole document, the cost of opening a file,
+// and to load one back from a binary snapshot.
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class EditTreeBuildBenchmark {
+
+	@Param({ "1000", "100000", "10000000", "100000000" })
+	public int size;
+
+	private String text;
+	private Path snapshot;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		this.text = EditTreeBenchmark.randomText(this.size, 42);
+		this.snapshot = Files.createTempFile("build", ".snapshot");
+		new EditTree(this.text).writeSnapshot(this.snapshot);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.delete(this.snapshot);
+	}
+
+	@Benchmark
+	public EditTree construct() {
+		return new EditTree(this.text);
+	}
+
+	// The same tree built on every core of the common pool
+	@Benchmark
+	public EditTree constructParallel() {
+		return new EditTree(this.text, ForkJoinPool.commonPool());
+	}
+
+	@Benchmark
+	public EditTree readSnapshot() throws IOException {
+		return EditTree.readSnapshot(this.snapshot);
+	}
+}
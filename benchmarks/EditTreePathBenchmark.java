@@ -0,0 +1,97 @@
+package editortrees.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import editortrees.EditTree;
+
+// Average time of the single-character paths from the root down to a
+// position and back up again, on a 10M-character document. Run it against
+// the revisions before and after a change to the descent or the rebalance
+// pass to see the difference; every benchmark keeps the size of the tree
+// constant, so the iterations are comparable.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 3, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class EditTreePathBenchmark {
+	private static final int POSITIONS = 1 << 16;
+
+	@Param({ "10000000" })
+	public int size;
+
+	private EditTree tree;
+	private int[] positions;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.tree = new EditTree(EditTreeBenchmark.randomText(this.size, 42));
+		this.positions = new int[POSITIONS];
+		Random random = new Random(11);
+		for (int i = 0; i < POSITIONS; i++) {
+			this.positions[i] = random.nextInt(this.size);
+		}
+	}
+
+	private int nextPosition() {
+		int pos = this.positions[this.next];
+		this.next = (this.next + 1) & (POSITIONS - 1);
+		return pos;
+	}
+
+	// Descent only
+	@Benchmark
+	public char get() {
+		return this.tree.get(nextPosition());
+	}
+
+	// Descent to a leaf, then the rebalance pass up from it, twice
+	@Benchmark
+	public char addThenDelete() {
+		int pos = nextPosition();
+		this.tree.add('x', pos);
+		return this.tree.delete(pos);
+	}
+
+	// Deletes mostly unlink a successor below the deleted node, so the pass
+	// back up starts deeper than the descent ended
+	@Benchmark
+	public void deleteThenAdd() {
+		int pos = nextPosition();
+		this.tree.add(this.tree.delete(pos), pos);
+	}
+
+	// The right spine, which every append walks
+	@Benchmark
+	public char appendThenDelete() {
+		this.tree.add('x');
+		return this.tree.delete(this.size);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(
+				EditTreePathBenchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+}